@@ -0,0 +1,31 @@
+package bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. Runs the JMH benchmarks with the usual JMH command line,
+ * and always adds the GC profiler so that every result comes with its allocation rate.
+ * <pre>
+ * $ java -jar target/benchmarks.jar                                   # everything
+ * $ java -jar target/benchmarks.jar QueryBenchmark -p size=10000000   # one class, one size
+ * $ java -jar target/benchmarks.jar -h                                # all JMH options
+ * </pre>
+ * @author FrancescoA
+ *
+ */
+public class Benchmarks {
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions options = new CommandLineOptions(args);
+    if (options.shouldHelp() || options.shouldList() || options.shouldListWithParams()
+        || options.shouldListProfilers() || options.shouldListResultFormats()) {
+      org.openjdk.jmh.Main.main(args);
+      return;
+    }
+    new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build()).run();
+  }
+
+}
@@ -0,0 +1,110 @@
+package bench;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import main.MortonQuadTree;
+import main.PointNode;
+import main.PointQuadTree;
+import main.PointVisitor;
+import main.RangeScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the ways a MortonQuadTree can answer rectangle queries: skipping from run to run
+ * with BIGMIN, and walking its regions with blocks scanned by the scalar or the Vector API
+ * RangeScanner. The points are counted with a visitor, so no result nodes are created.
+ * Queries are squares whose sides are a fraction of the side of the bounds, centered on
+ * points of the tree. Build the library with the vector profile to measure the vector scanner.
+ * <pre>
+ * $ java -jar target/benchmarks.jar BlockQueryBenchmark -p distribution=CLUSTERED
+ * </pre>
+ * @author FrancescoA
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "--add-modules=jdk.incubator.vector"})
+public class BlockQueryBenchmark {
+
+  static final int QUERIES = 1024;
+
+  public enum Scan {
+    BIGMIN, SCALAR, VECTOR
+  }
+
+  @Param({"1000000"})
+  public int size;
+
+  @Param({"UNIFORM", "CLUSTERED"})
+  public Distribution distribution;
+
+  @Param({"BIGMIN", "SCALAR", "VECTOR"})
+  public Scan scan;
+
+  /**
+   * The side of the query squares as a fraction of the side of the bounds.
+   */
+  @Param({"0.001", "0.01", "0.1"})
+  public double width;
+
+  private MortonQuadTree<Integer> morton;
+  private Rectangle[] queries;
+  private int next;
+  private int count;
+
+  private final PointVisitor<Integer> counter = new PointVisitor<Integer>() {
+    @Override
+    public boolean visit(int x, int y, Integer value) {
+      count++;
+      return true;
+    }
+  };
+
+  @Setup(Level.Trial)
+  public void buildTree() {
+    Point[] points = distribution.points(size, 42);
+    PointQuadTree<Integer> tree = new PointQuadTree<Integer>(new Rectangle(Distribution.BOUNDS));
+    for (int i = 0; i < size; i++) {
+      tree.insert(new PointNode<Integer>(points[i], i));
+    }
+    morton = MortonQuadTree.build(tree);
+    if (scan != Scan.BIGMIN) {
+      morton.setScanner(scan == Scan.VECTOR ? RangeScanner.vector() : RangeScanner.SCALAR);
+      System.out.println();
+      System.out.println("Scanner: " + morton.getScanner());
+    }
+    Random random = new Random(7);
+    int side = (int) (Distribution.BOUNDS.width * width);
+    queries = new Rectangle[QUERIES];
+    for (int q = 0; q < QUERIES; q++) {
+      Point center = points[random.nextInt(size)];
+      queries[q] = new Rectangle(center.x - side / 2, center.y - side / 2, side, side);
+    }
+  }
+
+  @Benchmark
+  public int count() {
+    next = (next + 1) & (QUERIES - 1);
+    Rectangle r = queries[next];
+    count = 0;
+    morton.queryRange(r.x, r.y, r.x + r.width - 1, r.y + r.height - 1, counter);
+    return count;
+  }
+
+}
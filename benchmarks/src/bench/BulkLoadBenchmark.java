@@ -0,0 +1,75 @@
+package bench;
+
+import java.awt.Rectangle;
+import java.util.Random;
+import main.AbstractNode;
+import main.PointNode;
+import main.PointQuadTree;
+
+/**
+ * Compares a tree built with repeated insert calls to one built with bulkLoad, 
+ * for points on a diagonal (sorted by x and y), points sorted by x only and shuffled points. Reports build time, tree height 
+ * and the mean latency of small range queries. 
+ * <pre>
+ * $ java -Xss512m -cp target/benchmarks.jar bench.BulkLoadBenchmark 20000
+ * </pre>
+ * Repeated inserts of diagonal points build a chain as deep as the input is long, 
+ * hence the large thread stack. 
+ * @author FrancescoA
+ *
+ */
+public class BulkLoadBenchmark {
+
+  private static final int QUERIES = 1000;
+
+  public static void main(String[] args) {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+    System.out.printf("%-10s %-10s %12s %8s %14s%n", "input", "build", "build ms", "height", "query us/op");
+    for (String input : new String[] {"diagonal", "sorted", "shuffled"}) {
+      run(input, "insert", points(n, input), false);
+      run(input, "bulkLoad", points(n, input), true);
+    }
+  }
+
+  private static void run(String input, String build, AbstractNode<Integer>[] nodes, boolean bulk) {
+    int side = nodes.length;
+    PointQuadTree<Integer> tree = new PointQuadTree<Integer>(0, 0, side, side);
+    long start = System.nanoTime();
+    if (bulk) {
+      tree.bulkLoad(nodes);
+    } else {
+      tree.insertAll(nodes);
+    }
+    long buildNanos = System.nanoTime() - start;
+    Random random = new Random(1);
+    int found = 0;
+    start = System.nanoTime();
+    for (int i = 0; i < QUERIES; i++) {
+      found += tree.queryRange(new Rectangle(random.nextInt(side), random.nextInt(side), side / 100, side / 100)).size();
+    }
+    long queryNanos = System.nanoTime() - start;
+    System.out.printf("%-10s %-10s %12.1f %8d %14.1f  (%d hits)%n", input, build, buildNanos / 1e6, tree.getHeight(),
+        queryNanos / 1e3 / QUERIES, found);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static PointNode<Integer>[] points(int n, String input) {
+    Random random = new Random(42);
+    PointNode<Integer>[] nodes = new PointNode[n];
+    for (int i = 0; i < n; i++) {
+      // Distinct x values so there are no duplicates and sorting by x is well defined. 
+      int y = input.equals("diagonal") ? i : random.nextInt(n);
+      nodes[i] = new PointNode<Integer>(i, y, i);
+    }
+    if (input.equals("shuffled")) {
+      for (int i = n - 1; i > 0; i--) {
+        int j = random.nextInt(i + 1);
+        PointNode<Integer> tmp = nodes[i];
+        nodes[i] = nodes[j];
+        nodes[j] = tmp;
+      }
+    }
+    return nodes;
+  }
+
+}
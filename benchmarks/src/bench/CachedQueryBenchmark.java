@@ -0,0 +1,107 @@
+package bench;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import main.AbstractNode;
+import main.CachingPointQuadTree;
+import main.PointNode;
+import main.PointQuadTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Repeats a small set of HOT viewport queries on a PointQuadTree and on a CachingPointQuadTree
+ * holding the same points, moving a random point to a random location after every
+ * 1000 / writesPerThousand queries. Each operation is one query, plus its share of the moves.
+ * <pre>
+ * $ java -jar target/benchmarks.jar CachedQueryBenchmark -p size=1000000 -p writesPerThousand=0,10
+ * </pre>
+ * @author FrancescoA
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class CachedQueryBenchmark {
+
+  static final int HOT = 32;
+
+  @Param({"100000", "1000000"})
+  public int size;
+
+  @Param({"UNIFORM", "CLUSTERED"})
+  public Distribution distribution;
+
+  /**
+   * The side of the viewports as a fraction of the side of the bounds.
+   */
+  @Param({"0.01", "0.1"})
+  public double viewport;
+
+  @Param({"0", "10"})
+  public int writesPerThousand;
+
+  private PointQuadTree<Integer> plain;
+  private CachingPointQuadTree<Integer> cached;
+  private Point[] points;
+  private Rectangle[] viewports;
+  private Random random;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void buildTrees() {
+    points = distribution.points(size, 42);
+    plain = new PointQuadTree<Integer>(new Rectangle(Distribution.BOUNDS));
+    cached = new CachingPointQuadTree<Integer>(new Rectangle(Distribution.BOUNDS));
+    for (int i = 0; i < size; i++) {
+      plain.insert(new PointNode<Integer>(new Point(points[i]), i));
+      cached.insert(new PointNode<Integer>(new Point(points[i]), i));
+    }
+    random = new Random(7);
+    int side = (int) (Distribution.BOUNDS.width * viewport);
+    viewports = new Rectangle[HOT];
+    for (int v = 0; v < HOT; v++) {
+      Point center = points[random.nextInt(size)];
+      viewports[v] = new Rectangle(center.x - side / 2, center.y - side / 2, side, side);
+    }
+  }
+
+  private Rectangle next(PointQuadTree<Integer> tree) {
+    next++;
+    if (writesPerThousand > 0 && next % (1000 / writesPerThousand) == 0) {
+      int i = random.nextInt(size);
+      Point to = new Point(random.nextInt(Distribution.BOUNDS.width), random.nextInt(Distribution.BOUNDS.height));
+      if (tree.move(points[i], to)) {
+        points[i] = to;
+      }
+    }
+    return viewports[next % HOT];
+  }
+
+  @Benchmark
+  public List<AbstractNode<Integer>> uncached() {
+    return plain.queryRange(next(plain));
+  }
+
+  @Benchmark
+  public List<AbstractNode<Integer>> cached() {
+    return cached.queryRange(next(cached));
+  }
+
+}
@@ -0,0 +1,66 @@
+package bench;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.concurrent.TimeUnit;
+import main.PointNode;
+import main.PointQuadTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures clear on a PointQuadTree of size points.
+ * A cleared tree is empty, so every iteration builds a new tree and clears it once.
+ * <pre>
+ * $ java -jar target/benchmarks.jar ClearBenchmark
+ * </pre>
+ * @author FrancescoA
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ClearBenchmark {
+
+  @Param({"10000", "100000", "1000000", "10000000"})
+  public int size;
+
+  @Param({"UNIFORM", "CLUSTERED", "SORTED"})
+  public Distribution distribution;
+
+  private Point[] points;
+  private PointQuadTree<Integer> tree;
+
+  @Setup(Level.Trial)
+  public void generatePoints() {
+    points = distribution.points(size, 42);
+  }
+
+  @Setup(Level.Iteration)
+  public void buildTree() {
+    tree = new PointQuadTree<Integer>(new Rectangle(Distribution.BOUNDS));
+    for (int i = 0; i < size; i++) {
+      tree.insert(new PointNode<Integer>(points[i], i));
+    }
+  }
+
+  @Benchmark
+  public PointQuadTree<Integer> clear() {
+    tree.clear();
+    return tree;
+  }
+
+}
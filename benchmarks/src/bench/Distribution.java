@@ -0,0 +1,103 @@
+package bench;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The input distributions the JMH benchmarks are run with.
+ * Every distribution returns distinct points, so that no insert is rejected as a duplicate.
+ * @author FrancescoA
+ *
+ */
+public enum Distribution {
+
+  /**
+   * Points spread uniformly over the bounds, in random order.
+   */
+  UNIFORM,
+
+  /**
+   * Points in a few dense gaussian clusters, in random order.
+   */
+  CLUSTERED,
+
+  /**
+   * Uniform points inserted in order of x, then y, as when loading a sorted table.
+   */
+  SORTED;
+
+  /**
+   * The bounds all benchmark trees are built with, large enough for 10^7 distinct uniform points.
+   */
+  public static final Rectangle BOUNDS = new Rectangle(0, 0, 1 << 20, 1 << 20);
+
+  private static final int CLUSTERS = 16;
+
+  /**
+   * Generates n distinct points within {@link #BOUNDS}.
+   * The same n and seed always give the same points in the same order.
+   * @param n the number of points
+   * @param seed the random seed
+   * @return the points, in insertion order
+   */
+  public Point[] points(int n, long seed) {
+    Random random = new Random(seed);
+    int[] centers = new int[2 * CLUSTERS];
+    for (int i = 0; i < centers.length; i++) {
+      centers[i] = BOUNDS.width / 10 + random.nextInt(BOUNDS.width * 8 / 10);
+    }
+    // Points are generated as packed (x, y) keys and deduplicated by sorting.
+    long[] keys = new long[0];
+    int unique = 0;
+    while (unique < n) {
+      int missing = n - unique;
+      long[] more = Arrays.copyOf(keys, unique + missing + missing / 100 + 16);
+      for (int i = unique; i < more.length; i++) {
+        more[i] = this == CLUSTERED ? clustered(random, centers) : key(random.nextInt(BOUNDS.width), random.nextInt(BOUNDS.height));
+      }
+      Arrays.sort(more);
+      unique = 0;
+      for (int i = 0; i < more.length; i++) {
+        if (unique == 0 || more[i] != more[unique - 1]) {
+          more[unique++] = more[i];
+        }
+      }
+      keys = more;
+    }
+    // Shuffle so that the first n points are a random sample, in random order.
+    for (int i = unique - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      long k = keys[i];
+      keys[i] = keys[j];
+      keys[j] = k;
+    }
+    keys = Arrays.copyOf(keys, n);
+    if (this == SORTED) {
+      Arrays.sort(keys);
+    }
+    Point[] points = new Point[n];
+    for (int i = 0; i < n; i++) {
+      points[i] = new Point((int) (keys[i] >>> 32), (int) keys[i]);
+    }
+    return points;
+  }
+
+  private static long clustered(Random random, int[] centers) {
+    int c = 2 * random.nextInt(CLUSTERS);
+    double sigma = BOUNDS.width / 100.0;
+    int x = clamp(centers[c] + (int) (random.nextGaussian() * sigma), BOUNDS.width);
+    int y = clamp(centers[c + 1] + (int) (random.nextGaussian() * sigma), BOUNDS.height);
+    return key(x, y);
+  }
+
+  private static int clamp(int c, int size) {
+    return Math.max(0, Math.min(size - 1, c));
+  }
+
+  private static long key(int x, int y) {
+    return ((long) x << 32) | y;
+  }
+
+}
@@ -0,0 +1,92 @@
+package bench;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.concurrent.TimeUnit;
+import main.DuplicatePolicy;
+import main.InsertOutcome;
+import main.PointNode;
+import main.PointQuadTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures inserts at locations that are all already taken, as a workload that keeps
+ * reporting the same points does, under each duplicate policy. The tree holds size points
+ * and keeps its size; every invocation inserts {@link #BATCH} of them again. Scores are per
+ * insert. The bucket policy is left out, as its buckets would grow with every invocation.
+ * <pre>
+ * $ java -jar target/benchmarks.jar DuplicateInsertBenchmark -p size=1000000
+ * </pre>
+ * @author FrancescoA
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class DuplicateInsertBenchmark {
+
+  static final int BATCH = 10000;
+
+  public enum Policy {
+    REJECT, REPLACE, MERGE;
+
+    DuplicatePolicy<Integer> create() {
+      switch (this) {
+        case REPLACE: return DuplicatePolicy.replace();
+        case MERGE: return DuplicatePolicy.merge(Integer::sum);
+        default: return DuplicatePolicy.reject();
+      }
+    }
+  }
+
+  @Param({"100000", "1000000"})
+  public int size;
+
+  @Param({"REJECT", "REPLACE", "MERGE"})
+  public Policy policy;
+
+  private PointQuadTree<Integer> tree;
+  private Point[] batch;
+
+  @Setup(Level.Trial)
+  public void buildTree() {
+    Point[] points = Distribution.UNIFORM.points(size, 42);
+    tree = new PointQuadTree<Integer>(new Rectangle(Distribution.BOUNDS));
+    for (int i = 0; i < size; i++) {
+      tree.insert(new PointNode<Integer>(points[i], i));
+    }
+    tree.setDuplicatePolicy(policy.create());
+    batch = new Point[BATCH];
+    for (int i = 0; i < BATCH; i++) {
+      batch[i] = points[(int) ((long) i * size / BATCH)];
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public int insertDuplicates() {
+    int changed = 0;
+    for (int i = 0; i < BATCH; i++) {
+      if (tree.insert(new PointNode<Integer>(batch[i], i)) != InsertOutcome.REJECTED) {
+        changed++;
+      }
+    }
+    return changed;
+  }
+
+}
@@ -0,0 +1,101 @@
+package bench;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.concurrent.TimeUnit;
+import main.AbstractNode;
+import main.PointNode;
+import main.PointQuadTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures insert and insertAll into a PointQuadTree that already holds size points.
+ * Every invocation inserts a batch of {@link #BATCH} new points from the same distribution,
+ * and the batch is removed again afterwards (outside the measurement), so the tree keeps its size.
+ * Scores are per inserted point.
+ * <pre>
+ * $ java -jar target/benchmarks.jar InsertBenchmark -p size=1000000
+ * </pre>
+ * @author FrancescoA
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class InsertBenchmark {
+
+  static final int BATCH = 10000;
+
+  @Param({"10000", "100000", "1000000", "10000000"})
+  public int size;
+
+  @Param({"UNIFORM", "CLUSTERED", "SORTED"})
+  public Distribution distribution;
+
+  private PointQuadTree<Integer> tree;
+  private Point[] batch;
+  private AbstractNode<Integer>[] nodes;
+
+  @Setup(Level.Trial)
+  public void buildTree() {
+    Point[] points = distribution.points(size + BATCH, 42);
+    tree = new PointQuadTree<Integer>(new Rectangle(Distribution.BOUNDS));
+    for (int i = 0; i < size; i++) {
+      tree.insert(new PointNode<Integer>(points[i], i));
+    }
+    // For SORTED input the batch continues the sorted sequence.
+    batch = new Point[BATCH];
+    System.arraycopy(points, size, batch, 0, BATCH);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Setup(Level.Invocation)
+  public void createNodes() {
+    // Inserted nodes are linked into the tree, so every invocation needs new ones.
+    nodes = new AbstractNode[BATCH];
+    for (int i = 0; i < BATCH; i++) {
+      nodes[i] = new PointNode<Integer>(new Point(batch[i]), i);
+    }
+  }
+
+  @TearDown(Level.Invocation)
+  public void removeBatch() {
+    // In reverse, so that every removed node is a leaf.
+    for (int i = BATCH - 1; i >= 0; i--) {
+      tree.remove(batch[i]);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public PointQuadTree<Integer> insert() {
+    for (AbstractNode<Integer> node : nodes) {
+      tree.insert(node);
+    }
+    return tree;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public PointQuadTree<Integer> insertAll() {
+    tree.insertAll(nodes);
+    return tree;
+  }
+
+}
@@ -0,0 +1,76 @@
+package bench;
+
+import java.awt.Rectangle;
+import java.util.Random;
+import main.AbstractQuadTree;
+import main.ArrayPointQuadTree;
+import main.OffHeapPointQuadTree;
+import main.PointNode;
+import main.PointQuadTree;
+
+/**
+ * Compares the retained heap of a PointQuadTree, an ArrayPointQuadTree and an OffHeapPointQuadTree
+ * holding the same points, and the memory the OffHeapPointQuadTree holds outside the heap.
+ * Run with a heap large enough for the biggest tree, e.g.
+ * <pre>
+ * $ java -Xmx4g -cp target/benchmarks.jar bench.MemoryFootprint 1000000 10000000
+ * </pre>
+ * @author FrancescoA
+ *
+ */
+public class MemoryFootprint {
+
+  private static final int SIDE = 1 << 20;
+
+  public static void main(String[] args) {
+    int[] sizes = {1000000, 10000000};
+    if (args.length > 0) {
+      sizes = new int[args.length];
+      for (int i = 0; i < args.length; i++) {
+        sizes[i] = Integer.parseInt(args[i]);
+      }
+    }
+    System.out.printf("%12s %18s %18s %18s %18s%n", "points", "PointQuadTree", "ArrayPointQuadTree", "OffHeap (heap)", "OffHeap (direct)");
+    for (int n : sizes) {
+      long objects = footprint(new PointQuadTree<String>(new Rectangle(0, 0, SIDE, SIDE)), n);
+      long arrays = footprint(new ArrayPointQuadTree<String>(new Rectangle(0, 0, SIDE, SIDE)), n);
+      OffHeapPointQuadTree<String> offHeap = new OffHeapPointQuadTree<String>(new Rectangle(0, 0, SIDE, SIDE));
+      long heap = footprint(offHeap, n);
+      System.out.printf("%12d %13.1f B/pt %13.1f B/pt %13.1f B/pt %13.1f B/pt%n", n, (double) objects / n, (double) arrays / n,
+          (double) heap / n, (double) offHeap.getOffHeapBytes() / n);
+      offHeap.clear();
+    }
+  }
+
+  /**
+   * Inserts n random valueless points into tree and returns the heap growth in bytes.
+   */
+  private static long footprint(AbstractQuadTree<String> tree, int n) {
+    Random random = new Random(42);
+    long before = usedMemory();
+    for (int i = 0; i < n; i++) {
+      tree.insert(new PointNode<String>(random.nextInt(SIDE), random.nextInt(SIDE)));
+    }
+    if (tree instanceof ArrayPointQuadTree) {
+      ((ArrayPointQuadTree<String>) tree).trimToSize();
+    }
+    long after = usedMemory();
+    // Touch the tree after measuring so it cannot be collected before usedMemory() runs.
+    System.out.println("  " + tree.getClass().getSimpleName() + ": " + tree.getSize() + " nodes");
+    return after - before;
+  }
+
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 4; i++) {
+      System.gc();
+      try {
+        Thread.sleep(100);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+}
@@ -0,0 +1,128 @@
+package bench;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import main.AbstractNode;
+import main.MortonQuadTree;
+import main.NodeVisitor;
+import main.PointNode;
+import main.PointQuadTree;
+import main.PointVisitor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares rectangle queries on a PointQuadTree with the same queries on a MortonQuadTree
+ * built from it, both collecting a list of nodes and counting the points with a visitor,
+ * which leaves out the cost of creating result nodes.
+ * <pre>
+ * $ java -jar target/benchmarks.jar MortonQueryBenchmark -p size=1000000
+ * </pre>
+ * @author FrancescoA
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class MortonQueryBenchmark {
+
+  static final int QUERIES = 1024;
+
+  @Param({"1000000", "10000000"})
+  public int size;
+
+  @Param({"UNIFORM", "CLUSTERED"})
+  public Distribution distribution;
+
+  /**
+   * The side of the query rectangles as a fraction of the side of the bounds.
+   */
+  @Param({"0.01", "0.1"})
+  public double width;
+
+  private PointQuadTree<Integer> tree;
+  private MortonQuadTree<Integer> morton;
+  private Rectangle[] queries;
+  private int next;
+  private int count;
+
+  private final NodeVisitor<Integer> nodeCounter = new NodeVisitor<Integer>() {
+    @Override
+    public boolean visit(AbstractNode<Integer> node) {
+      count++;
+      return true;
+    }
+  };
+
+  private final PointVisitor<Integer> pointCounter = new PointVisitor<Integer>() {
+    @Override
+    public boolean visit(int x, int y, Integer value) {
+      count++;
+      return true;
+    }
+  };
+
+  @Setup(Level.Trial)
+  public void buildTrees() {
+    Point[] points = distribution.points(size, 42);
+    tree = new PointQuadTree<Integer>(new Rectangle(Distribution.BOUNDS));
+    for (int i = 0; i < size; i++) {
+      tree.insert(new PointNode<Integer>(points[i], i));
+    }
+    morton = MortonQuadTree.build(tree);
+    Random random = new Random(7);
+    int side = (int) (Distribution.BOUNDS.width * width);
+    queries = new Rectangle[QUERIES];
+    for (int q = 0; q < QUERIES; q++) {
+      Point center = points[random.nextInt(size)];
+      queries[q] = new Rectangle(center.x - side / 2, center.y - side / 2, side, side);
+    }
+  }
+
+  private Rectangle next() {
+    next = (next + 1) & (QUERIES - 1);
+    return queries[next];
+  }
+
+  @Benchmark
+  public List<AbstractNode<Integer>> pointerQueryRange() {
+    return tree.queryRange(next());
+  }
+
+  @Benchmark
+  public List<AbstractNode<Integer>> mortonQueryRange() {
+    return morton.queryRange(next());
+  }
+
+  @Benchmark
+  public int pointerCount() {
+    count = 0;
+    tree.queryRange(next(), nodeCounter);
+    return count;
+  }
+
+  @Benchmark
+  public int mortonCount() {
+    count = 0;
+    Rectangle r = next();
+    morton.queryRange(r.x, r.y, r.x + r.width - 1, r.y + r.height - 1, pointCounter);
+    return count;
+  }
+
+}
@@ -0,0 +1,62 @@
+package bench;
+
+import java.awt.Point;
+import java.util.Random;
+import main.PointNode;
+import main.PointQuadTree;
+
+/**
+ * Compares updating moving points in place with PointQuadTree.move against rebuilding 
+ * the whole tree from the new positions, for a tree of n points where every update 
+ * moves a random point by a few units. 
+ * <pre>
+ * $ java -cp target/benchmarks.jar bench.MoveBenchmark 200000
+ * </pre>
+ * @author FrancescoA
+ *
+ */
+public class MoveBenchmark {
+
+  private static final int SIDE = 1 << 16;
+  private static final int STEP = 50;
+
+  public static void main(String[] args) {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+    Random random = new Random(42);
+    Point[] positions = new Point[n];
+    PointQuadTree<Integer> tree = new PointQuadTree<Integer>(0, 0, SIDE, SIDE);
+    for (int i = 0; i < n; i++) {
+      positions[i] = new Point(random.nextInt(SIDE), random.nextInt(SIDE));
+      tree.insert(new Point(positions[i]), i);
+    }
+    for (int round = 0; round < 3; round++) {
+      long start = System.nanoTime();
+      int moved = 0;
+      for (int u = 0; u < n; u++) {
+        int i = random.nextInt(n);
+        Point to = new Point(clamp(positions[i].x + random.nextInt(2 * STEP + 1) - STEP), 
+            clamp(positions[i].y + random.nextInt(2 * STEP + 1) - STEP));
+        if (tree.move(positions[i], to)) {
+          positions[i] = to;
+          moved++;
+        }
+      }
+      double moveSeconds = (System.nanoTime() - start) / 1e9;
+
+      start = System.nanoTime();
+      PointQuadTree<Integer> rebuilt = new PointQuadTree<Integer>(0, 0, SIDE, SIDE);
+      for (int i = 0; i < n; i++) {
+        rebuilt.insert(new PointNode<Integer>(new Point(positions[i]), i));
+      }
+      double rebuildSeconds = (System.nanoTime() - start) / 1e9;
+
+      System.out.printf("round %d: move %,.0f updates/s (%d of %d moved), rebuild of %d points %.1f ms%n", 
+          round, moved / moveSeconds, moved, n, rebuilt.getSize(), rebuildSeconds * 1e3);
+    }
+  }
+
+  private static int clamp(int c) {
+    return Math.max(0, Math.min(SIDE, c));
+  }
+
+}
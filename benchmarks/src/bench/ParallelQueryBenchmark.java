@@ -0,0 +1,89 @@
+package bench;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import main.PointNode;
+import main.PointQuadTree;
+import main.QueryResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares query with parallelQuery on the common ForkJoinPool, for narrow queries
+ * (1% of the side of the bounds) and wide ones (50% of the side, a quarter of the points).
+ * <pre>
+ * $ java -jar target/benchmarks.jar ParallelQueryBenchmark -p size=10000000
+ * </pre>
+ * @author FrancescoA
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ParallelQueryBenchmark {
+
+  static final int QUERIES = 64;
+
+  @Param({"1000000", "10000000"})
+  public int size;
+
+  @Param({"UNIFORM", "CLUSTERED"})
+  public Distribution distribution;
+
+  /**
+   * The side of the query squares as a fraction of the side of the bounds.
+   */
+  @Param({"0.01", "0.5"})
+  public double width;
+
+  private PointQuadTree<Integer> tree;
+  private Rectangle[] queries;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void buildTree() {
+    Point[] points = distribution.points(size, 42);
+    tree = new PointQuadTree<Integer>(new Rectangle(Distribution.BOUNDS));
+    for (int i = 0; i < size; i++) {
+      tree.insert(new PointNode<Integer>(points[i], i));
+    }
+    Random random = new Random(7);
+    int side = (int) (Distribution.BOUNDS.width * width);
+    queries = new Rectangle[QUERIES];
+    for (int q = 0; q < QUERIES; q++) {
+      Point center = points[random.nextInt(size)];
+      queries[q] = new Rectangle(center.x - side / 2, center.y - side / 2, side, side);
+    }
+  }
+
+  private Rectangle next() {
+    next = (next + 1) & (QUERIES - 1);
+    return queries[next];
+  }
+
+  @Benchmark
+  public QueryResult<Integer> sequential() {
+    return tree.query(next());
+  }
+
+  @Benchmark
+  public QueryResult<Integer> parallel() {
+    return tree.parallelQuery(next());
+  }
+
+}
@@ -0,0 +1,90 @@
+package bench;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import main.AbstractNode;
+import main.PersistentPointQuadTree;
+import main.PointNode;
+import main.PointQuadTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the ways of giving a reader a view of a tree of size points that later inserts
+ * do not change: copying every node into a new PointQuadTree, as before PersistentPointQuadTree,
+ * and taking a snapshot of a PersistentPointQuadTree. Also measures the cost of path copying,
+ * as a new version with one more point.
+ * <pre>
+ * $ java -jar target/benchmarks.jar PersistentBenchmark -p size=1000000
+ * </pre>
+ * @author FrancescoA
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class PersistentBenchmark {
+
+  @Param({"100000", "1000000"})
+  public int size;
+
+  @Param({"UNIFORM", "CLUSTERED"})
+  public Distribution distribution;
+
+  private PointQuadTree<Integer> plain;
+  private PersistentPointQuadTree<Integer> persistent;
+  private final Random random = new Random(42);
+
+  @Setup(Level.Trial)
+  public void buildTrees() {
+    Point[] points = distribution.points(size, 42);
+    plain = new PointQuadTree<Integer>(new Rectangle(Distribution.BOUNDS));
+    persistent = new PersistentPointQuadTree<Integer>(new Rectangle(Distribution.BOUNDS));
+    for (int i = 0; i < size; i++) {
+      plain.insert(new PointNode<Integer>(points[i], i));
+      persistent.insert(new PointNode<Integer>(new Point(points[i]), i));
+    }
+  }
+
+  @Benchmark
+  public PointQuadTree<Integer> copyTree() {
+    List<AbstractNode<Integer>> nodes = plain.getAllNodes();
+    @SuppressWarnings("unchecked")
+    AbstractNode<Integer>[] copies = new AbstractNode[nodes.size()];
+    for (int i = 0; i < copies.length; i++) {
+      PointNode<Integer> node = (PointNode<Integer>) nodes.get(i);
+      copies[i] = new PointNode<Integer>(node.getLocation(), node.getValue());
+    }
+    PointQuadTree<Integer> copy = new PointQuadTree<Integer>(new Rectangle(Distribution.BOUNDS));
+    copy.bulkLoad(copies);
+    return copy;
+  }
+
+  @Benchmark
+  public PersistentPointQuadTree<Integer> snapshot() {
+    return persistent.snapshot();
+  }
+
+  @Benchmark
+  public PersistentPointQuadTree<Integer> pathCopyInsert() {
+    // A random location is almost never taken in a tree of at most a million points.
+    return persistent.with(new Point(random.nextInt(Distribution.BOUNDS.width), random.nextInt(Distribution.BOUNDS.height)), 0);
+  }
+
+}
@@ -0,0 +1,162 @@
+package bench;
+
+import java.awt.Point;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import main.AbstractNode;
+import main.PointNode;
+import main.PointQuadTree;
+import main.QueryMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures queryRange on a PointQuadTree of size points with small and large rectangles,
+ * ellipses and triangles, queryCircle with circles inscribed in the ellipses' boxes, the first page of a large rectangle through queryStream,
+ * countRange with the large rectangles, and innefficientQueryRange with the small rectangles as a baseline.
+ * Queries are centered on random points of the tree, so clustered data is queried where it is dense,
+ * and every invocation runs the next of {@link #QUERIES} precomputed queries.
+ * <pre>
+ * $ java -jar target/benchmarks.jar QueryBenchmark -p size=1000000 -p distribution=CLUSTERED
+ * </pre>
+ * @author FrancescoA
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class QueryBenchmark {
+
+  static final int QUERIES = 1024;
+  static final int PAGE = 20;
+
+  /**
+   * Side of the small and large query rectangles, as a fraction of the side of the bounds.
+   */
+  static final double SMALL = 0.01, LARGE = 0.2;
+
+  /**
+   * Side of the bounding box of the ellipses and triangles.
+   */
+  static final double SHAPE = 0.05;
+
+  @Param({"10000", "100000", "1000000", "10000000"})
+  public int size;
+
+  @Param({"UNIFORM", "CLUSTERED", "SORTED"})
+  public Distribution distribution;
+
+  /**
+   * Whether the tree reports to a QueryMetrics listener; run with -p metrics=false,true to see its cost.
+   */
+  @Param("false")
+  public boolean metrics;
+
+  private PointQuadTree<Integer> tree;
+  private Rectangle[] small, large;
+  private Shape[] ellipses, triangles;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void buildTree() {
+    Point[] points = distribution.points(size, 42);
+    tree = new PointQuadTree<Integer>(new Rectangle(Distribution.BOUNDS));
+    for (int i = 0; i < size; i++) {
+      tree.insert(new PointNode<Integer>(points[i], i));
+    }
+    if (metrics) {
+      tree.setQueryListener(new QueryMetrics());
+    }
+    Random random = new Random(7);
+    small = new Rectangle[QUERIES];
+    large = new Rectangle[QUERIES];
+    ellipses = new Shape[QUERIES];
+    triangles = new Shape[QUERIES];
+    for (int q = 0; q < QUERIES; q++) {
+      Point center = points[random.nextInt(size)];
+      small[q] = square(center, SMALL);
+      large[q] = square(center, LARGE);
+      Rectangle box = square(center, SHAPE);
+      ellipses[q] = new Ellipse2D.Double(box.x, box.y, box.width, box.height);
+      triangles[q] = new Polygon(new int[] {box.x, box.x + box.width, box.x + box.width / 2},
+          new int[] {box.y, box.y, box.y + box.height}, 3);
+    }
+  }
+
+  private static Rectangle square(Point center, double fraction) {
+    int side = (int) (Distribution.BOUNDS.width * fraction);
+    return new Rectangle(center.x - side / 2, center.y - side / 2, side, side);
+  }
+
+  private int next() {
+    next = (next + 1) & (QUERIES - 1);
+    return next;
+  }
+
+  @Benchmark
+  public List<AbstractNode<Integer>> smallRectangle() {
+    return tree.queryRange(small[next()]);
+  }
+
+  @Benchmark
+  public List<AbstractNode<Integer>> largeRectangle() {
+    return tree.queryRange(large[next()]);
+  }
+
+  /**
+   * The first page of a large query, which the lazy stream finds without searching the rest of the range.
+   */
+  @Benchmark
+  public List<AbstractNode<Integer>> largeRectangleFirstPage() {
+    return tree.queryStream(large[next()]).limit(PAGE).collect(Collectors.toList());
+  }
+
+  /**
+   * Counts the nodes of a large query using the subtree counts, instead of collecting them.
+   */
+  @Benchmark
+  public int largeRectangleCount() {
+    return tree.countRange(large[next()]);
+  }
+
+  @Benchmark
+  public List<AbstractNode<Integer>> ellipse() {
+    return tree.queryRange(ellipses[next()]);
+  }
+
+  @Benchmark
+  public List<AbstractNode<Integer>> circle() {
+    Rectangle box = ellipses[next()].getBounds();
+    return tree.queryCircle(box.x + box.width / 2, box.y + box.height / 2, box.width / 2.0);
+  }
+
+  @Benchmark
+  public List<AbstractNode<Integer>> triangle() {
+    return tree.queryRange(triangles[next()]);
+  }
+
+  @Benchmark
+  public List<AbstractNode<Integer>> innefficientSmallRectangle() {
+    return tree.innefficientQueryRange(small[next()]);
+  }
+
+}
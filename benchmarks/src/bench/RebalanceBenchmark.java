@@ -0,0 +1,102 @@
+package bench;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import main.AbstractNode;
+import main.PointNode;
+import main.PointQuadTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures what rebalancing on insert costs and what it buys: building a PointQuadTree of
+ * size points one insert at a time, and small rectangle queries on the tree built that way,
+ * with rebalancing off (balance 0) and on. The structure of the queried tree is printed at
+ * the end of every trial.
+ * <pre>
+ * $ java -jar target/benchmarks.jar RebalanceBenchmark -p distribution=SORTED
+ * </pre>
+ * @author FrancescoA
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class RebalanceBenchmark {
+
+  static final int QUERIES = 1024;
+
+  @Param({"100000", "1000000"})
+  public int size;
+
+  @Param({"UNIFORM", "SORTED"})
+  public Distribution distribution;
+
+  @Param({"0", "0.6", "0.7"})
+  public double balance;
+
+  private Point[] points;
+  private PointQuadTree<Integer> tree;
+  private Rectangle[] queries;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void buildTree() {
+    points = distribution.points(size, 42);
+    tree = build();
+    Random random = new Random(42);
+    int side = Distribution.BOUNDS.width / 100;
+    queries = new Rectangle[QUERIES];
+    for (int i = 0; i < QUERIES; i++) {
+      Point center = points[random.nextInt(size)];
+      queries[i] = new Rectangle(center.x - side / 2, center.y - side / 2, side, side);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void printStructure() {
+    System.out.println();
+    System.out.println(tree.getStructure());
+  }
+
+  private PointQuadTree<Integer> build() {
+    PointQuadTree<Integer> built = new PointQuadTree<Integer>(new Rectangle(Distribution.BOUNDS));
+    if (balance > 0) {
+      built.setRebalancing(balance, PointQuadTree.DEFAULT_REBUILD_LIMIT);
+    }
+    for (int i = 0; i < size; i++) {
+      built.insert(new PointNode<Integer>(points[i], i));
+    }
+    return built;
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public PointQuadTree<Integer> insertAll() {
+    return build();
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public List<AbstractNode<Integer>> query() {
+    next = (next + 1) & (QUERIES - 1);
+    return tree.queryRange(queries[next]);
+  }
+
+}
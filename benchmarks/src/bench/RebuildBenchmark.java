@@ -0,0 +1,79 @@
+package bench;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.concurrent.TimeUnit;
+import main.NodePool;
+import main.PointNode;
+import main.PointQuadTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures rebuilding a PointQuadTree of size points from scratch, as a workload that
+ * rebuilds its tree every few seconds does: clearing it and inserting new nodes, or
+ * clearing it into a NodePool and inserting the recycled nodes. Run with -prof gc to
+ * compare the allocation rates.
+ * <pre>
+ * $ java -jar target/benchmarks.jar RebuildBenchmark -prof gc
+ * </pre>
+ * @author FrancescoA
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class RebuildBenchmark {
+
+  @Param({"100000", "1000000"})
+  public int size;
+
+  @Param({"UNIFORM", "CLUSTERED"})
+  public Distribution distribution;
+
+  private Point[] points;
+  private PointQuadTree<Integer> tree;
+  private NodePool<Integer> pool;
+
+  @Setup(Level.Trial)
+  public void buildTree() {
+    points = distribution.points(size, 42);
+    tree = new PointQuadTree<Integer>(new Rectangle(Distribution.BOUNDS));
+    pool = new NodePool<Integer>();
+    for (int i = 0; i < size; i++) {
+      tree.insert(pool.acquire(points[i], i));
+    }
+  }
+
+  @Benchmark
+  public PointQuadTree<Integer> allocate() {
+    tree.clear();
+    for (int i = 0; i < size; i++) {
+      tree.insert(new PointNode<Integer>(points[i].x, points[i].y, i));
+    }
+    return tree;
+  }
+
+  @Benchmark
+  public PointQuadTree<Integer> recycle() {
+    tree.clear(pool);
+    for (int i = 0; i < size; i++) {
+      tree.insert(pool.acquire(points[i], i));
+    }
+    return tree;
+  }
+
+}
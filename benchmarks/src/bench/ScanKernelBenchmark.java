@@ -0,0 +1,83 @@
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import main.RangeScanner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the scalar and the Vector API RangeScanner on their own: blocks of
+ * {@link main.MortonQuadTree#BLOCK} uniform points tested against rectangles that hold a
+ * given fraction of them. Scores are per point. The vector scanner is only used if the
+ * library was installed with the vector profile; otherwise both rows measure the scalar one.
+ * <pre>
+ * $ mvn -P vector install &amp;&amp; cd benchmarks &amp;&amp; mvn package
+ * $ java -jar target/benchmarks.jar ScanKernelBenchmark
+ * </pre>
+ * @author FrancescoA
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector"})
+public class ScanKernelBenchmark {
+
+  static final int POINTS = 1 << 16;
+  static final int BLOCK = 64;
+
+  public enum Scanner {
+    SCALAR, VECTOR
+  }
+
+  @Param({"SCALAR", "VECTOR"})
+  public Scanner scanner;
+
+  /**
+   * The fraction of the points within the rectangle.
+   */
+  @Param({"0.01", "0.1", "0.5", "0.9"})
+  public double selectivity;
+
+  private RangeScanner rangeScanner;
+  private final int[] xs = new int[POINTS], ys = new int[POINTS];
+  private final int[] hits = new int[BLOCK];
+  private int max;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void createPoints() {
+    rangeScanner = scanner == Scanner.VECTOR ? RangeScanner.vector() : RangeScanner.SCALAR;
+    System.out.println();
+    System.out.println("Scanner: " + rangeScanner);
+    Random random = new Random(42);
+    for (int i = 0; i < POINTS; i++) {
+      xs[i] = random.nextInt(1 << 20);
+      ys[i] = random.nextInt(1 << 20);
+    }
+    // A square whose sides span sqrt(selectivity) of each axis.
+    max = (int) ((1 << 20) * Math.sqrt(selectivity)) - 1;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BLOCK)
+  public int scanBlock() {
+    next = (next + BLOCK) & (POINTS - 1);
+    return rangeScanner.scan(xs, ys, next, next + BLOCK, 0, 0, max, max, hits);
+  }
+
+}
@@ -0,0 +1,73 @@
+package bench;
+
+import java.awt.Rectangle;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import main.AbstractQuadTree;
+import main.ConcurrentPointQuadTree;
+import main.PointNode;
+import main.ShardedQuadTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Inserts uniformly distributed points from several threads into one ConcurrentPointQuadTree,
+ * which every insert has to lock, and into a ShardedQuadTree of tiles x tiles tiles.
+ * The trees are rebuilt for every iteration.
+ * <pre>
+ * $ java -jar target/benchmarks.jar ShardedInsertBenchmark -t 8
+ * </pre>
+ * @author FrancescoA
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ShardedInsertBenchmark {
+
+  @Param({"4", "16"})
+  public int tiles;
+
+  private AbstractQuadTree<Integer> concurrent, sharded;
+
+  @Setup(Level.Iteration)
+  public void buildTrees() {
+    concurrent = new ConcurrentPointQuadTree<Integer>(new Rectangle(Distribution.BOUNDS));
+    sharded = new ShardedQuadTree<Integer>(new Rectangle(Distribution.BOUNDS), tiles, tiles);
+  }
+
+  @State(Scope.Thread)
+  public static class Points {
+    final Random random = new Random(Thread.currentThread().getId());
+
+    PointNode<Integer> next() {
+      return new PointNode<Integer>(random.nextInt(Distribution.BOUNDS.width), random.nextInt(Distribution.BOUNDS.height), 0);
+    }
+  }
+
+  @Benchmark
+  public void concurrentInsert(Points points) {
+    concurrent.insert(points.next());
+  }
+
+  @Benchmark
+  public void shardedInsert(Points points) {
+    sharded.insert(points.next());
+  }
+
+}
@@ -0,0 +1,60 @@
+package bench;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import main.MappedPointQuadTree;
+import main.PointNode;
+import main.PointQuadTree;
+import main.ValueCodec;
+
+/**
+ * Compares the startup time of rebuilding a PointQuadTree by inserting every point 
+ * with opening a memory-mapped snapshot of the same tree. 
+ * <pre>
+ * $ java -Xmx2g -cp target/benchmarks.jar bench.SnapshotBenchmark 1000000
+ * </pre>
+ * @author FrancescoA
+ *
+ */
+public class SnapshotBenchmark {
+
+  private static final int SIDE = 1 << 20;
+
+  public static void main(String[] args) throws IOException {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+    Random random = new Random(42);
+    int[] xs = new int[n], ys = new int[n];
+    for (int i = 0; i < n; i++) {
+      xs[i] = random.nextInt(SIDE);
+      ys[i] = random.nextInt(SIDE);
+    }
+    Rectangle query = new Rectangle(SIDE / 2, SIDE / 2, SIDE / 100, SIDE / 100);
+
+    long start = System.nanoTime();
+    PointQuadTree<Integer> tree = new PointQuadTree<Integer>(0, 0, SIDE, SIDE);
+    for (int i = 0; i < n; i++) {
+      tree.insert(new PointNode<Integer>(xs[i], ys[i], i));
+    }
+    int found = tree.queryRange(query).size();
+    System.out.printf("insert %d points and query: %.1f ms (%d hits)%n", tree.getSize(), (System.nanoTime() - start) / 1e6, found);
+
+    Path file = File.createTempFile("quadtree", ".snapshot").toPath();
+    try {
+      start = System.nanoTime();
+      MappedPointQuadTree.write(tree, file, ValueCodec.INTEGER);
+      System.out.printf("write snapshot: %.1f ms, %d bytes%n", (System.nanoTime() - start) / 1e6, Files.size(file));
+
+      start = System.nanoTime();
+      MappedPointQuadTree<Integer> mapped = MappedPointQuadTree.open(file, ValueCodec.INTEGER);
+      found = mapped.queryRange(query).size();
+      System.out.printf("open snapshot and query: %.1f ms (%d hits)%n", (System.nanoTime() - start) / 1e6, found);
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+}
@@ -0,0 +1,102 @@
+package bench;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import main.AbstractNode;
+import main.PointNode;
+import main.PointQuadTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Renders a map viewport of TILES x TILES tiles, either with one queryRange call per tile
+ * or with a single queryRanges call for all of them. Each operation is one viewport.
+ * <pre>
+ * $ java -jar target/benchmarks.jar TileQueryBenchmark -p size=1000000
+ * </pre>
+ * @author FrancescoA
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class TileQueryBenchmark {
+
+  static final int TILES = 16;
+  static final int VIEWPORTS = 64;
+
+  @Param({"1000000", "10000000"})
+  public int size;
+
+  @Param({"UNIFORM", "CLUSTERED"})
+  public Distribution distribution;
+
+  /**
+   * The side of the viewport as a fraction of the side of the bounds.
+   */
+  @Param({"0.01", "0.1"})
+  public double viewport;
+
+  private PointQuadTree<Integer> tree;
+  private List<List<Rectangle>> viewports;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void buildTree() {
+    Point[] points = distribution.points(size, 42);
+    tree = new PointQuadTree<Integer>(new Rectangle(Distribution.BOUNDS));
+    for (int i = 0; i < size; i++) {
+      tree.insert(new PointNode<Integer>(points[i], i));
+    }
+    Random random = new Random(7);
+    int tile = (int) (Distribution.BOUNDS.width * viewport) / TILES;
+    viewports = new ArrayList<List<Rectangle>>();
+    for (int v = 0; v < VIEWPORTS; v++) {
+      Point center = points[random.nextInt(size)];
+      List<Rectangle> tiles = new ArrayList<Rectangle>();
+      for (int tx = 0; tx < TILES; tx++) {
+        for (int ty = 0; ty < TILES; ty++) {
+          tiles.add(new Rectangle(center.x + (tx - TILES / 2) * tile, center.y + (ty - TILES / 2) * tile, tile, tile));
+        }
+      }
+      viewports.add(tiles);
+    }
+  }
+
+  private List<Rectangle> next() {
+    next = (next + 1) & (VIEWPORTS - 1);
+    return viewports.get(next);
+  }
+
+  @Benchmark
+  public int queryRangePerTile() {
+    int found = 0;
+    for (Rectangle tile : next()) {
+      found += tree.queryRange(tile).size();
+    }
+    return found;
+  }
+
+  @Benchmark
+  public List<List<AbstractNode<Integer>>> queryRanges() {
+    return tree.queryRanges(next());
+  }
+
+}
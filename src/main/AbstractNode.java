@@ -10,7 +10,13 @@ public abstract class AbstractNode<T> implements Comparable<AbstractNode<T>> {
   
   protected Point location;
   protected AbstractNode<T> northEast, southEast, southWest, northWest;
- 
+  /**
+   * The number of nodes in the subtree of this node, including itself, and the aggregate of
+   * their values under the aggregator of the tree, or null. Maintained by PointQuadTree.
+   */
+  int count = 1;
+  Object aggregate;
+
   /**
    * Basic constructor for a node with a location value. 
    * @param location
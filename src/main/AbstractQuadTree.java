@@ -1,7 +1,6 @@
 package main;
 import java.awt.Rectangle;
 import java.awt.Shape;
-import java.util.ArrayList;
 import java.util.List;
 
 
@@ -9,7 +8,6 @@ public abstract class AbstractQuadTree<T> {
   
   protected AbstractNode<T> root;
   protected Rectangle bounds;
-  protected List<AbstractNode<T>> queryResult;
   protected int size;
   
   /**
@@ -43,7 +41,6 @@ public abstract class AbstractQuadTree<T> {
     bounds.grow(1,1); //rectangle.contains method is not inclusive. 
     this.bounds = bounds;
     this.root = root;
-    this.queryResult = new ArrayList<AbstractNode<T>>();
     this.size = 0;
   }
   
@@ -83,12 +80,21 @@ public abstract class AbstractQuadTree<T> {
     return root;
   }
   
+  /**
+   * Get the total amount of nodes in the QuadTree. 
+   * @return the number of nodes in the QuadTree. 
+   */
+  public int getSize() {
+    return size;
+  }
+  
   /**
    * Inserts a node into the QuadTree instance. 
    * Should not insert duplicates (determined based on location). 
    * @param node a Node object
+   * @return what the insert did: INSERTED, or another outcome if there already was a node at its location
    */
-  public abstract void insert(AbstractNode<T> newNode);
+  public abstract InsertOutcome insert(AbstractNode<T> newNode);
   
   /**
    * Find all points in the QuadTree contained within a range. 
@@ -97,6 +103,32 @@ public abstract class AbstractQuadTree<T> {
    */
   public abstract List<AbstractNode<T>> queryRange(Shape range);
   
+  /**
+   * Passes every node whose location lies within the given bounds to a visitor, 
+   * without collecting the nodes into a list. 
+   * All bounds are inclusive. 
+   * @param minX the smallest x-coordinate of the range
+   * @param minY the smallest y-coordinate of the range
+   * @param maxX the largest x-coordinate of the range
+   * @param maxY the largest y-coordinate of the range
+   * @param visitor the visitor called for every node in the range
+   * @return true if the whole range was searched, false if the visitor stopped the query
+   */
+  public abstract boolean queryRange(int minX, int minY, int maxX, int maxY, NodeVisitor<T> visitor);
+  
+  /**
+   * Passes every node contained in a rectangle to a visitor, 
+   * without collecting the nodes into a list. 
+   * Finds the same nodes as queryRange(range). 
+   * @param range the rectangle that encompasses the locations of desired nodes
+   * @param visitor the visitor called for every node in the range
+   * @return true if the whole range was searched, false if the visitor stopped the query
+   */
+  public boolean queryRange(Rectangle range, NodeVisitor<T> visitor) {
+    // Rectangle.contains excludes the right and bottom edges. 
+    return queryRange(range.x, range.y, range.x + range.width - 1, range.y + range.height - 1, visitor);
+  }
+  
   /**
    * Clear the QuadTree and any desired data that is contained by subclasses. 
    */
@@ -0,0 +1,78 @@
+package main;
+
+/**
+ * Combines the values of the nodes in a range into a single aggregate, such as their sum,
+ * minimum or maximum. Used by {@link PointQuadTree#aggregateRange(Rectangle, Aggregator)}.
+ *
+ * combine must be associative and commutative, because nodes are combined in whatever order
+ * the tree holds them. A tree that is given an aggregator with
+ * {@link PointQuadTree#setAggregator(Aggregator)} keeps the aggregate of every subtree up to
+ * date, so its range queries can use whole subtrees without looking at their nodes.
+ * @author FrancescoA
+ *
+ * @param <T> the type of the node values
+ * @param <A> the type of the aggregate
+ */
+public interface Aggregator<T, A> {
+
+  /**
+   * Get the aggregate of a single node.
+   * @param value the value of the node, which may be null
+   * @return the aggregate, or null if the node does not contribute to it
+   */
+  A of(T value);
+
+  /**
+   * Combines two aggregates, neither of which is null.
+   * @param a an aggregate
+   * @param b another aggregate
+   * @return the aggregate of all the nodes of both
+   */
+  A combine(A a, A b);
+
+  /**
+   * The sum of the values, ignoring nodes without a value.
+   */
+  Aggregator<Number, Double> SUM = new Aggregator<Number, Double>() {
+    @Override
+    public Double of(Number value) {
+      return value == null ? null : value.doubleValue();
+    }
+
+    @Override
+    public Double combine(Double a, Double b) {
+      return a + b;
+    }
+  };
+
+  /**
+   * The smallest value, ignoring nodes without a value.
+   */
+  Aggregator<Number, Double> MIN = new Aggregator<Number, Double>() {
+    @Override
+    public Double of(Number value) {
+      return value == null ? null : value.doubleValue();
+    }
+
+    @Override
+    public Double combine(Double a, Double b) {
+      return Math.min(a, b);
+    }
+  };
+
+  /**
+   * The largest value, ignoring nodes without a value.
+   */
+  Aggregator<Number, Double> MAX = new Aggregator<Number, Double>() {
+    @Override
+    public Double of(Number value) {
+      return value == null ? null : value.doubleValue();
+    }
+
+    @Override
+    public Double combine(Double a, Double b) {
+      return Math.max(a, b);
+    }
+  };
+
+}
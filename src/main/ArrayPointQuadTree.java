@@ -0,0 +1,332 @@
+package main;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A point QuadTree that stores its nodes in primitive arrays instead of an object graph
+ * of {@link PointNode}s.
+ *
+ * Node i has its location in xs[i] and ys[i], its value in values[i], and the indices of
+ * its four children in children[4*i + NE/SE/SW/NW] (NONE if the quadrant is empty).
+ * The tree has exactly the same shape as a {@link PointQuadTree} built from the same
+ * insertion sequence, but costs a few array slots per point instead of a node object,
+ * a Point object and four references.
+ *
+ * The tree is not thread-safe, not even for concurrent queries, which share one traversal
+ * stack. Nodes passed to {@link #insert(AbstractNode)} are copied into the arrays, and the
+ * nodes returned by {@link #queryRange(Shape)} are new {@link PointNode} instances, in a new
+ * list on every call.
+ * @author FrancescoA
+ *
+ * @param <T> the type of the node values
+ */
+public class ArrayPointQuadTree<T> extends AbstractQuadTree<T> {
+
+  /**
+   * Child index of an empty quadrant.
+   */
+  public static final int NONE = -1;
+
+  static final int NE = 0, SE = 1, SW = 2, NW = 3;
+
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private int[] xs, ys;
+  private int[] children;
+  private Object[] values;
+  private int[] stack;
+  private int visited = 0;
+
+  public ArrayPointQuadTree(Rectangle bounds) {
+    this(bounds, DEFAULT_CAPACITY);
+  }
+
+  public ArrayPointQuadTree(int x, int y, int width, int height) {
+    this(new Rectangle(x, y, width, height));
+  }
+
+  /**
+   * A QuadTree constructor that pre-sizes the node arrays.
+   * @param bounds the dimension and location of the QuadTree
+   * @param capacity the number of nodes the tree holds before its arrays have to grow
+   */
+  public ArrayPointQuadTree(Rectangle bounds, int capacity) {
+    super(bounds);
+    capacity = Math.max(capacity, 1);
+    xs = new int[capacity];
+    ys = new int[capacity];
+    children = new int[4 * capacity];
+    values = new Object[capacity];
+    stack = new int[DEFAULT_CAPACITY];
+  }
+
+  @Override
+  public InsertOutcome insert(AbstractNode<T> node) {
+    T value = null;
+    if (node instanceof PointNode<?>) {
+      value = ((PointNode<T>) node).getValue();
+    }
+    Point location = node.getLocation();
+    return insert(location.x, location.y, value) ? InsertOutcome.INSERTED : InsertOutcome.REJECTED;
+  }
+
+  /**
+   * Inserts a point into the QuadTree instance.
+   * @param location the location of the point
+   * @param value the value of the point
+   * @return INSERTED, or REJECTED if there already was a node at the location
+   */
+  public InsertOutcome insert(Point location, T value) {
+    return insert(location.x, location.y, value) ? InsertOutcome.INSERTED : InsertOutcome.REJECTED;
+  }
+
+  /**
+   * Inserts a point into the QuadTree instance. Duplicate locations are not inserted.
+   * @param x the x-coordinate of the point
+   * @param y the y-coordinate of the point
+   * @param value the value of the point
+   * @return true if the point was inserted, false if its location was already taken
+   */
+  public boolean insert(int x, int y, T value) {
+    if (!bounds.contains(x, y)) {
+      throw new QuadTreeException("Cannot insert node (" + x + ", " + y + ") because it is outside QuadTree bounds.");
+    }
+    if (size == 0) {
+      add(x, y, value);
+      return true;
+    }
+    int current = 0;
+    while (true) {
+      int quadrant = quadrantOf(x, y, current);
+      if (quadrant < 0) {
+        return false;
+      }
+      int slot = 4 * current + quadrant;
+      int child = children[slot];
+      if (child == NONE) {
+        // add() may replace the children array, so it must run before the store.
+        int index = add(x, y, value);
+        children[slot] = index;
+        return true;
+      }
+      current = child;
+    }
+  }
+
+  /**
+   * Determines which quadrant of node i a location falls into,
+   * following the same conventions as the AbstractNode.isXOf methods.
+   * @return NE, SE, SW or NW, or a negative value if the location is the location of node i
+   */
+  private int quadrantOf(int x, int y, int i) {
+    int cx = xs[i];
+    int cy = ys[i];
+    if (x >= cx && y > cy) {
+      return NE;
+    } else if (x > cx && y <= cy) {
+      return SE;
+    } else if (x < cx && y >= cy) {
+      return NW;
+    } else if (x <= cx && y < cy) {
+      return SW;
+    }
+    return -1;
+  }
+
+  /**
+   * Appends a new childless node to the arrays.
+   * @return the index of the new node
+   */
+  private int add(int x, int y, T value) {
+    if (size == xs.length) {
+      int capacity = xs.length + (xs.length >> 1) + 1;
+      xs = Arrays.copyOf(xs, capacity);
+      ys = Arrays.copyOf(ys, capacity);
+      children = Arrays.copyOf(children, 4 * capacity);
+      values = Arrays.copyOf(values, capacity);
+    }
+    int index = size++;
+    xs[index] = x;
+    ys[index] = y;
+    values[index] = value;
+    Arrays.fill(children, 4 * index, 4 * index + 4, NONE);
+    return index;
+  }
+
+  @Override
+  public List<AbstractNode<T>> queryRange(Shape range) {
+    List<AbstractNode<T>> result = new ArrayList<AbstractNode<T>>();
+    visited = 0;
+    if (size == 0) {
+      return result;
+    }
+    Rectangle r = range.getBounds();
+    int minX = r.x, minY = r.y;
+    int maxX = r.x + r.width, maxY = r.y + r.height;
+    int top = 0;
+    stack[top++] = 0;
+    while (top > 0) {
+      int i = stack[--top];
+      visited++;
+      int x = xs[i], y = ys[i];
+      if (range.contains(x, y)) {
+        result.add(node(i));
+      }
+      // Children are pushed in reverse so they are visited in the same order as PointQuadTree.
+      if (top + 4 > stack.length) {
+        stack = Arrays.copyOf(stack, 2 * stack.length);
+      }
+      int base = 4 * i;
+      if (x <= maxX && y < maxY && children[base + NE] != NONE) {
+        stack[top++] = children[base + NE];
+      }
+      if (x > minX && y <= maxY && children[base + NW] != NONE) {
+        stack[top++] = children[base + NW];
+      }
+      if (x < maxX && y >= minY && children[base + SE] != NONE) {
+        stack[top++] = children[base + SE];
+      }
+      if (x >= minX && y > minY && children[base + SW] != NONE) {
+        stack[top++] = children[base + SW];
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Passes every point within the given bounds to a visitor as primitive coordinates. 
+   * Unlike the other queryRange methods this allocates nothing once the traversal 
+   * stack has grown to the depth of the tree. 
+   * All bounds are inclusive. 
+   * @param minX the smallest x-coordinate of the range
+   * @param minY the smallest y-coordinate of the range
+   * @param maxX the largest x-coordinate of the range
+   * @param maxY the largest y-coordinate of the range
+   * @param visitor the visitor called for every point in the range
+   * @return true if the whole range was searched, false if the visitor stopped the query
+   */
+  @SuppressWarnings("unchecked")
+  public boolean queryRange(int minX, int minY, int maxX, int maxY, PointVisitor<T> visitor) {
+    visited = 0;
+    if (size == 0) {
+      return true;
+    }
+    int top = 0;
+    stack[top++] = 0;
+    while (top > 0) {
+      int i = stack[--top];
+      visited++;
+      int x = xs[i], y = ys[i];
+      if (x >= minX && x <= maxX && y >= minY && y <= maxY && !visitor.visit(x, y, (T) values[i])) {
+        return false;
+      }
+      if (top + 4 > stack.length) {
+        stack = Arrays.copyOf(stack, 2 * stack.length);
+      }
+      int base = 4 * i;
+      if (x <= maxX && y < maxY && children[base + NE] != NONE) {
+        stack[top++] = children[base + NE];
+      }
+      if (x > minX && y <= maxY && children[base + NW] != NONE) {
+        stack[top++] = children[base + NW];
+      }
+      if (x < maxX && y >= minY && children[base + SE] != NONE) {
+        stack[top++] = children[base + SE];
+      }
+      if (x >= minX && y > minY && children[base + SW] != NONE) {
+        stack[top++] = children[base + SW];
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Passes every point contained in a rectangle to a visitor as primitive coordinates. 
+   * @param range the rectangle that encompasses the locations of desired points
+   * @param visitor the visitor called for every point in the range
+   * @return true if the whole range was searched, false if the visitor stopped the query
+   */
+  public boolean queryRange(Rectangle range, PointVisitor<T> visitor) {
+    return queryRange(range.x, range.y, range.x + range.width - 1, range.y + range.height - 1, visitor);
+  }
+
+  /**
+   * Creates a new PointNode for every node passed to the visitor; 
+   * use the PointVisitor overload to avoid the allocations. 
+   */
+  @Override
+  public boolean queryRange(int minX, int minY, int maxX, int maxY, final NodeVisitor<T> visitor) {
+    return queryRange(minX, minY, maxX, maxY, new PointVisitor<T>() {
+      @Override
+      public boolean visit(int x, int y, T value) {
+        return visitor.visit(new PointNode<T>(x, y, value));
+      }
+    });
+  }
+
+  /**
+   * Like the queryRange method but visits every single node and does not take advantage of QuadTree structure.
+   * @param range
+   * @return
+   */
+  public List<AbstractNode<T>> innefficientQueryRange(Shape range) {
+    List<AbstractNode<T>> result = new ArrayList<AbstractNode<T>>();
+    visited = size;
+    for (int i = 0; i < size; i++) {
+      if (range.contains(xs[i], ys[i])) {
+        result.add(node(i));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Creates a PointNode holding the location and value of node i.
+   */
+  @SuppressWarnings("unchecked")
+  private PointNode<T> node(int i) {
+    return new PointNode<T>(xs[i], ys[i], (T) values[i]);
+  }
+
+  /**
+   * Returns the root of the tree as a new, childless PointNode, or null if the tree is empty.
+   */
+  @Override
+  public AbstractNode<T> getRoot() {
+    return size == 0 ? null : node(0);
+  }
+
+  public int getVisitedOnLastSearch() {
+    return visited;
+  }
+
+  /**
+   * Get the number of nodes the tree can hold before its arrays have to grow.
+   * @return the capacity of the node arrays
+   */
+  public int getCapacity() {
+    return xs.length;
+  }
+
+  /**
+   * Shrink the node arrays to the number of nodes in the tree.
+   */
+  public void trimToSize() {
+    int capacity = Math.max(size, 1);
+    xs = Arrays.copyOf(xs, capacity);
+    ys = Arrays.copyOf(ys, capacity);
+    children = Arrays.copyOf(children, 4 * capacity);
+    values = Arrays.copyOf(values, capacity);
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(values, 0, size, null);
+    size = 0;
+  }
+
+}
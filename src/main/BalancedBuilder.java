@@ -0,0 +1,145 @@
+package main;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Links a set of nodes into a balanced point QuadTree. 
+ * 
+ * The nodes are sorted by x (then y) once. Each subtree is rooted at the median of its 
+ * nodes, and the remaining nodes are split into the four quadrants of the median while 
+ * keeping their order, so every quadrant is sorted again and holds at most half of the 
+ * nodes of its parent. The tree is therefore at most log2(n) + 1 levels deep, and it is 
+ * built in O(n log n). Subtrees larger than a threshold are built in parallel. 
+ * @author FrancescoA
+ *
+ * @param <T> the type of the node values
+ */
+class BalancedBuilder<T> extends RecursiveTask<AbstractNode<T>> {
+  
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Subtrees with fewer nodes than this are built by the current thread. 
+   */
+  static final int PARALLEL_THRESHOLD = 1 << 13;
+  
+  private static final Comparator<AbstractNode<?>> BY_LOCATION = new Comparator<AbstractNode<?>>() {
+    @Override
+    public int compare(AbstractNode<?> a, AbstractNode<?> b) {
+      int dx = Integer.compare(a.location.x, b.location.x);
+      return dx != 0 ? dx : Integer.compare(a.location.y, b.location.y);
+    }
+  };
+  
+  private final AbstractNode<T>[] nodes;
+  private final AbstractNode<T>[] buffer;
+  private final int from, to;
+  
+  private BalancedBuilder(AbstractNode<T>[] nodes, AbstractNode<T>[] buffer, int from, int to) {
+    this.nodes = nodes;
+    this.buffer = buffer;
+    this.from = from;
+    this.to = to;
+  }
+  
+  /**
+   * Sorts nodes by location and removes all but the first node at every location, 
+   * as needed by build(). 
+   * @param nodes the nodes to sort; the array is reordered
+   * @param count the number of nodes at the start of the array to use
+   * @return the number of distinct nodes, which are moved to the start of the array
+   */
+  static <T> int sortAndDeduplicate(AbstractNode<T>[] nodes, int count) {
+    if (count >= PARALLEL_THRESHOLD) {
+      Arrays.parallelSort(nodes, 0, count, BY_LOCATION);
+    } else {
+      Arrays.sort(nodes, 0, count, BY_LOCATION);
+    }
+    int distinct = 0;
+    for (int i = 0; i < count; i++) {
+      if (distinct == 0 || BY_LOCATION.compare(nodes[distinct - 1], nodes[i]) != 0) {
+        nodes[distinct++] = nodes[i];
+      }
+    }
+    Arrays.fill(nodes, distinct, count, null);
+    return distinct;
+  }
+  
+  /**
+   * Links nodes that are already sorted by location and distinct into a balanced tree. 
+   * The children of every node are replaced. 
+   * @param nodes the sorted nodes; the array is used as scratch space
+   * @param count the number of nodes at the start of the array to use
+   * @return the root of the new tree, or null if count is 0
+   */
+  static <T> AbstractNode<T> build(AbstractNode<T>[] nodes, int count) {
+    AbstractNode<T>[] buffer = Arrays.copyOf(nodes, count);
+    BalancedBuilder<T> task = new BalancedBuilder<T>(nodes, buffer, 0, count);
+    if (count >= PARALLEL_THRESHOLD) {
+      return ForkJoinPool.commonPool().invoke(task);
+    }
+    return task.compute();
+  }
+  
+  @Override
+  protected AbstractNode<T> compute() {
+    if (from >= to) {
+      return null;
+    }
+    int median = (from + to) >>> 1;
+    AbstractNode<T> root = nodes[median];
+    // Count the nodes in each quadrant, then copy them into buffer in order. 
+    int ne = 0, se = 0, sw = 0;
+    for (int i = from; i < to; i++) {
+      if (i == median) {
+        continue;
+      }
+      AbstractNode<T> n = nodes[i];
+      if (n.isNorthEastOf(root)) {
+        ne++;
+      } else if (n.isSouthEastOf(root)) {
+        se++;
+      } else if (n.isSouthWestOf(root)) {
+        sw++;
+      }
+    }
+    int neAt = from, seAt = neAt + ne, swAt = seAt + se, nwAt = swAt + sw;
+    int neEnd = seAt, seEnd = swAt, swEnd = nwAt, nwEnd = to - 1;
+    for (int i = from; i < to; i++) {
+      if (i == median) {
+        continue;
+      }
+      AbstractNode<T> n = nodes[i];
+      if (n.isNorthEastOf(root)) {
+        buffer[neAt++] = n;
+      } else if (n.isSouthEastOf(root)) {
+        buffer[seAt++] = n;
+      } else if (n.isSouthWestOf(root)) {
+        buffer[swAt++] = n;
+      } else {
+        buffer[nwAt++] = n;
+      }
+    }
+    // The quadrants now live in buffer, so nodes becomes the scratch space of the subtasks. 
+    BalancedBuilder<T> northEast = new BalancedBuilder<T>(buffer, nodes, from, neEnd);
+    BalancedBuilder<T> southEast = new BalancedBuilder<T>(buffer, nodes, neEnd, seEnd);
+    BalancedBuilder<T> southWest = new BalancedBuilder<T>(buffer, nodes, seEnd, swEnd);
+    BalancedBuilder<T> northWest = new BalancedBuilder<T>(buffer, nodes, swEnd, nwEnd);
+    if (to - from >= PARALLEL_THRESHOLD) {
+      invokeAll(northEast, southEast, southWest, northWest);
+      root.northEast = northEast.join();
+      root.southEast = southEast.join();
+      root.southWest = southWest.join();
+      root.northWest = northWest.join();
+    } else {
+      root.northEast = northEast.compute();
+      root.southEast = southEast.compute();
+      root.southWest = southWest.compute();
+      root.northWest = northWest.compute();
+    }
+    return root;
+  }
+
+}
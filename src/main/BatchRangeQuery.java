@@ -0,0 +1,174 @@
+package main;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Answers many rectangle queries on a PointQuadTree in a single traversal.
+ *
+ * Every node is visited at most once per batch. The queries that can still contain nodes
+ * below a node are carried down as a list of query indices, and every child only gets the
+ * queries that intersect its quadrant, so a subtree that no query intersects is skipped
+ * and the upper levels of the tree are shared by all the queries. A single pass over the
+ * queries of a node tests the node itself and splits the queries among its four children.
+ * The index lists of all the nodes on the current path are kept one after the other in
+ * a single array. Once a single query is left, which is the common case near the leaves,
+ * its subtree is searched the way queryRange searches it, without any lists.
+ * @author FrancescoA
+ *
+ * @param <T> the type of the node values
+ */
+class BatchRangeQuery<T> {
+
+  /**
+   * minX, minY, maxX, maxY of query q at 4*q; max is exclusive, like the bounds of a Shape.
+   */
+  private final int[] bounds;
+  private final List<AbstractNode<T>>[] results;
+  private int[] active;
+  int visited, pruned, maxDepth, found;
+
+  @SuppressWarnings("unchecked")
+  BatchRangeQuery(List<? extends Rectangle> ranges) {
+    int count = ranges.size();
+    bounds = new int[4 * count];
+    results = new List[count];
+    for (int q = 0; q < count; q++) {
+      Rectangle r = ranges.get(q);
+      bounds[4 * q] = r.x;
+      bounds[4 * q + 1] = r.y;
+      bounds[4 * q + 2] = r.x + r.width;
+      bounds[4 * q + 3] = r.y + r.height;
+      results[q] = new ArrayList<AbstractNode<T>>();
+    }
+    active = new int[Math.max(64, 8 * count)];
+  }
+
+  /**
+   * Searches the tree below root for all the queries.
+   * @return the nodes found for every query, in the order of the queries
+   */
+  List<List<AbstractNode<T>>> search(AbstractNode<T> root) {
+    int count = 0;
+    for (int q = 0; q < results.length; q++) {
+      if (bounds[4 * q + 2] > bounds[4 * q] && bounds[4 * q + 3] > bounds[4 * q + 1]) {
+        active[count++] = q;
+      }
+    }
+    if (root != null && count > 0) {
+      search(root, 0, count, count, 1);
+    }
+    return Arrays.asList(results);
+  }
+
+  /**
+   * Visits node for the count queries listed in active[from, from + count).
+   * The queries for the four children are written to four lists of up to count
+   * indices starting at free, the first index not used by a node on the current path.
+   */
+  private void search(AbstractNode<T> node, int from, int count, int free, int depth) {
+    visited++;
+    maxDepth = Math.max(maxDepth, depth);
+    int end = from + count;
+    int next = free + 4 * count;
+    if (next > active.length) {
+      active = Arrays.copyOf(active, Math.max(2 * active.length, next));
+    }
+    int[] active = this.active;
+    int[] bounds = this.bounds;
+    int x = node.location.x;
+    int y = node.location.y;
+    AbstractNode<T> southWest = node.southWest, southEast = node.southEast;
+    AbstractNode<T> northWest = node.northWest, northEast = node.northEast;
+    int sw = free, se = free + count, nw = free + 2 * count, ne = free + 3 * count;
+    for (int i = from; i < end; i++) {
+      int q = active[i];
+      int b = 4 * q;
+      int minX = bounds[b], minY = bounds[b + 1], maxX = bounds[b + 2], maxY = bounds[b + 3];
+      if (x >= minX && x < maxX && y >= minY && y < maxY) {
+        results[q].add(node);
+        found++;
+      }
+      // The same pruning as the single-query search.
+      if (southWest != null && PointQuadTree.searchSouthWest(x, y, minX, minY)) {
+        active[sw++] = q;
+      }
+      if (southEast != null && PointQuadTree.searchSouthEast(x, y, maxX, minY)) {
+        active[se++] = q;
+      }
+      if (northWest != null && PointQuadTree.searchNorthWest(x, y, minX, maxY)) {
+        active[nw++] = q;
+      }
+      if (northEast != null && PointQuadTree.searchNorthEast(x, y, maxX, maxY)) {
+        active[ne++] = q;
+      }
+    }
+    // Same order as the single-query search, so every query finds its nodes in the same order.
+    descend(southWest, free, sw - free, next, depth);
+    descend(southEast, free + count, se - free - count, next, depth);
+    descend(northWest, free + 2 * count, nw - free - 2 * count, next, depth);
+    descend(northEast, free + 3 * count, ne - free - 3 * count, next, depth);
+  }
+
+  private void descend(AbstractNode<T> child, int from, int count, int free, int depth) {
+    if (child == null) {
+      return;
+    }
+    if (count == 0) {
+      pruned++;
+    } else if (count == 1) {
+      int b = 4 * active[from];
+      search(child, bounds[b], bounds[b + 1], bounds[b + 2], bounds[b + 3], results[active[from]], depth + 1);
+    } else {
+      search(child, from, count, free, depth + 1);
+    }
+  }
+
+  /**
+   * Searches the subtree of node for a single query with the given bounds, adding the nodes found to result.
+   */
+  private void search(AbstractNode<T> node, int minX, int minY, int maxX, int maxY, List<AbstractNode<T>> result, int depth) {
+    visited++;
+    maxDepth = Math.max(maxDepth, depth);
+    int x = node.location.x;
+    int y = node.location.y;
+    if (x >= minX && x < maxX && y >= minY && y < maxY) {
+      result.add(node);
+      found++;
+    }
+    AbstractNode<T> child = node.southWest;
+    if (child != null) {
+      if (PointQuadTree.searchSouthWest(x, y, minX, minY)) {
+        search(child, minX, minY, maxX, maxY, result, depth + 1);
+      } else {
+        pruned++;
+      }
+    }
+    child = node.southEast;
+    if (child != null) {
+      if (PointQuadTree.searchSouthEast(x, y, maxX, minY)) {
+        search(child, minX, minY, maxX, maxY, result, depth + 1);
+      } else {
+        pruned++;
+      }
+    }
+    child = node.northWest;
+    if (child != null) {
+      if (PointQuadTree.searchNorthWest(x, y, minX, maxY)) {
+        search(child, minX, minY, maxX, maxY, result, depth + 1);
+      } else {
+        pruned++;
+      }
+    }
+    child = node.northEast;
+    if (child != null) {
+      if (PointQuadTree.searchNorthEast(x, y, maxX, maxY)) {
+        search(child, minX, minY, maxX, maxY, result, depth + 1);
+      } else {
+        pruned++;
+      }
+    }
+  }
+
+}
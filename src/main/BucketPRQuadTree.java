@@ -0,0 +1,276 @@
+package main;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A bucket PR (point-region) QuadTree.
+ *
+ * Unlike a {@link PointQuadTree}, which splits space at every inserted point, this tree
+ * splits the QuadTree bounds into four equal quadrants, and those again into four, only
+ * when a region holds more points than its leaf capacity. The points of a leaf are kept in
+ * contiguous arrays, so a query looks at few nodes and scans plain int arrays, and the depth
+ * never exceeds maxDepth whatever the insertion order.
+ *
+ * Nodes are kept in the leaves as they are; their child links are not used, and getRoot()
+ * returns null.
+ * @see <a href="http://en.wikipedia.org/wiki/Quadtree#Point-region_.28PR.29_quadtree">PR QuadTree</a>
+ * @author FrancescoA
+ *
+ * @param <T> the type of the node values
+ */
+public class BucketPRQuadTree<T> extends AbstractQuadTree<T> {
+
+  public static final int DEFAULT_LEAF_CAPACITY = 32;
+  public static final int DEFAULT_MAX_DEPTH = 16;
+
+  private final int leafCapacity;
+  private final int maxDepth;
+  private Region<T> region;
+  private int visited = 0;
+
+  public BucketPRQuadTree(Rectangle bounds) {
+    this(bounds, DEFAULT_LEAF_CAPACITY, DEFAULT_MAX_DEPTH);
+  }
+
+  public BucketPRQuadTree(int x, int y, int width, int height) {
+    this(new Rectangle(x, y, width, height));
+  }
+
+  /**
+   * A QuadTree constructor.
+   * @param bounds the dimension and location of the QuadTree
+   * @param leafCapacity the number of points a leaf holds before it is split
+   * @param maxDepth the depth below which leaves are no longer split, but grow beyond their capacity
+   */
+  public BucketPRQuadTree(Rectangle bounds, int leafCapacity, int maxDepth) {
+    super(bounds);
+    if (leafCapacity < 1) {
+      throw new IllegalArgumentException("leafCapacity must be positive: " + leafCapacity);
+    }
+    if (maxDepth < 0) {
+      throw new IllegalArgumentException("maxDepth must not be negative: " + maxDepth);
+    }
+    this.leafCapacity = leafCapacity;
+    this.maxDepth = maxDepth;
+    clear();
+  }
+
+  @Override
+  public InsertOutcome insert(AbstractNode<T> node) {
+    int x = node.getLocation().x;
+    int y = node.getLocation().y;
+    if (!bounds.contains(x, y)) {
+      throw new QuadTreeException("Cannot insert node " + node + " because it is outside QuadTree bounds.");
+    }
+    Region<T> r = region;
+    while (r.children != null) {
+      r = r.children[r.quadrantOf(x, y)];
+    }
+    if (r.indexOf(x, y) >= 0) {
+      return InsertOutcome.REJECTED;
+    }
+    while (r.count == leafCapacity && r.depth < maxDepth && r.canSplit()) {
+      r.split(leafCapacity);
+      r = r.children[r.quadrantOf(x, y)];
+    }
+    r.add(node, x, y);
+    size++;
+    return InsertOutcome.INSERTED;
+  }
+
+  @Override
+  public List<AbstractNode<T>> queryRange(Shape range) {
+    final List<AbstractNode<T>> result = new ArrayList<AbstractNode<T>>();
+    Rectangle r = range.getBounds();
+    int[] count = new int[1];
+    queryRange(region, range, r.x, r.y, r.x + r.width, r.y + r.height, result, count);
+    visited = count[0];
+    return result;
+  }
+
+  /**
+   * Recursive helper function to find all points contained within a range.
+   * minX/minY are inclusive and maxX/maxY exclusive, like the bounds of a Shape.
+   */
+  private void queryRange(Region<T> r, Shape range, int minX, int minY, int maxX, int maxY,
+      List<AbstractNode<T>> result, int[] visited) {
+    visited[0]++;
+    if (r.children != null) {
+      for (Region<T> child : r.children) {
+        if (child.minX < maxX && child.maxX > minX && child.minY < maxY && child.maxY > minY) {
+          queryRange(child, range, minX, minY, maxX, maxY, result, visited);
+        }
+      }
+      return;
+    }
+    int[] xs = r.xs, ys = r.ys;
+    for (int i = 0; i < r.count; i++) {
+      int x = xs[i], y = ys[i];
+      if (x >= minX && x < maxX && y >= minY && y < maxY && range.contains(x, y)) {
+        result.add(r.nodes[i]);
+      }
+    }
+  }
+
+  @Override
+  public boolean queryRange(int minX, int minY, int maxX, int maxY, NodeVisitor<T> visitor) {
+    int[] count = new int[1];
+    boolean completed = queryRange(region, minX, minY, maxX, maxY, visitor, count);
+    visited = count[0];
+    return completed;
+  }
+
+  /**
+   * Recursive helper function to pass all points within inclusive bounds to a visitor.
+   * @return false if the visitor stopped the query
+   */
+  private boolean queryRange(Region<T> r, int minX, int minY, int maxX, int maxY, NodeVisitor<T> visitor, int[] visited) {
+    visited[0]++;
+    if (r.children != null) {
+      for (Region<T> child : r.children) {
+        if (child.minX <= maxX && child.maxX > minX && child.minY <= maxY && child.maxY > minY
+            && !queryRange(child, minX, minY, maxX, maxY, visitor, visited)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    int[] xs = r.xs, ys = r.ys;
+    for (int i = 0; i < r.count; i++) {
+      int x = xs[i], y = ys[i];
+      if (x >= minX && x <= maxX && y >= minY && y <= maxY && !visitor.visit(r.nodes[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Get the number of regions (internal and leaf) visited by the last query on this tree.
+   * @return the number of visited regions
+   */
+  public int getVisitedOnLastSearch() {
+    return visited;
+  }
+
+  public int getLeafCapacity() {
+    return leafCapacity;
+  }
+
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+
+  /**
+   * Get the number of levels of regions, 1 if the tree has never been split.
+   * @return the height of the tree
+   */
+  public int getHeight() {
+    return region.height();
+  }
+
+  @Override
+  public void clear() {
+    region = new Region<T>(bounds.x, bounds.y, bounds.x + bounds.width, bounds.y + bounds.height, 0, leafCapacity);
+    size = 0;
+  }
+
+  /**
+   * A rectangular region of the tree: either a leaf holding points, or split into four children.
+   * minX/minY are inclusive and maxX/maxY exclusive.
+   */
+  private static final class Region<T> {
+
+    static final int NE = 0, SE = 1, SW = 2, NW = 3;
+
+    final int minX, minY, maxX, maxY;
+    final int midX, midY;
+    final int depth;
+    Region<T>[] children;
+    int[] xs, ys;
+    AbstractNode<T>[] nodes;
+    int count;
+
+    @SuppressWarnings("unchecked")
+    Region(int minX, int minY, int maxX, int maxY, int depth, int capacity) {
+      this.minX = minX;
+      this.minY = minY;
+      this.maxX = maxX;
+      this.maxY = maxY;
+      this.midX = (int) (((long) minX + maxX) >> 1);
+      this.midY = (int) (((long) minY + maxY) >> 1);
+      this.depth = depth;
+      this.xs = new int[capacity];
+      this.ys = new int[capacity];
+      this.nodes = new AbstractNode[capacity];
+    }
+
+    boolean canSplit() {
+      return maxX - minX > 1 || maxY - minY > 1;
+    }
+
+    int quadrantOf(int x, int y) {
+      if (x >= midX) {
+        return y >= midY ? NE : SE;
+      }
+      return y >= midY ? NW : SW;
+    }
+
+    int indexOf(int x, int y) {
+      for (int i = 0; i < count; i++) {
+        if (xs[i] == x && ys[i] == y) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    void add(AbstractNode<T> node, int x, int y) {
+      if (count == xs.length) {
+        int capacity = 2 * count;
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+        nodes = Arrays.copyOf(nodes, capacity);
+      }
+      xs[count] = x;
+      ys[count] = y;
+      nodes[count] = node;
+      count++;
+    }
+
+    /**
+     * Turns this leaf into an internal region and moves its points to four new leaves.
+     */
+    @SuppressWarnings("unchecked")
+    void split(int capacity) {
+      children = new Region[4];
+      children[NE] = new Region<T>(midX, midY, maxX, maxY, depth + 1, capacity);
+      children[SE] = new Region<T>(midX, minY, maxX, midY, depth + 1, capacity);
+      children[SW] = new Region<T>(minX, minY, midX, midY, depth + 1, capacity);
+      children[NW] = new Region<T>(minX, midY, midX, maxY, depth + 1, capacity);
+      for (int i = 0; i < count; i++) {
+        children[quadrantOf(xs[i], ys[i])].add(nodes[i], xs[i], ys[i]);
+      }
+      xs = null;
+      ys = null;
+      nodes = null;
+      count = 0;
+    }
+
+    int height() {
+      if (children == null) {
+        return 1;
+      }
+      int height = 0;
+      for (Region<T> child : children) {
+        height = Math.max(height, child.height());
+      }
+      return height + 1;
+    }
+
+  }
+
+}
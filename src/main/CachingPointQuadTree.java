@@ -0,0 +1,242 @@
+package main;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.RectangularShape;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A PointQuadTree that remembers the results of its most recent range queries.
+ *
+ * The results of query(Shape), and so of queryRange(Shape) and getAllNodes(), are kept in
+ * a bounded least-recently-used cache keyed by the query shape, so repeating a query
+ * until the tree changes only costs a map lookup and a copy of the result list.
+ * Only rectangles, ellipses and the other RectangularShapes are cached, because they are
+ * compared by value and can be copied, so changing a shape after querying it never
+ * returns a stale result. Other shapes are always searched.
+ *
+ * An insert, remove or move only invalidates the cached queries whose shape contains
+ * the locations it changes; bulkLoad and clear invalidate the whole cache.
+ * Like PointQuadTree, the tree can be queried by any number of threads while it is not
+ * being modified.
+ * @author FrancescoA
+ *
+ * @param <T> the type of the node values
+ */
+public class CachingPointQuadTree<T> extends PointQuadTree<T> {
+
+  /**
+   * The number of queries cached by default.
+   */
+  public static final int DEFAULT_CAPACITY = 256;
+
+  private final LinkedHashMap<Shape, List<AbstractNode<T>>> cache;
+  private final int capacity;
+  private long hits, misses, evictions, invalidations;
+
+  public CachingPointQuadTree(Rectangle bounds) {
+    this(bounds, DEFAULT_CAPACITY);
+  }
+
+  public CachingPointQuadTree(int x, int y, int width, int height) {
+    this(new Rectangle(x, y, width, height));
+  }
+
+  /**
+   * @param bounds the dimension and location of the QuadTree
+   * @param capacity the number of query results to keep
+   */
+  public CachingPointQuadTree(Rectangle bounds, int capacity) {
+    super(bounds);
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+    this.cache = new LinkedHashMap<Shape, List<AbstractNode<T>>>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Shape, List<AbstractNode<T>>> eldest) {
+        if (size() > CachingPointQuadTree.this.capacity) {
+          evictions++;
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Returns the cached result of an earlier query with an equal shape if the tree has not
+   * changed within that shape since. A cached result has a visited count of 0.
+   */
+  @Override
+  public QueryResult<T> query(Shape range) {
+    if (!(range instanceof RectangularShape)) {
+      return super.query(range);
+    }
+    List<AbstractNode<T>> cached;
+    synchronized (cache) {
+      cached = cache.get(range);
+      if (cached != null) {
+        hits++;
+      } else {
+        misses++;
+      }
+    }
+    if (cached != null) {
+      QueryResult<T> result = new QueryResult<T>(cached.size());
+      result.getNodes().addAll(cached);
+      return result;
+    }
+    QueryResult<T> result = super.query(range);
+    // Copies of both, so neither the caller nor the tree can change the cached entry.
+    Shape key = (Shape) ((RectangularShape) range).clone();
+    List<AbstractNode<T>> nodes = new ArrayList<AbstractNode<T>>(result.getNodes());
+    synchronized (cache) {
+      cache.put(key, nodes);
+    }
+    return result;
+  }
+
+  @Override
+  public InsertOutcome insert(AbstractNode<T> node) {
+    InsertOutcome outcome = super.insert(node);
+    if (outcome.changed()) {
+      invalidate(node.getLocation(), null);
+    }
+    return outcome;
+  }
+
+  @Override
+  public AbstractNode<T> remove(Point location) {
+    AbstractNode<T> removed = super.remove(location);
+    if (removed != null) {
+      invalidate(location, null);
+    }
+    return removed;
+  }
+
+  @Override
+  public boolean move(Point from, Point to) {
+    // Copied first, as from may be the location of the node that moves.
+    Point old = new Point(from);
+    boolean moved = super.move(from, to);
+    if (moved) {
+      invalidate(old, to);
+    }
+    return moved;
+  }
+
+  @Override
+  public void bulkLoad(AbstractNode<T>[] nodes) {
+    super.bulkLoad(nodes);
+    invalidateAll();
+  }
+
+  @Override
+  public void clear() {
+    super.clear();
+    invalidateAll();
+  }
+
+  @Override
+  public void clear(NodePool<T> pool) {
+    super.clear(pool);
+    invalidateAll();
+  }
+
+  /**
+   * Removes the cached queries whose shape contains either location.
+   * @param second another location, or null
+   */
+  private void invalidate(Point first, Point second) {
+    synchronized (cache) {
+      Iterator<Shape> shapes = cache.keySet().iterator();
+      while (shapes.hasNext()) {
+        Shape shape = shapes.next();
+        if (shape.contains(first) || (second != null && shape.contains(second))) {
+          shapes.remove();
+          invalidations++;
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes all cached queries.
+   */
+  public void invalidateAll() {
+    synchronized (cache) {
+      invalidations += cache.size();
+      cache.clear();
+    }
+  }
+
+  /**
+   * Get the number of queries answered from the cache.
+   * @return the number of cache hits
+   */
+  public long getHits() {
+    synchronized (cache) {
+      return hits;
+    }
+  }
+
+  /**
+   * Get the number of cacheable queries that had to search the tree.
+   * @return the number of cache misses
+   */
+  public long getMisses() {
+    synchronized (cache) {
+      return misses;
+    }
+  }
+
+  /**
+   * Get the number of cached queries dropped to make room for newer ones.
+   * @return the number of evictions
+   */
+  public long getEvictions() {
+    synchronized (cache) {
+      return evictions;
+    }
+  }
+
+  /**
+   * Get the number of cached queries dropped because the tree changed within their shape.
+   * @return the number of invalidated entries
+   */
+  public long getInvalidations() {
+    synchronized (cache) {
+      return invalidations;
+    }
+  }
+
+  /**
+   * Get the number of queries currently cached.
+   * @return the number of cache entries
+   */
+  public int getCachedQueries() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  @Override
+  public String toString() {
+    synchronized (cache) {
+      return "CachingPointQuadTree: " + cache.size() + "/" + capacity + " cached, " + hits + " hits, "
+          + misses + " misses, " + evictions + " evictions, " + invalidations + " invalidations";
+    }
+  }
+
+}
@@ -0,0 +1,335 @@
+package main;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Stream;
+
+/**
+ * A PointQuadTree that can be queried by any number of threads while other threads insert. 
+ * 
+ * Writers take the write lock of a {@link StampedLock}. Readers first search the tree 
+ * optimistically without taking any lock and only keep the result if no write happened 
+ * in the meantime, so they are not blocked by inserts. An optimistic search validates its 
+ * stamp at every node, after reading the location and links of the node and before using 
+ * them, so a write that relinks nodes (remove, move or bulkLoad) stops it at once instead 
+ * of leading it into half-written nodes. A reader that keeps losing the race 
+ * against writers falls back to the read lock, which does not block other readers. 
+ * Every query returns its own {@link QueryResult}. 
+ * @author FrancescoA
+ *
+ * @param <T> the type of the node values
+ */
+public class ConcurrentPointQuadTree<T> extends PointQuadTree<T> {
+  
+  /**
+   * The number of optimistic attempts a query makes before it takes the read lock. 
+   */
+  private static final int OPTIMISTIC_ATTEMPTS = 3;
+  
+  private final StampedLock lock = new StampedLock();
+  
+  public ConcurrentPointQuadTree(Rectangle bounds) {
+    super(bounds);
+  }
+  
+  public ConcurrentPointQuadTree(int x, int y, int width, int height) {
+    super(x, y, width, height);
+  }
+  
+  @Override
+  public InsertOutcome insert(AbstractNode<T> node) {
+    long stamp = lock.writeLock();
+    try {
+      return super.insert(node);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+  
+  @Override
+  public AbstractNode<T> remove(Point location) {
+    long stamp = lock.writeLock();
+    try {
+      return super.remove(location);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+  
+  @Override
+  public boolean move(Point from, Point to) {
+    long stamp = lock.writeLock();
+    try {
+      return super.move(from, to);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+  
+  @Override
+  public AbstractNode<T> get(Point location) {
+    long stamp = lock.readLock();
+    try {
+      return super.get(location);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+  
+  @Override
+  public void bulkLoad(AbstractNode<T>[] nodes) {
+    long stamp = lock.writeLock();
+    try {
+      super.bulkLoad(nodes);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+  
+  @Override
+  public void clear() {
+    long stamp = lock.writeLock();
+    try {
+      super.clear();
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+  
+  /**
+   * Not supported: the pool rewrites the released nodes as it hands them out, outside of any 
+   * lock, while optimistic readers that started before the clear may still be walking them. 
+   * Use clear() instead. 
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public void clear(NodePool<T> pool) {
+    throw new UnsupportedOperationException("A concurrent QuadTree cannot recycle its nodes");
+  }
+  
+  /**
+   * Only the attempt whose result is returned is reported to the QueryListener, 
+   * with the time of all the attempts. 
+   */
+  @Override
+  public QueryResult<T> query(Shape range) {
+    QueryListener listener = getQueryListener();
+    boolean traced = listener != null;
+    long start = traced ? System.nanoTime() : 0;
+    for (int i = 0; i < OPTIMISTIC_ATTEMPTS; i++) {
+      long stamp = lock.tryOptimisticRead();
+      if (stamp == 0) {
+        continue;
+      }
+      // The search validates the stamp at every node before it follows the links of the node, 
+      // so it never follows a half-written link and stops at the first write. 
+      QueryResult<T> result = search(range, new QueryResult<T>(lock, stamp));
+      if (lock.validate(stamp)) {
+        if (traced) {
+          QueryTracing.report(listener, QueryStats.Type.RANGE, result, result.size(), start);
+        }
+        return result;
+      }
+    }
+    long stamp = lock.readLock();
+    try {
+      QueryResult<T> result = search(range, traced);
+      if (traced) {
+        QueryTracing.report(listener, QueryStats.Type.RANGE, result, result.size(), start);
+      }
+      return result;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+  
+  /**
+   * A lazy search cannot hold a lock between two calls, so the nodes are found 
+   * with query(Shape) first and then streamed. 
+   */
+  @Override
+  public Stream<AbstractNode<T>> queryStream(Shape range) {
+    return query(range).getNodes().stream();
+  }
+  
+  /**
+   * A lazy search cannot hold a lock between two calls, so the nodes are found 
+   * with query(Shape) first and then iterated. 
+   */
+  @Override
+  public Iterator<AbstractNode<T>> queryIterator(Shape range) {
+    return query(range).getNodes().iterator();
+  }
+  
+  @Override
+  public List<List<AbstractNode<T>>> queryRanges(List<? extends Rectangle> ranges) {
+    long stamp = lock.readLock();
+    try {
+      return super.queryRanges(ranges);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+  
+  /**
+   * Runs under the read lock, which the tasks of the pool share with the calling thread. 
+   */
+  @Override
+  public QueryResult<T> parallelQuery(Shape range, ForkJoinPool pool) {
+    long stamp = lock.readLock();
+    try {
+      return super.parallelQuery(range, pool);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+  
+  /**
+   * Runs under the read lock, because nodes that were already passed to the visitor 
+   * cannot be taken back if the search has to be repeated. 
+   */
+  @Override
+  public boolean queryRange(int minX, int minY, int maxX, int maxY, NodeVisitor<T> visitor) {
+    long stamp = lock.readLock();
+    try {
+      return super.queryRange(minX, minY, maxX, maxY, visitor);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+  
+  @Override
+  public List<AbstractNode<T>> queryCircle(int x, int y, double radius) {
+    long stamp = lock.readLock();
+    try {
+      return super.queryCircle(x, y, radius);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+  
+  @Override
+  public int countRange(int minX, int minY, int maxX, int maxY) {
+    long stamp = lock.readLock();
+    try {
+      return super.countRange(minX, minY, maxX, maxY);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+  
+  @Override
+  public <A> A aggregateRange(int minX, int minY, int maxX, int maxY, Aggregator<? super T, A> aggregator) {
+    long stamp = lock.readLock();
+    try {
+      return super.aggregateRange(minX, minY, maxX, maxY, aggregator);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+  
+  @Override
+  public void setAggregator(Aggregator<? super T, ?> aggregator) {
+    long stamp = lock.writeLock();
+    try {
+      super.setAggregator(aggregator);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+  
+  @Override
+  public void setRebalancing(double balance, int rebuildLimit) {
+    long stamp = lock.writeLock();
+    try {
+      super.setRebalancing(balance, rebuildLimit);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+  
+  @Override
+  public StructureReport getStructure() {
+    long stamp = lock.readLock();
+    try {
+      return super.getStructure();
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+  
+  @Override
+  public void setDuplicatePolicy(DuplicatePolicy<T> policy) {
+    long stamp = lock.writeLock();
+    try {
+      super.setDuplicatePolicy(policy);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+  
+  @Override
+  public long getInsertCount(InsertOutcome outcome) {
+    long stamp = lock.readLock();
+    try {
+      return super.getInsertCount(outcome);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+  
+  @Override
+  public long getDuplicates() {
+    long stamp = lock.readLock();
+    try {
+      return super.getDuplicates();
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+  
+  @Override
+  public List<AbstractNode<T>> nearest(int x, int y, int k) {
+    long stamp = lock.readLock();
+    try {
+      return super.nearest(x, y, k);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+  
+  @Override
+  public List<AbstractNode<T>> withinDistance(int x, int y, double distance) {
+    long stamp = lock.readLock();
+    try {
+      return super.withinDistance(x, y, distance);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+  
+  @Override
+  public List<AbstractNode<T>> innefficientQueryRange(Shape range) {
+    long stamp = lock.readLock();
+    try {
+      return super.innefficientQueryRange(range);
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+  
+  @Override
+  public void print() {
+    long stamp = lock.readLock();
+    try {
+      super.print();
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+}
@@ -0,0 +1,76 @@
+package main;
+import java.util.function.BiFunction;
+
+/**
+ * Decides what {@link PointQuadTree#insert(AbstractNode)} does with a node at the location
+ * of a node already in the tree. The tree keeps its existing node, so a policy can only
+ * change the values of that node, and the new node itself is never linked into the tree.
+ * @see PointQuadTree#setDuplicatePolicy(DuplicatePolicy)
+ * @author FrancescoA
+ *
+ * @param <T> the type of the node values
+ */
+public interface DuplicatePolicy<T> {
+
+  /**
+   * Resolves an insert at the location of an existing node.
+   * @param existing the node already in the tree, whose values the policy may change
+   * @param value the value of the node being inserted
+   * @return what the policy did, anything but INSERTED
+   */
+  InsertOutcome resolve(PointNode<T> existing, T value);
+
+  /**
+   * The default policy: the tree is left unchanged.
+   */
+  static <T> DuplicatePolicy<T> reject() {
+    return new DuplicatePolicy<T>() {
+      @Override
+      public InsertOutcome resolve(PointNode<T> existing, T value) {
+        return InsertOutcome.REJECTED;
+      }
+    };
+  }
+
+  /**
+   * The new value replaces the value of the existing node, as in a map.
+   */
+  static <T> DuplicatePolicy<T> replace() {
+    return new DuplicatePolicy<T>() {
+      @Override
+      public InsertOutcome resolve(PointNode<T> existing, T value) {
+        existing.setValue(value);
+        return InsertOutcome.REPLACED;
+      }
+    };
+  }
+
+  /**
+   * The existing node gets the value the function computes from its value and the new one,
+   * for example a sum of counts.
+   * @param function combines the existing value, which may be null, with the new one
+   */
+  static <T> DuplicatePolicy<T> merge(final BiFunction<? super T, ? super T, ? extends T> function) {
+    return new DuplicatePolicy<T>() {
+      @Override
+      public InsertOutcome resolve(PointNode<T> existing, T value) {
+        existing.setValue(function.apply(existing.getValue(), value));
+        return InsertOutcome.MERGED;
+      }
+    };
+  }
+
+  /**
+   * The existing node keeps every value inserted at its location, in insertion order.
+   * @see PointNode#getValues()
+   */
+  static <T> DuplicatePolicy<T> bucket() {
+    return new DuplicatePolicy<T>() {
+      @Override
+      public InsertOutcome resolve(PointNode<T> existing, T value) {
+        existing.addValue(value);
+        return InsertOutcome.BUCKETED;
+      }
+    };
+  }
+}
@@ -0,0 +1,28 @@
+package main;
+
+/**
+ * What an insert did with the node it was given, as returned by
+ * {@link AbstractQuadTree#insert(AbstractNode)}.
+ * @author FrancescoA
+ *
+ */
+public enum InsertOutcome {
+  /** The node was added to the tree. */
+  INSERTED,
+  /** There already was a node at the location, and the tree was left unchanged. */
+  REJECTED,
+  /** There already was a node at the location, and its value was replaced by the new one. */
+  REPLACED,
+  /** There already was a node at the location, and the new value was merged into its value. */
+  MERGED,
+  /** There already was a node at the location, and the new value was added to its bucket. */
+  BUCKETED;
+
+  /**
+   * Whether the tree has changed: the node was added, or the values at its location changed.
+   * @return false only for REJECTED
+   */
+  public boolean changed() {
+    return this != REJECTED;
+  }
+}
@@ -0,0 +1,333 @@
+package main;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A point QuadTree that any number of threads can insert into at the same time without locking.
+ *
+ * A point QuadTree never moves a node once it is linked, so an insert only ever changes one
+ * child link, from null to the new node. An insert walks down from the root and links the
+ * node with a compare-and-set on the empty child slot it ends at; if another thread filled
+ * that slot first, it carries on below the node that won. Two threads that insert the same
+ * location follow the same path, so the loser always meets the winner's node and is turned
+ * away as a duplicate. The size is a {@link LongAdder}, so inserts do not contend on it either.
+ *
+ * The nodes are linked with release semantics and every query reads the links with acquire
+ * semantics, so all of them can run while other threads insert, without locks, and see every
+ * node whose insert completed before they started. The tree is built exactly as a
+ * {@link PointQuadTree} built by the same inserts, and queries find the same nodes in the
+ * same order.
+ *
+ * Only inserts are lock-free, so this is not a PointQuadTree: it has no remove, move or
+ * bulkLoad, which relink existing nodes, and no countRange or aggregateRange, because
+ * updating the subtree counts on the path of every insert would make all threads contend on
+ * the root. Duplicates are always rejected, and counted by {@link #getDuplicates()}.
+ * @author FrancescoA
+ *
+ * @param <T> the type of the node values
+ */
+public class LockFreePointQuadTree<T> extends AbstractQuadTree<T> {
+
+  private static final VarHandle ROOT, NORTH_EAST, SOUTH_EAST, SOUTH_WEST, NORTH_WEST;
+
+  static {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      ROOT = lookup.findVarHandle(Generation.class, "root", AbstractNode.class);
+      NORTH_EAST = lookup.findVarHandle(AbstractNode.class, "northEast", AbstractNode.class);
+      SOUTH_EAST = lookup.findVarHandle(AbstractNode.class, "southEast", AbstractNode.class);
+      SOUTH_WEST = lookup.findVarHandle(AbstractNode.class, "southWest", AbstractNode.class);
+      NORTH_WEST = lookup.findVarHandle(AbstractNode.class, "northWest", AbstractNode.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  /**
+   * The root of the tree and the number of nodes below it. clear() starts a new generation,
+   * so an insert that races with it counts its node in the generation it was linked into.
+   */
+  private static final class Generation<T> {
+    @SuppressWarnings("unused") // Only accessed through ROOT.
+    private AbstractNode<T> root;
+    private final LongAdder count = new LongAdder();
+  }
+
+  private volatile Generation<T> generation = new Generation<T>();
+  private final LongAdder inserted = new LongAdder();
+  private final LongAdder duplicates = new LongAdder();
+  private volatile int visited = 0;
+  private final QueryTracing tracing = new QueryTracing();
+
+  public LockFreePointQuadTree(Rectangle bounds) {
+    super(bounds);
+  }
+
+  public LockFreePointQuadTree(int x, int y, int width, int height) {
+    super(x, y, width, height);
+  }
+
+  /**
+   * Links a node into the tree without locking. The node must not be in any tree yet.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public InsertOutcome insert(AbstractNode<T> node) {
+    if (!bounds.contains(node.getLocation())) {
+      throw new QuadTreeException("Cannot insert node " + node + " because it is outside QuadTree bounds.");
+    }
+    int x = node.location.x;
+    int y = node.location.y;
+    Generation<T> generation = this.generation;
+    AbstractNode<T> current = (AbstractNode<T>) ROOT.getAcquire(generation);
+    if (current == null) {
+      if (ROOT.compareAndSet(generation, (AbstractNode<T>) null, node)) {
+        return inserted(generation);
+      }
+      current = (AbstractNode<T>) ROOT.getAcquire(generation);
+    }
+    while (true) {
+      if (current.location.x == x && current.location.y == y) {
+        duplicates.increment();
+        return InsertOutcome.REJECTED;
+      }
+      VarHandle link = link(current, x, y);
+      AbstractNode<T> next = (AbstractNode<T>) link.getAcquire(current);
+      if (next == null) {
+        if (link.compareAndSet(current, (AbstractNode<T>) null, node)) {
+          return inserted(generation);
+        }
+        // Another thread linked a node here first, so the search goes on below it.
+        next = (AbstractNode<T>) link.getAcquire(current);
+      }
+      current = next;
+    }
+  }
+
+  private InsertOutcome inserted(Generation<T> generation) {
+    generation.count.increment();
+    inserted.increment();
+    return InsertOutcome.INSERTED;
+  }
+
+  /**
+   * Inserts a new node at a location without locking.
+   * @param location the location of the new node
+   * @param value the value of the new node
+   * @return INSERTED, or REJECTED if there already was a node at the location
+   */
+  public InsertOutcome insert(Point location, T value) {
+    return insert(new PointNode<T>(location, value));
+  }
+
+  /**
+   * The child link of node that a location other than its own belongs under.
+   */
+  private static VarHandle link(AbstractNode<?> node, int x, int y) {
+    int nx = node.location.x;
+    int ny = node.location.y;
+    if (x >= nx && y > ny) {
+      return NORTH_EAST;
+    } else if (x > nx && y <= ny) {
+      return SOUTH_EAST;
+    } else if (x < nx && y >= ny) {
+      return NORTH_WEST;
+    }
+    return SOUTH_WEST;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> AbstractNode<T> child(VarHandle link, AbstractNode<T> node) {
+    return (AbstractNode<T>) link.getAcquire(node);
+  }
+
+  /**
+   * Get the node at a location.
+   * @param location the location of the node
+   * @return the node, or null if there is none
+   */
+  public AbstractNode<T> get(Point location) {
+    AbstractNode<T> node = getRoot();
+    while (node != null && !node.location.equals(location)) {
+      node = child(link(node, location.x, location.y), node);
+    }
+    return node;
+  }
+
+  @Override
+  public List<AbstractNode<T>> queryRange(Shape range) {
+    QueryResult<T> result = query(range);
+    visited = result.getVisited();
+    return result.getNodes();
+  }
+
+  /**
+   * Find all points in the QuadTree contained within a range, while other threads insert.
+   * Finds the same nodes as PointQuadTree, in the same order, without the fast path for polygons.
+   * @param range the range (Shape) that encompasses the locations of desired nodes.
+   * @return the nodes found and the number of nodes visited to find them
+   */
+  public QueryResult<T> query(Shape range) {
+    QueryListener listener = tracing.getListener();
+    long start = listener == null ? 0 : System.nanoTime();
+    QueryResult<T> result = new QueryResult<T>();
+    Rectangle bounds = range.getBounds();
+    visit(getRoot(), bounds.x, bounds.y, bounds.x + bounds.width, bounds.y + bounds.height,
+        PointQuadTree.collector(range, result), result, 1);
+    if (listener != null) {
+      QueryTracing.report(listener, QueryStats.Type.RANGE, result, result.size(), start);
+    }
+    return result;
+  }
+
+  @Override
+  public boolean queryRange(int minX, int minY, int maxX, int maxY, final NodeVisitor<T> visitor) {
+    QueryListener listener = tracing.getListener();
+    if (listener == null) {
+      QueryResult<T> result = new QueryResult<T>();
+      boolean completed = visit(getRoot(), minX, minY, maxX, maxY, visitor, result, 1);
+      visited = result.getVisited();
+      return completed;
+    }
+    long start = System.nanoTime();
+    QueryResult<T> result = new QueryResult<T>();
+    final int[] found = new int[1];
+    boolean completed = visit(getRoot(), minX, minY, maxX, maxY, new NodeVisitor<T>() {
+      @Override
+      public boolean visit(AbstractNode<T> node) {
+        found[0]++;
+        return visitor.visit(node);
+      }
+    }, result, 1);
+    visited = result.getVisited();
+    QueryTracing.report(listener, QueryStats.Type.VISITOR, result, found[0], start);
+    return completed;
+  }
+
+  /**
+   * Recursive helper function of query and queryRange, like the one of PointQuadTree but
+   * reading the links with acquire semantics.
+   * @return false if the visitor stopped the query
+   */
+  private boolean visit(AbstractNode<T> root, int minX, int minY, int maxX, int maxY, NodeVisitor<T> visitor,
+      QueryResult<T> result, int depth) {
+    if (root == null) {
+      return true;
+    }
+    result.visited++;
+    result.maxDepth = Math.max(result.maxDepth, depth);
+    int x = root.location.x;
+    int y = root.location.y;
+    if (x >= minX && x <= maxX && y >= minY && y <= maxY && !visitor.visit(root)) {
+      return false;
+    }
+    return visit(root, SOUTH_WEST, PointQuadTree.searchSouthWest(x, y, minX, minY), minX, minY, maxX, maxY, visitor, result, depth)
+        && visit(root, SOUTH_EAST, PointQuadTree.searchSouthEast(x, y, maxX, minY), minX, minY, maxX, maxY, visitor, result, depth)
+        && visit(root, NORTH_WEST, PointQuadTree.searchNorthWest(x, y, minX, maxY), minX, minY, maxX, maxY, visitor, result, depth)
+        && visit(root, NORTH_EAST, PointQuadTree.searchNorthEast(x, y, maxX, maxY), minX, minY, maxX, maxY, visitor, result, depth);
+  }
+
+  /**
+   * Searches the child of root behind link if the pruning allows it, or counts it as pruned.
+   */
+  private boolean visit(AbstractNode<T> root, VarHandle link, boolean intersects, int minX, int minY, int maxX, int maxY,
+      NodeVisitor<T> visitor, QueryResult<T> result, int depth) {
+    AbstractNode<T> child = child(link, root);
+    if (intersects) {
+      return visit(child, minX, minY, maxX, maxY, visitor, result, depth + 1);
+    }
+    if (child != null) {
+      result.pruned++;
+    }
+    return true;
+  }
+
+  /**
+   * Get the number of levels of the QuadTree, i.e. the number of nodes on the longest
+   * path from the root to a leaf.
+   * @return the height of the tree, 0 if it is empty
+   */
+  public int getHeight() {
+    return height(getRoot());
+  }
+
+  private static int height(AbstractNode<?> node) {
+    if (node == null) {
+      return 0;
+    }
+    int height = Math.max(Math.max(height(child(NORTH_EAST, node)), height(child(SOUTH_EAST, node))),
+        Math.max(height(child(SOUTH_WEST, node)), height(child(NORTH_WEST, node))));
+    return height + 1;
+  }
+
+  /**
+   * Inserts that complete while the size is summed may or may not be counted.
+   * @return the number of nodes in the QuadTree
+   */
+  @Override
+  public int getSize() {
+    return generation.count.intValue();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public AbstractNode<T> getRoot() {
+    return (AbstractNode<T>) ROOT.getAcquire(generation);
+  }
+
+  /**
+   * Get the number of inserts that were turned away because their location was taken.
+   * @return the number of duplicates
+   */
+  public long getDuplicates() {
+    return duplicates.sum();
+  }
+
+  /**
+   * Get the number of inserts that had an outcome, since the tree was created.
+   * @param outcome INSERTED or REJECTED; no insert ever has another outcome
+   * @return the number of inserts with that outcome
+   */
+  public long getInsertCount(InsertOutcome outcome) {
+    if (outcome == InsertOutcome.INSERTED) {
+      return inserted.sum();
+    }
+    return outcome == InsertOutcome.REJECTED ? duplicates.sum() : 0;
+  }
+
+  /**
+   * Get the number of nodes visited by the last range query of any thread.
+   * @return the number of visited nodes
+   */
+  public int getVisitedOnLastSearch() {
+    return visited;
+  }
+
+  /**
+   * Sets the listener that receives the statistics of every range query on this tree,
+   * or removes it when listener is null.
+   * @param listener the listener, for example a {@link QueryMetrics}, or null
+   */
+  public void setQueryListener(QueryListener listener) {
+    tracing.setListener(listener);
+  }
+
+  public QueryListener getQueryListener() {
+    return tracing.getListener();
+  }
+
+  /**
+   * Empties the tree by starting a new, empty root. Inserts that run at the same time may
+   * end up in the discarded nodes, and are then not counted by getSize.
+   */
+  @Override
+  public void clear() {
+    generation = new Generation<T>();
+  }
+
+}
@@ -0,0 +1,364 @@
+package main;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A read-only point QuadTree that is queried directly from a memory-mapped snapshot file.
+ *
+ * A snapshot of a {@link PointQuadTree} is written once with
+ * {@link #write(PointQuadTree, Path, ValueCodec)} and opened with {@link #open(Path, ValueCodec)},
+ * which only maps the file: there is no deserialization step, the operating system pages
+ * the tree in as queries touch it, and values are only decoded for the nodes a query returns.
+ *
+ * The file holds a header, one fixed-size record per node and then the encoded values:
+ * <pre>
+ * header: magic, version, bounds x, y, width, height, node count        (7 ints)
+ * node:   x, y, index of NE, SE, SW, NW child (or -1), value offset, value length (-1 for null)
+ *                                                                       (6 ints, 1 long, 1 int)
+ * values: the bytes written by the ValueCodec, one value after the other
+ * </pre>
+ * Nodes are numbered breadth-first, so the root is node 0. A single buffer cannot map more
+ * than 2GB, so the file is mapped in chunks of 1GB, each overlapping the next by one node
+ * record, and addressed by long offsets; a value that spans two chunks is copied out of them.
+ * A snapshot stores one value per node, so trees with nodes that {@link DuplicatePolicy#bucket()}
+ * added values to cannot be written.
+ * Queries keep all their state on the stack, so any number of threads can query a mapped tree.
+ * @author FrancescoA
+ *
+ * @param <T> the type of the node values
+ */
+public class MappedPointQuadTree<T> extends AbstractQuadTree<T> {
+
+  private static final int MAGIC = 0x51545331; // "QTS1"
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 7 * 4;
+  private static final int NODE_BYTES = 6 * 4 + 8 + 4;
+  private static final int X = 0, Y = 4, CHILDREN = 8, VALUE_OFFSET = 24, VALUE_LENGTH = 32;
+  private static final int NE = 0, SE = 1, SW = 2, NW = 3;
+  private static final int NONE = -1;
+  private static final int CHUNK_SHIFT = 30;
+  private static final long CHUNK_MASK = (1L << CHUNK_SHIFT) - 1;
+
+  private final ByteBuffer[] chunks;
+  private final ValueCodec<T> codec;
+
+  private MappedPointQuadTree(Rectangle bounds, ByteBuffer[] chunks, int size, ValueCodec<T> codec) {
+    // The bounds in the file were already grown by the tree that was written.
+    super(new Rectangle(bounds.x + 1, bounds.y + 1, bounds.width - 2, bounds.height - 2));
+    this.chunks = chunks;
+    this.size = size;
+    this.codec = codec;
+  }
+
+  /**
+   * Writes a snapshot of a tree to a file, replacing the file if it exists.
+   * The tree must not be modified while it is written.
+   * The file is written sequentially, and the values are encoded twice: once to size them
+   * and once to write them, so that no more than one level of the tree is held in memory.
+   * If the snapshot cannot be written, the file is deleted rather than left half written.
+   * @param tree the tree to write
+   * @param file the file to write the snapshot to
+   * @param codec the codec used to write the node values
+   * @throws IOException if the file cannot be written
+   * @throws QuadTreeException if a node holds several values
+   */
+  public static <T> void write(PointQuadTree<T> tree, Path file, ValueCodec<? super T> codec) throws IOException {
+    OutputStream stream = Files.newOutputStream(file);
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+    boolean written = false;
+    try {
+      Rectangle bounds = tree.bounds;
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(bounds.x);
+      out.writeInt(bounds.y);
+      out.writeInt(bounds.width);
+      out.writeInt(bounds.height);
+      out.writeInt(tree.size);
+
+      ByteArrayOutputStream scratch = new ByteArrayOutputStream();
+      DataOutputStream scratchOut = new DataOutputStream(scratch);
+      long valueOffset = HEADER_BYTES + (long) tree.size * NODE_BYTES;
+      int next = 1;
+      int count = 0;
+      ArrayDeque<AbstractNode<T>> queue = new ArrayDeque<AbstractNode<T>>();
+      if (tree.root != null) {
+        queue.add(tree.root);
+      }
+      while (!queue.isEmpty()) {
+        AbstractNode<T> node = queue.poll();
+        count++;
+        out.writeInt(node.location.x);
+        out.writeInt(node.location.y);
+        for (AbstractNode<T> child : children(node)) {
+          if (child == null) {
+            out.writeInt(NONE);
+          } else {
+            out.writeInt(next++);
+            queue.add(child);
+          }
+        }
+        T value = valueOf(node);
+        if (value == null) {
+          out.writeLong(valueOffset);
+          out.writeInt(-1);
+        } else {
+          scratch.reset();
+          codec.write(value, scratchOut);
+          scratchOut.flush();
+          out.writeLong(valueOffset);
+          out.writeInt(scratch.size());
+          valueOffset += scratch.size();
+        }
+      }
+      if (count != tree.size) {
+        throw new QuadTreeException("The tree holds " + count + " nodes but its size is " + tree.size);
+      }
+
+      // Second pass in the same order to write the values themselves.
+      if (tree.root != null) {
+        queue.add(tree.root);
+      }
+      while (!queue.isEmpty()) {
+        AbstractNode<T> node = queue.poll();
+        for (AbstractNode<T> child : children(node)) {
+          if (child != null) {
+            queue.add(child);
+          }
+        }
+        T value = valueOf(node);
+        if (value != null) {
+          codec.write(value, out);
+        }
+      }
+      out.flush();
+      // DataOutputStream.size() stops counting at 2GB, so the length of the file is checked instead.
+      if (Files.size(file) != valueOffset) {
+        throw new IOException("The value codec did not write the same bytes twice");
+      }
+      written = true;
+    } finally {
+      out.close();
+      if (!written) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  private static <T> List<AbstractNode<T>> children(AbstractNode<T> node) {
+    return Arrays.asList(node.northEast, node.southEast, node.southWest, node.northWest);
+  }
+
+  /**
+   * The value of a node. A snapshot stores one value per node, so a node that holds the
+   * values of a bucket cannot be written.
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> T valueOf(AbstractNode<T> node) {
+    if (!(node instanceof PointNode<?>)) {
+      return null;
+    }
+    PointNode<T> point = (PointNode<T>) node;
+    if (point.bucket != null) {
+      throw new QuadTreeException("Cannot write node " + node + " because it holds " + point.getValues().size() 
+          + " values, and a snapshot stores one value per node.");
+    }
+    return point.getValue();
+  }
+
+  /**
+   * Opens a snapshot written by {@link #write(PointQuadTree, Path, ValueCodec)} by mapping it into memory.
+   * @param file the snapshot file
+   * @param codec the codec used to read the node values
+   * @return the mapped tree
+   * @throws IOException if the file cannot be read or is not a snapshot
+   */
+  public static <T> MappedPointQuadTree<T> open(Path file, ValueCodec<T> codec) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      long length = channel.size();
+      ByteBuffer[] chunks = new ByteBuffer[(int) ((length + CHUNK_MASK) >>> CHUNK_SHIFT)];
+      for (int i = 0; i < chunks.length; i++) {
+        long start = (long) i << CHUNK_SHIFT;
+        // Every chunk also maps the first node record of the next, so no record is split.
+        chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(length - start, CHUNK_MASK + 1 + NODE_BYTES));
+      }
+      ByteBuffer header = chunks.length == 0 ? ByteBuffer.allocate(0) : chunks[0];
+      if (header.capacity() < HEADER_BYTES || header.getInt(0) != MAGIC) {
+        throw new IOException(file + " is not a QuadTree snapshot");
+      }
+      if (header.getInt(4) != VERSION) {
+        throw new IOException(file + " has unsupported snapshot version " + header.getInt(4));
+      }
+      Rectangle bounds = new Rectangle(header.getInt(8), header.getInt(12), header.getInt(16), header.getInt(20));
+      int size = header.getInt(24);
+      if (HEADER_BYTES + (long) size * NODE_BYTES > length) {
+        throw new IOException(file + " is truncated");
+      }
+      return new MappedPointQuadTree<T>(bounds, chunks, size, codec);
+    } finally {
+      // The mapping stays valid after the channel is closed.
+      channel.close();
+    }
+  }
+
+  /**
+   * Snapshots are read-only.
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public InsertOutcome insert(AbstractNode<T> newNode) {
+    throw new UnsupportedOperationException("A mapped QuadTree snapshot is read-only");
+  }
+
+  /**
+   * Snapshots are read-only.
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException("A mapped QuadTree snapshot is read-only");
+  }
+
+  /**
+   * Returns the root as a new, childless PointNode, or null if the tree is empty.
+   */
+  @Override
+  public AbstractNode<T> getRoot() {
+    return size == 0 ? null : node(0);
+  }
+
+  @Override
+  public List<AbstractNode<T>> queryRange(final Shape range) {
+    final List<AbstractNode<T>> result = new ArrayList<AbstractNode<T>>();
+    Rectangle r = range.getBounds();
+    search(r.x, r.y, r.x + r.width, r.y + r.height, null, range, result);
+    return result;
+  }
+
+  @Override
+  public boolean queryRange(int minX, int minY, int maxX, int maxY, final NodeVisitor<T> visitor) {
+    return queryRange(minX, minY, maxX, maxY, new PointVisitor<T>() {
+      @Override
+      public boolean visit(int x, int y, T value) {
+        return visitor.visit(new PointNode<T>(x, y, value));
+      }
+    });
+  }
+
+  /**
+   * Passes every point within inclusive bounds to a visitor, decoding only the values of those points.
+   * @return true if the whole range was searched, false if the visitor stopped the query
+   */
+  public boolean queryRange(int minX, int minY, int maxX, int maxY, PointVisitor<T> visitor) {
+    return search(minX, minY, maxX, maxY, visitor, null, null);
+  }
+
+  /**
+   * Walks the mapped nodes with the same pruning as PointQuadTree.
+   * With a shape, bounds are those of the shape (max exclusive) and matching nodes are added to result;
+   * without one, bounds are inclusive and matching points go to the visitor.
+   */
+  private boolean search(int minX, int minY, int maxX, int maxY, PointVisitor<T> visitor,
+      Shape range, List<AbstractNode<T>> result) {
+    if (size == 0) {
+      return true;
+    }
+    int[] stack = new int[64];
+    int top = 0;
+    stack[top++] = 0;
+    while (top > 0) {
+      int i = stack[--top];
+      long base = record(i);
+      int x = getInt(base, X);
+      int y = getInt(base, Y);
+      if (range != null) {
+        if (range.contains(x, y)) {
+          result.add(node(i));
+        }
+      } else if (x >= minX && x <= maxX && y >= minY && y <= maxY && !visitor.visit(x, y, value(i))) {
+        return false;
+      }
+      if (top + 4 > stack.length) {
+        stack = Arrays.copyOf(stack, 2 * stack.length);
+      }
+      // Children are pushed in reverse so they are visited in the same order as PointQuadTree.
+      top = push(stack, top, base, NE, x <= maxX && y < maxY);
+      top = push(stack, top, base, NW, x > minX && y <= maxY);
+      top = push(stack, top, base, SE, x < maxX && y >= minY);
+      top = push(stack, top, base, SW, x >= minX && y > minY);
+    }
+    return true;
+  }
+
+  private int push(int[] stack, int top, long base, int quadrant, boolean intersects) {
+    if (intersects) {
+      int child = getInt(base, CHILDREN + 4 * quadrant);
+      if (child != NONE) {
+        stack[top++] = child;
+      }
+    }
+    return top;
+  }
+
+  /**
+   * The offset of the record of node i in the file.
+   */
+  private static long record(int i) {
+    return HEADER_BYTES + (long) i * NODE_BYTES;
+  }
+
+  /**
+   * Reads a field of the node record at offset base, from the chunk the record starts in.
+   */
+  private int getInt(long base, int field) {
+    return chunks[(int) (base >>> CHUNK_SHIFT)].getInt((int) (base & CHUNK_MASK) + field);
+  }
+
+  private PointNode<T> node(int i) {
+    long base = record(i);
+    return new PointNode<T>(getInt(base, X), getInt(base, Y), value(i));
+  }
+
+  private T value(int i) {
+    long base = record(i);
+    int length = getInt(base, VALUE_LENGTH);
+    if (length < 0) {
+      return null;
+    }
+    long offset = chunks[(int) (base >>> CHUNK_SHIFT)].getLong((int) (base & CHUNK_MASK) + VALUE_OFFSET);
+    ByteBuffer chunk = chunks[(int) (offset >>> CHUNK_SHIFT)];
+    int start = (int) (offset & CHUNK_MASK);
+    if (start + length <= chunk.capacity()) {
+      ByteBuffer in = chunk.duplicate();
+      in.limit(start + length);
+      in.position(start);
+      return codec.read(in);
+    }
+    // The value runs into the next chunk, so its bytes are copied together.
+    byte[] bytes = new byte[length];
+    for (int copied = 0; copied < length; ) {
+      ByteBuffer in = chunks[(int) ((offset + copied) >>> CHUNK_SHIFT)].duplicate();
+      in.position((int) ((offset + copied) & CHUNK_MASK));
+      int n = Math.min(length - copied, in.remaining());
+      in.get(bytes, copied, n);
+      copied += n;
+    }
+    return codec.read(ByteBuffer.wrap(bytes));
+  }
+
+}
@@ -0,0 +1,456 @@
+package main;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A read-only linear QuadTree that keeps its points sorted by Morton code (Z-order) in primitive arrays.
+ *
+ * The Morton code of a point interleaves the bits of its coordinates relative to the bounds,
+ * x in the even bits and y in the odd bits. Sorting by it lays the points out in the order
+ * of a depth-first walk of a region QuadTree, so every quadrant at every level is a
+ * contiguous run of the arrays. There are no node objects and no child links: a range query
+ * binary-searches the code of its lower left corner and scans forward, and whenever the scan
+ * leaves the range it computes BIGMIN, the next code after the current one that lies inside
+ * the range again, and skips ahead to it with a galloping search. The query therefore reads
+ * a few long runs of adjacent array slots instead of chasing one pointer per visited node.
+ *
+ * With a {@link RangeScanner} set by {@link #setScanner(RangeScanner)}, rectangle queries walk
+ * the regions of that implicit QuadTree instead: a region within the range is reported
+ * without testing its points, and a region the range only partly covers is split until it
+ * holds at most {@link #BLOCK} points, which the scanner tests as one contiguous block.
+ * The points are reported in the same order either way.
+ *
+ * Build one from a {@link PointQuadTree} with {@link #build(PointQuadTree)}, or from nodes with
+ * {@link #build(Rectangle, Iterable)}. Queries return the points in Morton order, as new
+ * {@link PointNode}s, so they find the same nodes as a PointQuadTree, in a different order.
+ * Every location holds a single value, so nodes that {@link DuplicatePolicy#bucket()} added
+ * values to cannot be copied.
+ * @see <a href="https://en.wikipedia.org/wiki/Z-order_curve">Z-order curve</a>
+ * @author FrancescoA
+ *
+ * @param <T> the type of the node values
+ */
+public class MortonQuadTree<T> extends AbstractQuadTree<T> {
+
+  private static final long EVEN = 0x5555555555555555L, ODD = 0xAAAAAAAAAAAAAAAAL;
+  private static final int RADIX_BITS = 11;
+
+  /**
+   * The most points a region may hold to be scanned as one block rather than split.
+   */
+  public static final int BLOCK = 64;
+
+  private final long[] codes;
+  private final int[] xs, ys;
+  private final Object[] values;
+  private int visited = 0;
+  private RangeScanner scanner;
+
+  private MortonQuadTree(Rectangle bounds, List<? extends AbstractNode<T>> nodes) {
+    super(bounds);
+    int n = nodes.size();
+    long[] keys = new long[n];
+    int[] order = new int[n];
+    for (int i = 0; i < n; i++) {
+      AbstractNode<T> node = nodes.get(i);
+      if (!this.bounds.contains(node.getLocation())) {
+        throw new QuadTreeException("Cannot insert node " + node + " because it is outside QuadTree bounds.");
+      }
+      keys[i] = code(node.location.x, node.location.y);
+      order[i] = i;
+    }
+    sort(keys, order);
+    // The sort is stable, so the first of several nodes at the same location is kept.
+    int count = 0;
+    for (int i = 0; i < n; i++) {
+      if (i == 0 || keys[i] != keys[i - 1]) {
+        keys[count] = keys[i];
+        order[count++] = order[i];
+      }
+    }
+    codes = count == n ? keys : Arrays.copyOf(keys, count);
+    xs = new int[count];
+    ys = new int[count];
+    values = new Object[count];
+    for (int i = 0; i < count; i++) {
+      AbstractNode<T> node = nodes.get(order[i]);
+      xs[i] = node.location.x;
+      ys[i] = node.location.y;
+      values[i] = valueOf(node);
+    }
+    size = count;
+  }
+
+  /**
+   * The value of a node. The arrays hold one value per location, so a node that holds the
+   * values of a bucket cannot be copied.
+   */
+  private static Object valueOf(AbstractNode<?> node) {
+    if (!(node instanceof PointNode<?>)) {
+      return null;
+    }
+    PointNode<?> point = (PointNode<?>) node;
+    if (point.bucket != null) {
+      throw new QuadTreeException("Cannot copy node " + node + " because it holds " + point.getValues().size() 
+          + " values, and a linear QuadTree keeps one value per location.");
+    }
+    return point.getValue();
+  }
+
+  /**
+   * Builds a linear QuadTree with the bounds and nodes of a tree.
+   * The tree must not be modified while it is copied.
+   * @param tree the tree to copy
+   * @return a linear QuadTree that finds the same nodes as tree
+   * @throws QuadTreeException if a node holds several values
+   */
+  public static <T> MortonQuadTree<T> build(PointQuadTree<T> tree) {
+    List<AbstractNode<T>> nodes = new ArrayList<AbstractNode<T>>(tree.size);
+    tree.collect(tree.root, nodes);
+    // The bounds of the tree were already grown by its constructor.
+    Rectangle b = tree.bounds;
+    return new MortonQuadTree<T>(new Rectangle(b.x + 1, b.y + 1, b.width - 2, b.height - 2), nodes);
+  }
+
+  /**
+   * Builds a linear QuadTree from nodes. As with insert, a node at the location of an
+   * earlier node is left out.
+   * @param bounds the dimension and location of the QuadTree
+   * @param nodes the nodes, which must all lie within the bounds
+   * @return the linear QuadTree
+   */
+  public static <T> MortonQuadTree<T> build(Rectangle bounds, Iterable<? extends AbstractNode<T>> nodes) {
+    List<AbstractNode<T>> all = new ArrayList<AbstractNode<T>>();
+    for (AbstractNode<T> n : nodes) {
+      all.add(n);
+    }
+    return new MortonQuadTree<T>(new Rectangle(bounds), all);
+  }
+
+  /**
+   * The Morton code of a location within the bounds: the bits of x and y relative to the
+   * bounds, interleaved. Both fit in 31 bits, so codes are positive.
+   */
+  private long code(int x, int y) {
+    return spread(x - bounds.x) | spread(y - bounds.y) << 1;
+  }
+
+  /**
+   * Moves bit i of v to bit 2i.
+   */
+  private static long spread(int v) {
+    long x = v & 0xFFFFFFFFL;
+    x = (x | x << 16) & 0x0000FFFF0000FFFFL;
+    x = (x | x << 8) & 0x00FF00FF00FF00FFL;
+    x = (x | x << 4) & 0x0F0F0F0F0F0F0F0FL;
+    x = (x | x << 2) & 0x3333333333333333L;
+    x = (x | x << 1) & 0x5555555555555555L;
+    return x;
+  }
+
+  /**
+   * Sorts keys, and order along with them, with a stable LSD radix sort.
+   */
+  private static void sort(long[] keys, int[] order) {
+    int n = keys.length;
+    long[] keys2 = new long[n];
+    int[] order2 = new int[n];
+    int[] counts = new int[(1 << RADIX_BITS) + 1];
+    // Codes are below 2^62.
+    for (int shift = 0; shift < 62; shift += RADIX_BITS) {
+      Arrays.fill(counts, 0);
+      for (int i = 0; i < n; i++) {
+        counts[(int) (keys[i] >>> shift) & ((1 << RADIX_BITS) - 1)]++;
+      }
+      int sum = 0;
+      for (int d = 0; d < counts.length; d++) {
+        int c = counts[d];
+        counts[d] = sum;
+        sum += c;
+      }
+      for (int i = 0; i < n; i++) {
+        int d = (int) (keys[i] >>> shift) & ((1 << RADIX_BITS) - 1);
+        int j = counts[d]++;
+        keys2[j] = keys[i];
+        order2[j] = order[i];
+      }
+      System.arraycopy(keys2, 0, keys, 0, n);
+      System.arraycopy(order2, 0, order, 0, n);
+    }
+  }
+
+  /**
+   * Computes BIGMIN, the smallest Morton code greater than code that lies within the box
+   * whose lower left and upper right corners have the codes zmin and zmax, following
+   * Tropf and Herzog. code must lie between zmin and zmax, but outside the box.
+   */
+  private static long bigmin(long code, long zmin, long zmax) {
+    long bigmin = 0;
+    for (int bit = 61; bit >= 0; bit--) {
+      long mask = 1L << bit;
+      // The lower bits of the same coordinate as this bit.
+      long lower = (mask - 1) & ((bit & 1) == 0 ? EVEN : ODD);
+      boolean c = (code & mask) != 0, lo = (zmin & mask) != 0, hi = (zmax & mask) != 0;
+      if (!c) {
+        if (!lo && hi) {
+          // The box straddles this bit: its upper half is the best candidate so far,
+          // and the search goes on in its lower half.
+          bigmin = (zmin | mask) & ~lower;
+          zmax = (zmax & ~mask) | lower;
+        } else if (lo && hi) {
+          return zmin;
+        }
+      } else {
+        if (!lo && !hi) {
+          return bigmin;
+        } else if (!lo) {
+          zmin = (zmin | mask) & ~lower;
+        }
+      }
+    }
+    return bigmin;
+  }
+
+  /**
+   * Linear QuadTrees are read-only.
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public InsertOutcome insert(AbstractNode<T> newNode) {
+    throw new UnsupportedOperationException("A Morton-order QuadTree is read-only");
+  }
+
+  /**
+   * Linear QuadTrees are read-only.
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException("A Morton-order QuadTree is read-only");
+  }
+
+  /**
+   * A linear QuadTree has no root node.
+   * @return null
+   */
+  @Override
+  public AbstractNode<T> getRoot() {
+    return null;
+  }
+
+  @Override
+  public List<AbstractNode<T>> queryRange(Shape range) {
+    List<AbstractNode<T>> result = new ArrayList<AbstractNode<T>>();
+    Rectangle r = range.getBounds();
+    search(r.x, r.y, r.x + r.width - 1, r.y + r.height - 1, null, range, result);
+    return result;
+  }
+
+  @Override
+  public boolean queryRange(int minX, int minY, int maxX, int maxY, final NodeVisitor<T> visitor) {
+    return queryRange(minX, minY, maxX, maxY, new PointVisitor<T>() {
+      @Override
+      public boolean visit(int x, int y, T value) {
+        return visitor.visit(new PointNode<T>(x, y, value));
+      }
+    });
+  }
+
+  /**
+   * Passes every point within inclusive bounds to a visitor, in Morton order, without creating nodes.
+   * @return true if the whole range was searched, false if the visitor stopped the query
+   */
+  public boolean queryRange(int minX, int minY, int maxX, int maxY, PointVisitor<T> visitor) {
+    return search(minX, minY, maxX, maxY, visitor, null, null);
+  }
+
+  /**
+   * Scans the points whose codes lie between those of the corners of the inclusive bounds,
+   * skipping to BIGMIN whenever the scan leaves them. With a shape, the points within the
+   * bounds that the shape contains are added to result; without one, they go to the visitor.
+   */
+  @SuppressWarnings("unchecked")
+  private boolean search(int minX, int minY, int maxX, int maxY, PointVisitor<T> visitor,
+      Shape range, List<AbstractNode<T>> result) {
+    visited = 0;
+    minX = Math.max(minX, bounds.x);
+    minY = Math.max(minY, bounds.y);
+    maxX = Math.min(maxX, bounds.x + bounds.width - 1);
+    maxY = Math.min(maxY, bounds.y + bounds.height - 1);
+    if (size == 0 || minX > maxX || minY > maxY) {
+      return true;
+    }
+    if (scanner != null) {
+      BlockSearch block = new BlockSearch(minX, minY, maxX, maxY, visitor, range, result);
+      // The smallest region that holds the bounds: codes use level bits of each coordinate.
+      int level = 32 - Integer.numberOfLeadingZeros(Math.max(bounds.width, bounds.height) - 1);
+      boolean completed = block.search(0, size, 0, level, bounds.x, bounds.y);
+      visited = block.visited;
+      return completed;
+    }
+    long zmin = code(minX, minY);
+    long zmax = code(maxX, maxY);
+    long[] codes = this.codes;
+    int n = codes.length;
+    int count = 0;
+    int i = lowerBound(zmin, 0, n);
+    while (i < n && codes[i] <= zmax) {
+      count++;
+      int x = xs[i], y = ys[i];
+      if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+        if (range == null) {
+          if (!visitor.visit(x, y, (T) values[i])) {
+            visited = count;
+            return false;
+          }
+        } else if (range.contains(x, y)) {
+          result.add(new PointNode<T>(x, y, (T) values[i]));
+        }
+        i++;
+      } else {
+        i = seek(bigmin(codes[i], zmin, zmax), i + 1);
+      }
+    }
+    visited = count;
+    return true;
+  }
+
+  /**
+   * The state of a rectangle query that walks regions and scans blocks, as set up by search. 
+   */
+  private final class BlockSearch {
+
+    private final int minX, minY, maxX, maxY;
+    private final PointVisitor<T> visitor;
+    private final Shape range;
+    private final List<AbstractNode<T>> result;
+    private final int[] hits = new int[BLOCK];
+    private int visited;
+
+    BlockSearch(int minX, int minY, int maxX, int maxY, PointVisitor<T> visitor, Shape range, List<AbstractNode<T>> result) {
+      this.minX = minX;
+      this.minY = minY;
+      this.maxX = maxX;
+      this.maxY = maxY;
+      this.visitor = visitor;
+      this.range = range;
+      this.result = result;
+    }
+
+    /**
+     * Reports the points of the region whose lower left corner is (x, y), whose sides are
+     * 2^level long and whose points are those in [from, to).
+     * @param base the smallest Morton code in the region
+     * @return false if the visitor stopped the query
+     */
+    boolean search(int from, int to, long base, int level, long x, long y) {
+      if (from >= to) {
+        return true;
+      }
+      long side = 1L << level;
+      if (x > maxX || x + side <= minX || y > maxY || y + side <= minY) {
+        return true;
+      }
+      if (x >= minX && x + side - 1 <= maxX && y >= minY && y + side - 1 <= maxY) {
+        visited += to - from;
+        for (int i = from; i < to; i++) {
+          if (!report(i)) {
+            return false;
+          }
+        }
+        return true;
+      }
+      if (to - from <= BLOCK || level == 0) {
+        visited += to - from;
+        int count = scanner.scan(xs, ys, from, to, minX, minY, maxX, maxY, hits);
+        for (int k = 0; k < count; k++) {
+          if (!report(hits[k])) {
+            return false;
+          }
+        }
+        return true;
+      }
+      // The quadrants follow each other in Morton order: x is the low bit of the quadrant, y the high one.
+      long quarter = 1L << 2 * (level - 1);
+      long half = side >> 1;
+      int start = from;
+      for (int q = 0; q < 4; q++) {
+        int end = q == 3 ? to : lowerBound(base + (q + 1) * quarter, start, to);
+        if (!search(start, end, base + q * quarter, level - 1, x + (q & 1) * half, y + (q >> 1) * half)) {
+          return false;
+        }
+        start = end;
+      }
+      return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean report(int i) {
+      int x = xs[i], y = ys[i];
+      if (range == null) {
+        return visitor.visit(x, y, (T) values[i]);
+      }
+      if (range.contains(x, y)) {
+        result.add(new PointNode<T>(x, y, (T) values[i]));
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Makes rectangle queries scan blocks of points with a scanner, instead of skipping from
+   * run to run of the range with BIGMIN. Set it before the tree is shared between threads.
+   * @param scanner the scanner, for example {@link RangeScanner#vector()}, or null to skip with BIGMIN again
+   */
+  public void setScanner(RangeScanner scanner) {
+    this.scanner = scanner;
+  }
+
+  public RangeScanner getScanner() {
+    return scanner;
+  }
+
+  /**
+   * Finds the first index from from on whose code is at least key, by galloping forward
+   * first, since the next code within the range is usually close by.
+   */
+  private int seek(long key, int from) {
+    long[] codes = this.codes;
+    int n = codes.length;
+    int lo = from, hi = from, step = 1;
+    while (hi < n && codes[hi] < key) {
+      lo = hi + 1;
+      hi += step;
+      step <<= 1;
+    }
+    return lowerBound(key, lo, Math.min(hi, n));
+  }
+
+  /**
+   * Finds the first index in [lo, hi) whose code is at least key, or hi if there is none.
+   */
+  private int lowerBound(long key, int lo, int hi) {
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (codes[mid] < key) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Get the number of points the last query looked at, including those between runs
+   * of the range that made it skip ahead.
+   * @return the number of visited points
+   */
+  public int getVisitedOnLastSearch() {
+    return visited;
+  }
+
+}
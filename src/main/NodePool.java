@@ -0,0 +1,109 @@
+package main;
+import java.awt.Point;
+import java.util.ArrayDeque;
+
+/**
+ * Recycles the nodes of cleared trees, so that a tree that is rebuilt over and over reuses
+ * the same nodes and Points instead of allocating new ones for every rebuild.
+ *
+ * {@link PointQuadTree#clear(NodePool)} hands its whole tree to the pool in O(1), as a single
+ * subtree. The pool only takes it apart as {@link #acquire(int, int, Object)} needs nodes: every
+ * acquired node is the next one of a depth-first walk of the released subtrees, with its
+ * children set aside for later calls, so acquiring a node takes O(1) whether it is recycled
+ * or new. A recycled node gets its new location written into its own Point, so the nodes and
+ * Points of a released tree must not be referenced anywhere else: not by earlier query results,
+ * and not by the caller that created them. Nodes created by the pool only ever use Points of
+ * their own.
+ *
+ * Released nodes keep their old values until they are acquired again; {@link #clear()} drops
+ * them. A pool is not thread-safe.
+ * @author FrancescoA
+ *
+ * @param <T> the type of the node values
+ */
+public class NodePool<T> {
+
+  private final ArrayDeque<AbstractNode<T>> pending = new ArrayDeque<AbstractNode<T>>();
+  private long allocated, recycled;
+
+  /**
+   * Gives the nodes of a subtree to the pool, without visiting them.
+   * @param root the root of the subtree, or null for none
+   */
+  public void release(AbstractNode<T> root) {
+    if (root != null) {
+      pending.push(root);
+    }
+  }
+
+  /**
+   * Returns a childless node at a location, recycled if the pool has one.
+   * @param x the x-coordinate of the node location
+   * @param y the y-coordinate of the node location
+   * @param value the value of the node
+   * @return the node
+   */
+  public PointNode<T> acquire(int x, int y, T value) {
+    while (!pending.isEmpty()) {
+      AbstractNode<T> node = pending.pop();
+      release(node.northEast);
+      release(node.southEast);
+      release(node.southWest);
+      release(node.northWest);
+      node.northEast = node.southEast = node.southWest = node.northWest = null;
+      // Other node types cannot be given a value, so they are left to the garbage collector.
+      if (node instanceof PointNode<?>) {
+        PointNode<T> recycledNode = (PointNode<T>) node;
+        recycledNode.location.x = x;
+        recycledNode.location.y = y;
+        recycledNode.setValue(value);
+        recycledNode.bucket = null;
+        recycledNode.count = 1;
+        recycledNode.aggregate = null;
+        recycled++;
+        return recycledNode;
+      }
+    }
+    allocated++;
+    return new PointNode<T>(x, y, value);
+  }
+
+  /**
+   * Returns a childless node at a copy of a location, recycled if the pool has one.
+   * @param location the location of the node, which the node does not keep
+   * @param value the value of the node
+   * @return the node
+   */
+  public PointNode<T> acquire(Point location, T value) {
+    return acquire(location.x, location.y, value);
+  }
+
+  /**
+   * Drops all released nodes that have not been acquired yet.
+   */
+  public void clear() {
+    pending.clear();
+  }
+
+  /**
+   * Get the number of nodes the pool had to create because it had none to recycle.
+   * @return the number of new nodes
+   */
+  public long getAllocated() {
+    return allocated;
+  }
+
+  /**
+   * Get the number of released nodes the pool handed out again.
+   * @return the number of recycled nodes
+   */
+  public long getRecycled() {
+    return recycled;
+  }
+
+  @Override
+  public String toString() {
+    return "NodePool: " + allocated + " allocated, " + recycled + " recycled";
+  }
+
+}
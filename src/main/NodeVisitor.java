@@ -0,0 +1,18 @@
+package main;
+
+/**
+ * Callback for the visitor-based queryRange methods of {@link AbstractQuadTree}.
+ * @author FrancescoA
+ *
+ * @param <T> the type of the node values
+ */
+public interface NodeVisitor<T> {
+
+  /**
+   * Called once for every node found by a query.
+   * @param node a node inside the query range
+   * @return true to continue the query, false to stop it
+   */
+  boolean visit(AbstractNode<T> node);
+
+}
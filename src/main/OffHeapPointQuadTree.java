@@ -0,0 +1,346 @@
+package main;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A point QuadTree that stores its nodes outside the Java heap, in direct ByteBuffers.
+ *
+ * Like {@link ArrayPointQuadTree}, it builds exactly the same tree as a {@link PointQuadTree}
+ * from the same insertion sequence, with nodes referring to their children by index. Every
+ * node is a 32 byte record in native byte order: x, y, the indices of its NE, SE, SW and NW
+ * children (NONE if the quadrant is empty), and its value. The records live in chunks of a
+ * fixed number of nodes, allocated as the tree grows, so the tree never copies its nodes
+ * and the garbage collector only ever sees one buffer object per chunk.
+ *
+ * Null and Integer values are stored in the record itself. Any other value stays on the heap,
+ * in a list the record holds the index of, so a tree of 100M points with null or Integer values
+ * adds almost nothing to the heap. {@link #clear()} frees the chunks right away instead of
+ * waiting for the garbage collector to find their buffers unreachable.
+ *
+ * The tree is not thread-safe. Nodes passed to {@link #insert(AbstractNode)} are copied into
+ * the chunks, and the nodes returned by {@link #queryRange(Shape)} are new {@link PointNode}s.
+ * @author FrancescoA
+ *
+ * @param <T> the type of the node values
+ */
+public class OffHeapPointQuadTree<T> extends AbstractQuadTree<T> {
+
+  /**
+   * Child index of an empty quadrant.
+   */
+  public static final int NONE = -1;
+
+  /**
+   * The number of nodes per chunk by default: 2MB of memory.
+   */
+  public static final int DEFAULT_CHUNK_NODES = 1 << 16;
+
+  private static final int NODE_BYTES = 32;
+  private static final int X = 0, Y = 4, CHILDREN = 8, VALUE = 24;
+
+  /**
+   * The tags of a stored value, in its upper 32 bits; the lower 32 bits hold the
+   * Integer value itself or the index of the value on the heap.
+   */
+  private static final long NULL = 0, INTEGER = 1, HEAP = 2;
+
+  /**
+   * Unsafe.invokeCleaner(ByteBuffer), which frees the memory of a direct buffer, or null
+   * if this JVM does not have it; the buffers are then freed when they are garbage collected.
+   */
+  private static final MethodHandle INVOKE_CLEANER;
+
+  static {
+    MethodHandle invokeCleaner = null;
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      invokeCleaner = MethodHandles.lookup().findVirtual(unsafeClass, "invokeCleaner",
+          MethodType.methodType(void.class, ByteBuffer.class)).bindTo(theUnsafe.get(null));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      invokeCleaner = null;
+    }
+    INVOKE_CLEANER = invokeCleaner;
+  }
+
+  private final int shift, mask;
+  private ByteBuffer[] chunks = new ByteBuffer[0];
+  private List<Object> heapValues = new ArrayList<Object>();
+  private int[] stack = new int[16];
+  private int visited = 0;
+
+  public OffHeapPointQuadTree(Rectangle bounds) {
+    this(bounds, DEFAULT_CHUNK_NODES);
+  }
+
+  public OffHeapPointQuadTree(int x, int y, int width, int height) {
+    this(new Rectangle(x, y, width, height));
+  }
+
+  /**
+   * @param bounds the dimension and location of the QuadTree
+   * @param chunkNodes the number of nodes per chunk, rounded up to a power of two
+   */
+  public OffHeapPointQuadTree(Rectangle bounds, int chunkNodes) {
+    super(bounds);
+    if (chunkNodes <= 0 || chunkNodes > Integer.MAX_VALUE / NODE_BYTES) {
+      throw new IllegalArgumentException("Cannot store " + chunkNodes + " nodes per chunk");
+    }
+    shift = 32 - Integer.numberOfLeadingZeros(chunkNodes - 1);
+    mask = (1 << shift) - 1;
+  }
+
+  @Override
+  public InsertOutcome insert(AbstractNode<T> node) {
+    T value = null;
+    if (node instanceof PointNode<?>) {
+      value = ((PointNode<T>) node).getValue();
+    }
+    Point location = node.getLocation();
+    return insert(location.x, location.y, value) ? InsertOutcome.INSERTED : InsertOutcome.REJECTED;
+  }
+
+  /**
+   * Inserts a point into the QuadTree instance.
+   * @param location the location of the point
+   * @param value the value of the point
+   * @return INSERTED, or REJECTED if there already was a node at the location
+   */
+  public InsertOutcome insert(Point location, T value) {
+    return insert(location.x, location.y, value) ? InsertOutcome.INSERTED : InsertOutcome.REJECTED;
+  }
+
+  /**
+   * Inserts a point into the QuadTree instance. Duplicate locations are not inserted.
+   * @param x the x-coordinate of the point
+   * @param y the y-coordinate of the point
+   * @param value the value of the point
+   * @return true if the point was inserted, false if its location was already taken
+   */
+  public boolean insert(int x, int y, T value) {
+    if (!bounds.contains(x, y)) {
+      throw new QuadTreeException("Cannot insert node (" + x + ", " + y + ") because it is outside QuadTree bounds.");
+    }
+    if (size == 0) {
+      add(x, y, value);
+      return true;
+    }
+    int current = 0;
+    while (true) {
+      ByteBuffer chunk = chunks[current >>> shift];
+      int offset = (current & mask) * NODE_BYTES;
+      int quadrant = quadrantOf(x, y, chunk.getInt(offset + X), chunk.getInt(offset + Y));
+      if (quadrant < 0) {
+        return false;
+      }
+      int slot = offset + CHILDREN + 4 * quadrant;
+      int child = chunk.getInt(slot);
+      if (child == NONE) {
+        // add() may allocate a new chunk, but never moves this one.
+        chunk.putInt(slot, add(x, y, value));
+        return true;
+      }
+      current = child;
+    }
+  }
+
+  /**
+   * Determines which quadrant of a node at (cx, cy) a location falls into,
+   * following the same conventions as the AbstractNode.isXOf methods.
+   * @return NE, SE, SW or NW, or a negative value if the location is (cx, cy)
+   */
+  private static int quadrantOf(int x, int y, int cx, int cy) {
+    if (x >= cx && y > cy) {
+      return ArrayPointQuadTree.NE;
+    } else if (x > cx && y <= cy) {
+      return ArrayPointQuadTree.SE;
+    } else if (x < cx && y >= cy) {
+      return ArrayPointQuadTree.NW;
+    } else if (x <= cx && y < cy) {
+      return ArrayPointQuadTree.SW;
+    }
+    return -1;
+  }
+
+  /**
+   * Appends a new childless node, allocating a new chunk if the last one is full.
+   * @return the index of the new node
+   */
+  private int add(int x, int y, T value) {
+    int index = size;
+    if (index >>> shift == chunks.length) {
+      chunks = Arrays.copyOf(chunks, chunks.length + 1);
+      chunks[chunks.length - 1] = ByteBuffer.allocateDirect(NODE_BYTES << shift).order(ByteOrder.nativeOrder());
+    }
+    ByteBuffer chunk = chunks[index >>> shift];
+    int offset = (index & mask) * NODE_BYTES;
+    chunk.putInt(offset + X, x);
+    chunk.putInt(offset + Y, y);
+    for (int q = 0; q < 4; q++) {
+      chunk.putInt(offset + CHILDREN + 4 * q, NONE);
+    }
+    chunk.putLong(offset + VALUE, encode(value));
+    size++;
+    return index;
+  }
+
+  private long encode(T value) {
+    if (value == null) {
+      return NULL << 32;
+    } else if (value instanceof Integer) {
+      return INTEGER << 32 | ((Integer) value & 0xFFFFFFFFL);
+    }
+    heapValues.add(value);
+    return HEAP << 32 | (heapValues.size() - 1);
+  }
+
+  @SuppressWarnings("unchecked")
+  private T decode(long stored) {
+    long tag = stored >>> 32;
+    if (tag == INTEGER) {
+      return (T) Integer.valueOf((int) stored);
+    } else if (tag == HEAP) {
+      return (T) heapValues.get((int) stored);
+    }
+    return null;
+  }
+
+  /**
+   * Returns a new list on every call. Searches the bounds of range grown by one to the right
+   * and bottom, so it visits the same nodes as PointQuadTree.
+   */
+  @Override
+  public List<AbstractNode<T>> queryRange(Shape range) {
+    final List<AbstractNode<T>> result = new ArrayList<AbstractNode<T>>();
+    final Shape shape = range;
+    Rectangle r = range.getBounds();
+    queryRange(r.x, r.y, r.x + r.width, r.y + r.height, new PointVisitor<T>() {
+      @Override
+      public boolean visit(int x, int y, T value) {
+        if (shape.contains(x, y)) {
+          result.add(new PointNode<T>(x, y, value));
+        }
+        return true;
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Passes every point within the given bounds to a visitor as primitive coordinates,
+   * in the same order as PointQuadTree. All bounds are inclusive.
+   * @param minX the smallest x-coordinate of the range
+   * @param minY the smallest y-coordinate of the range
+   * @param maxX the largest x-coordinate of the range
+   * @param maxY the largest y-coordinate of the range
+   * @param visitor the visitor called for every point in the range
+   * @return true if the whole range was searched, false if the visitor stopped the query
+   */
+  public boolean queryRange(int minX, int minY, int maxX, int maxY, PointVisitor<T> visitor) {
+    visited = 0;
+    if (size == 0) {
+      return true;
+    }
+    int top = 0;
+    stack[top++] = 0;
+    while (top > 0) {
+      int i = stack[--top];
+      visited++;
+      ByteBuffer chunk = chunks[i >>> shift];
+      int offset = (i & mask) * NODE_BYTES;
+      int x = chunk.getInt(offset + X), y = chunk.getInt(offset + Y);
+      if (x >= minX && x <= maxX && y >= minY && y <= maxY && !visitor.visit(x, y, decode(chunk.getLong(offset + VALUE)))) {
+        return false;
+      }
+      // Children are pushed in reverse so they are visited in the same order as PointQuadTree.
+      if (top + 4 > stack.length) {
+        stack = Arrays.copyOf(stack, 2 * stack.length);
+      }
+      int base = offset + CHILDREN;
+      int child;
+      if (x <= maxX && y < maxY && (child = chunk.getInt(base + 4 * ArrayPointQuadTree.NE)) != NONE) {
+        stack[top++] = child;
+      }
+      if (x > minX && y <= maxY && (child = chunk.getInt(base + 4 * ArrayPointQuadTree.NW)) != NONE) {
+        stack[top++] = child;
+      }
+      if (x < maxX && y >= minY && (child = chunk.getInt(base + 4 * ArrayPointQuadTree.SE)) != NONE) {
+        stack[top++] = child;
+      }
+      if (x >= minX && y > minY && (child = chunk.getInt(base + 4 * ArrayPointQuadTree.SW)) != NONE) {
+        stack[top++] = child;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Creates a new PointNode for every node passed to the visitor;
+   * use the PointVisitor overload to avoid the allocations.
+   */
+  @Override
+  public boolean queryRange(int minX, int minY, int maxX, int maxY, final NodeVisitor<T> visitor) {
+    return queryRange(minX, minY, maxX, maxY, new PointVisitor<T>() {
+      @Override
+      public boolean visit(int x, int y, T value) {
+        return visitor.visit(new PointNode<T>(x, y, value));
+      }
+    });
+  }
+
+  /**
+   * Returns the root of the tree as a new, childless PointNode, or null if the tree is empty.
+   */
+  @Override
+  public AbstractNode<T> getRoot() {
+    if (size == 0) {
+      return null;
+    }
+    ByteBuffer chunk = chunks[0];
+    return new PointNode<T>(chunk.getInt(X), chunk.getInt(Y), decode(chunk.getLong(VALUE)));
+  }
+
+  public int getVisitedOnLastSearch() {
+    return visited;
+  }
+
+  /**
+   * Get the amount of memory the tree holds outside the heap.
+   * @return the size of all chunks, in bytes
+   */
+  public long getOffHeapBytes() {
+    return (long) chunks.length * (NODE_BYTES << shift);
+  }
+
+  /**
+   * Removes all points and frees the memory of the chunks. The tree can be used again afterwards.
+   */
+  @Override
+  public void clear() {
+    ByteBuffer[] freed = chunks;
+    chunks = new ByteBuffer[0];
+    heapValues = new ArrayList<Object>();
+    size = 0;
+    if (INVOKE_CLEANER != null) {
+      for (ByteBuffer chunk : freed) {
+        try {
+          INVOKE_CLEANER.invokeExact(chunk);
+        } catch (Throwable e) {
+          // The chunk is freed when it is garbage collected instead.
+        }
+      }
+    }
+  }
+
+}
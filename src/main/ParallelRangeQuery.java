@@ -0,0 +1,120 @@
+package main;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Searches a PointQuadTree for the nodes within a range on several threads.
+ *
+ * A task whose subtree holds at least PARALLEL_THRESHOLD nodes, by the subtree count every
+ * node keeps, checks its own node and forks one task for every child quadrant that intersects
+ * the range; smaller subtrees are searched by the current thread with the sequential search
+ * of PointQuadTree. Every task collects its nodes into its own QueryResult, and the parts
+ * are concatenated once at the end, in the same order as the sequential search.
+ * @author FrancescoA
+ *
+ * @param <T> the type of the node values
+ */
+class ParallelRangeQuery<T> extends RecursiveAction {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Subtrees that hold fewer nodes than this are searched by the current thread.
+   */
+  static final int PARALLEL_THRESHOLD = 1 << 13;
+
+  private final PointQuadTree<T> tree;
+  private final AbstractNode<T> node;
+  private final Shape range;
+  private final int minX, minY, maxX, maxY;
+  private final int depth;
+  private final boolean traced;
+  private final QueryResult<T> part = new QueryResult<T>();
+  private List<ParallelRangeQuery<T>> children;
+
+  ParallelRangeQuery(PointQuadTree<T> tree, AbstractNode<T> node, Shape range,
+      int minX, int minY, int maxX, int maxY, int depth, boolean traced) {
+    this.tree = tree;
+    this.node = node;
+    this.range = range;
+    this.minX = minX;
+    this.minY = minY;
+    this.maxX = maxX;
+    this.maxY = maxY;
+    this.depth = depth;
+    this.traced = traced;
+  }
+
+  @Override
+  protected void compute() {
+    if (node == null) {
+      return;
+    }
+    if (node.count < PARALLEL_THRESHOLD) {
+      if (traced) {
+        tree.queryRange(node, minX, minY, maxX, maxY, PointQuadTree.collector(range, part), part, depth);
+      } else {
+        tree.queryRange(node, range, range.getClass() == Rectangle.class, minX, minY, maxX, maxY, part);
+      }
+      return;
+    }
+    part.visited++;
+    part.maxDepth = depth;
+    int x = node.location.x;
+    int y = node.location.y;
+    if (range.contains(x, y)) {
+      part.add(node);
+    }
+    // The same pruning and order as the sequential search.
+    children = new ArrayList<ParallelRangeQuery<T>>(4);
+    addChild(node.southWest, PointQuadTree.searchSouthWest(x, y, minX, minY));
+    addChild(node.southEast, PointQuadTree.searchSouthEast(x, y, maxX, minY));
+    addChild(node.northWest, PointQuadTree.searchNorthWest(x, y, minX, maxY));
+    addChild(node.northEast, PointQuadTree.searchNorthEast(x, y, maxX, maxY));
+    invokeAll(children);
+  }
+
+  private void addChild(AbstractNode<T> child, boolean intersects) {
+    if (child == null) {
+      return;
+    }
+    if (intersects) {
+      children.add(new ParallelRangeQuery<T>(tree, child, range, minX, minY, maxX, maxY, depth + 1, traced));
+    } else {
+      part.pruned++;
+    }
+  }
+
+  /**
+   * Appends the nodes found by this task and its subtasks, in search order, to result,
+   * and adds up their statistics.
+   */
+  void collect(QueryResult<T> result) {
+    result.getNodes().addAll(part.getNodes());
+    result.visited += part.visited;
+    result.pruned += part.pruned;
+    result.maxDepth = Math.max(result.maxDepth, part.maxDepth);
+    if (children != null) {
+      for (ParallelRangeQuery<T> child : children) {
+        child.collect(result);
+      }
+    }
+  }
+
+  /**
+   * The number of nodes found by this task and its subtasks.
+   */
+  int count() {
+    int count = part.size();
+    if (children != null) {
+      for (ParallelRangeQuery<T> child : children) {
+        count += child.count();
+      }
+    }
+    return count;
+  }
+
+}
@@ -0,0 +1,356 @@
+package main;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A PointQuadTree whose nodes are never changed once they are linked, so that a snapshot of it
+ * costs nothing and stays the same however the tree changes afterwards.
+ *
+ * An insert copies the path from the root to the parent of the new node, links the node
+ * below the copy of its parent and makes the copy of the root the new root. All the nodes off
+ * that path are shared with the previous version, which stays intact. {@link #with(AbstractNode)}
+ * returns the new version as a tree of its own and leaves this one as it is, and
+ * {@link #snapshot()} returns the current version in O(1). A snapshot is itself a
+ * PersistentPointQuadTree: writes to it only change the snapshot. Versions that are no longer
+ * referenced are reclaimed by the garbage collector, along with the nodes only they used.
+ *
+ * Writes lock the tree, but only for the length of a path copy, so one thread can keep
+ * inserting while others take snapshots and scan them for as long as they like without locking.
+ * Query a snapshot rather than the tree itself while another thread writes to it.
+ * A remove copies the path to the removed node and then reinserts copies of the nodes below
+ * it, so, as in PointQuadTree, its cost grows with the size of that subtree. A move removes
+ * the node and inserts a copy of it at its new location. setAggregator and bulkLoad copy every
+ * node before they change them. A duplicate that the duplicate policy does not reject changes a
+ * copy of the node at its location, so earlier versions keep its old values.
+ * Only {@link PointNode}s can be copied, so the tree only holds PointNodes.
+ * @author FrancescoA
+ *
+ * @param <T> the type of the node values
+ */
+public class PersistentPointQuadTree<T> extends PointQuadTree<T> {
+
+  private InsertOutcome outcome;
+
+  public PersistentPointQuadTree(Rectangle bounds) {
+    super(bounds);
+  }
+
+  public PersistentPointQuadTree(int x, int y, int width, int height) {
+    super(x, y, width, height);
+  }
+
+  /**
+   * A version of a tree that shares all its nodes.
+   */
+  private PersistentPointQuadTree(PersistentPointQuadTree<T> tree, AbstractNode<T> root, int size) {
+    // The bounds of the tree were already grown by its constructor.
+    super(new Rectangle(tree.bounds.x + 1, tree.bounds.y + 1, tree.bounds.width - 2, tree.bounds.height - 2));
+    this.root = root;
+    this.size = size;
+    this.aggregator = tree.aggregator;
+    this.duplicatePolicy = tree.duplicatePolicy;
+  }
+
+  /**
+   * Returns the current version of the tree. It shares all its nodes with this tree,
+   * and neither later writes to this tree nor writes to the snapshot affect the other.
+   * @return the snapshot
+   */
+  public synchronized PersistentPointQuadTree<T> snapshot() {
+    return new PersistentPointQuadTree<T>(this, root, size);
+  }
+
+  /**
+   * Returns a new version of the tree with a node inserted, without changing this one.
+   * The new version only has its own copies of the nodes on the path to the new node.
+   * @param node the node to insert
+   * @return the new version, or a snapshot of this one if the duplicate policy rejected the node
+   */
+  public synchronized PersistentPointQuadTree<T> with(AbstractNode<T> node) {
+    checkBounds(node);
+    AbstractNode<T> inserted = inserted(root, node);
+    if (inserted == null) {
+      return snapshot();
+    }
+    return new PersistentPointQuadTree<T>(this, inserted, outcome == InsertOutcome.INSERTED ? size + 1 : size);
+  }
+
+  /**
+   * Returns a new version of the tree with a new node inserted, without changing this one.
+   * @param location the location of the node
+   * @param value the value of the node
+   * @return the new version
+   */
+  public PersistentPointQuadTree<T> with(Point location, T value) {
+    return with(new PointNode<T>(location, value));
+  }
+
+  @Override
+  public synchronized InsertOutcome insert(AbstractNode<T> node) {
+    checkBounds(node);
+    AbstractNode<T> inserted = inserted(root, node);
+    if (inserted != null) {
+      root = inserted;
+    }
+    if (outcome == InsertOutcome.INSERTED) {
+      size++;
+    }
+    insertCounts[outcome.ordinal()]++;
+    return outcome;
+  }
+
+  @Override
+  public synchronized void setDuplicatePolicy(DuplicatePolicy<T> policy) {
+    super.setDuplicatePolicy(policy);
+  }
+
+  /**
+   * Not supported: a rebuilt subtree would be a copy of every node in it, so an insert is
+   * only ever charged for its own path. bulkLoad still returns a balanced tree.
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public void setRebalancing(double balance, int rebuildLimit) {
+    throw new UnsupportedOperationException("A persistent QuadTree does not rebalance on insert");
+  }
+
+  private void checkBounds(AbstractNode<T> node) {
+    if (!bounds.contains(node.getLocation())) {
+      throw new QuadTreeException("Cannot insert node " + node + " because it is outside QuadTree bounds.");
+    }
+    if (!(node instanceof PointNode<?>)) {
+      throw new QuadTreeException("Cannot insert node " + node + " because only PointNodes can be copied.");
+    }
+  }
+
+  /**
+   * Links a node below a copy of the path it belongs under, or resolves it on a copy of the
+   * node at its location, and leaves the outcome in outcome.
+   * @return the copy of the root, or null if the duplicate policy rejected the node
+   */
+  private AbstractNode<T> inserted(AbstractNode<T> root, AbstractNode<T> node) {
+    Point location = node.location;
+    List<AbstractNode<T>> path = new ArrayList<AbstractNode<T>>();
+    AbstractNode<T> n = root;
+    while (n != null) {
+      if (n.location.equals(location)) {
+        AbstractNode<T> resolved = copy(n);
+        resolved.northEast = n.northEast;
+        resolved.southEast = n.southEast;
+        resolved.southWest = n.southWest;
+        resolved.northWest = n.northWest;
+        outcome = resolve(resolved, node);
+        if (outcome == InsertOutcome.REJECTED) {
+          return null;
+        }
+        recompute(resolved);
+        return copyPath(path, location, resolved);
+      }
+      path.add(n);
+      n = child(n, location.x, location.y);
+    }
+    node.northEast = node.southEast = node.southWest = node.northWest = null;
+    recompute(node);
+    outcome = InsertOutcome.INSERTED;
+    return copyPath(path, location, node);
+  }
+
+  /**
+   * Copies the nodes on a path from the root, bottom up, replacing the child of the last one
+   * in the direction of location, and recomputes their counts and aggregates.
+   * @param child the new child of the last node on the path, or null for none
+   * @return the copy of the root, or child if the path is empty
+   */
+  private AbstractNode<T> copyPath(List<AbstractNode<T>> path, Point location, AbstractNode<T> child) {
+    for (int i = path.size() - 1; i >= 0; i--) {
+      AbstractNode<T> copy = copy(path.get(i));
+      copy.northEast = path.get(i).northEast;
+      copy.southEast = path.get(i).southEast;
+      copy.southWest = path.get(i).southWest;
+      copy.northWest = path.get(i).northWest;
+      int x = copy.location.x, y = copy.location.y;
+      if (location.x >= x && location.y > y) {
+        copy.northEast = child;
+      } else if (location.x > x && location.y <= y) {
+        copy.southEast = child;
+      } else if (location.x < x && location.y >= y) {
+        copy.northWest = child;
+      } else {
+        copy.southWest = child;
+      }
+      recompute(copy);
+      child = copy;
+    }
+    return child;
+  }
+
+  /**
+   * The child of a node in the direction of a location other than its own.
+   */
+  private AbstractNode<T> child(AbstractNode<T> node, int x, int y) {
+    int nx = node.location.x, ny = node.location.y;
+    if (x >= nx && y > ny) {
+      return node.northEast;
+    } else if (x > nx && y <= ny) {
+      return node.southEast;
+    } else if (x < nx && y >= ny) {
+      return node.northWest;
+    }
+    return node.southWest;
+  }
+
+  /**
+   * A new node with the location and values of a node, and no children.
+   */
+  private static <T> AbstractNode<T> copy(AbstractNode<T> node) {
+    PointNode<T> copy = new PointNode<T>(node.location, ((PointNode<T>) node).getValue());
+    if (((PointNode<T>) node).bucket != null) {
+      copy.bucket = new ArrayList<T>(((PointNode<T>) node).bucket);
+    }
+    return copy;
+  }
+
+  /**
+   * Removes the node at a location. The removed node, like every node of the previous
+   * version, is left as it is; the nodes below it are reinserted as copies.
+   */
+  @Override
+  public synchronized AbstractNode<T> remove(Point location) {
+    return removeNode(location);
+  }
+
+  /**
+   * Helper function for remove, so that move does not call an overridable public method.
+   */
+  private AbstractNode<T> removeNode(Point location) {
+    List<AbstractNode<T>> path = new ArrayList<AbstractNode<T>>();
+    AbstractNode<T> node = root;
+    while (node != null && !node.location.equals(location)) {
+      path.add(node);
+      node = child(node, location.x, location.y);
+    }
+    if (node == null) {
+      return null;
+    }
+    List<AbstractNode<T>> subtree = new ArrayList<AbstractNode<T>>();
+    collect(node, subtree);
+    AbstractNode<T> newRoot = copyPath(path, location, null);
+    // Parents before children, so the subtree keeps as much of its shape as it can.
+    for (int i = 1; i < subtree.size(); i++) {
+      newRoot = inserted(newRoot, copy(subtree.get(i)));
+    }
+    root = newRoot;
+    size--;
+    return node;
+  }
+
+  /**
+   * Moves a node by removing it and inserting a copy of it at its new location.
+   */
+  @Override
+  public synchronized boolean move(Point from, Point to) {
+    if (!bounds.contains(to)) {
+      throw new QuadTreeException("Cannot move node to " + to + " because it is outside QuadTree bounds.");
+    }
+    AbstractNode<T> node = root;
+    while (node != null && !node.location.equals(from)) {
+      node = child(node, from.x, from.y);
+    }
+    if (node == null) {
+      return false;
+    }
+    if (from.equals(to)) {
+      return true;
+    }
+    AbstractNode<T> occupant = root;
+    while (occupant != null && !occupant.location.equals(to)) {
+      occupant = child(occupant, to.x, to.y);
+    }
+    if (occupant != null) {
+      return false;
+    }
+    removeNode(from);
+    AbstractNode<T> moved = copy(node);
+    moved.location = new Point(to);
+    root = inserted(root, moved);
+    size++;
+    return true;
+  }
+
+  /**
+   * Copies every node before rebuilding the tree, so earlier versions keep theirs.
+   */
+  @Override
+  public synchronized void bulkLoad(AbstractNode<T>[] nodes) {
+    for (AbstractNode<T> n : nodes) {
+      checkBounds(n);
+    }
+    root = copyAll(root);
+    super.bulkLoad(nodes);
+  }
+
+  /**
+   * Copies every node before recomputing the aggregates, so earlier versions keep theirs.
+   */
+  @Override
+  public synchronized void setAggregator(Aggregator<? super T, ?> aggregator) {
+    root = copyAll(root);
+    super.setAggregator(aggregator);
+  }
+
+  /**
+   * Copies a whole subtree, keeping its shape, its counts and its aggregates.
+   */
+  private AbstractNode<T> copyAll(AbstractNode<T> root) {
+    List<AbstractNode<T>> all = new ArrayList<AbstractNode<T>>();
+    collect(root, all);
+    Map<AbstractNode<T>, AbstractNode<T>> copies = new IdentityHashMap<AbstractNode<T>, AbstractNode<T>>();
+    for (AbstractNode<T> n : all) {
+      AbstractNode<T> copy = copy(n);
+      copy.count = n.count;
+      copy.aggregate = n.aggregate;
+      copies.put(n, copy);
+    }
+    for (AbstractNode<T> n : all) {
+      AbstractNode<T> copy = copies.get(n);
+      copy.northEast = copies.get(n.northEast);
+      copy.southEast = copies.get(n.southEast);
+      copy.southWest = copies.get(n.southWest);
+      copy.northWest = copies.get(n.northWest);
+    }
+    return copies.get(root);
+  }
+
+  /**
+   * Drops all nodes without changing them, so snapshots keep theirs.
+   */
+  @Override
+  public synchronized void clear() {
+    root = null;
+    size = 0;
+  }
+
+  /**
+   * Gives no nodes to the pool, as they may be shared with snapshots and other versions.
+   */
+  @Override
+  public synchronized void clear(NodePool<T> pool) {
+    root = null;
+    size = 0;
+  }
+
+  @Override
+  public synchronized AbstractNode<T> getRoot() {
+    return root;
+  }
+
+  @Override
+  public synchronized int getSize() {
+    return size;
+  }
+
+}
@@ -1,5 +1,8 @@
 package main;
 import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * A QuadTree Node class. 
@@ -11,6 +14,8 @@ import java.awt.Point;
 public class PointNode<T> extends AbstractNode<T> {
   
   private T value;
+  // The values inserted at this location after the first one, under DuplicatePolicy.bucket().
+  List<T> bucket;
   
   /**
    * A Node constructor.
@@ -66,6 +71,32 @@ public class PointNode<T> extends AbstractNode<T> {
     value = val;
   }
   
+  /**
+   * Get all values inserted at the location of this node: its value, followed by the values 
+   * {@link DuplicatePolicy#bucket()} added to it. 
+   * @return an unmodifiable list of the values
+   */
+  public List<T> getValues() {
+    if (bucket == null) {
+      return Collections.singletonList(value);
+    }
+    List<T> values = new ArrayList<T>(bucket.size() + 1);
+    values.add(value);
+    values.addAll(bucket);
+    return Collections.unmodifiableList(values);
+  }
+  
+  /**
+   * Adds a value to the bucket of this node, keeping its current value. 
+   * @param val the value to add
+   */
+  void addValue(T val) {
+    if (bucket == null) {
+      bucket = new ArrayList<T>(2);
+    }
+    bucket.add(val);
+  }
+  
   @Override
   public void clear() {
     if (northEast != null) {
@@ -1,11 +1,19 @@
 package main;
 import java.awt.Point;
+import java.awt.Polygon;
 import java.awt.Rectangle;
 import java.awt.Shape;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A simple point QuadTree implementation.
@@ -16,6 +24,21 @@ import java.util.Set;
 public class PointQuadTree<T> extends AbstractQuadTree<T> {
   
   private int visited = 0;
+  private final QueryTracing tracing = new QueryTracing();
+  Aggregator<Object, Object> aggregator;
+  DuplicatePolicy<T> duplicatePolicy = DuplicatePolicy.reject();
+  final long[] insertCounts = new long[InsertOutcome.values().length];
+  private InsertOutcome outcome;
+  private int insertDepth;
+  private double balance;
+  private double logBalance;
+  private int rebuildLimit = DEFAULT_REBUILD_LIMIT;
+  private long rebuilds, rebuiltNodes;
+  
+  /**
+   * The largest subtree an insert rebuilds by default. 
+   */
+  public static final int DEFAULT_REBUILD_LIMIT = 1 << 16;
   
   public PointQuadTree (Rectangle bounds) {
     super(bounds);
@@ -27,96 +50,1517 @@ public class PointQuadTree<T> extends AbstractQuadTree<T> {
   
   public PointQuadTree(Rectangle bounds, AbstractNode<T> root) {
     super(bounds, root);
+    recomputeAll();
   }
 
   /**
    * Constructs a new Node with the given parameters and inserts it into the QuadTree instance. 
    * @param location the location of the Node
    * @param value the value of the Node
+   * @return what the insert did
    */
-  public void insert(Point location, T value) {
-    insert(new PointNode<T>(location, value));
+  public InsertOutcome insert(Point location, T value) {
+    return insert(new PointNode<T>(location, value));
   }
 
+  /**
+   * Inserts a node, or resolves it with the duplicate policy of the tree if there already 
+   * is a node at its location. 
+   * @see #setDuplicatePolicy(DuplicatePolicy)
+   */
   @Override
-  public void insert(AbstractNode<T> node) {
+  public InsertOutcome insert(AbstractNode<T> node) {
     if (!bounds.contains(node.getLocation())) {
       throw new QuadTreeException("Cannot insert node " + node + " because it is outside QuadTree bounds.");
     }
-    size++;
-    root = insert(root, node);
+    root = insert(root, node, 1);
+    if (outcome == InsertOutcome.INSERTED) {
+      size++;
+      // A tree whose every node is balanced is at most log(size) / log(1 / balance) + 1 levels deep. 
+      if (balance > 0 && insertDepth > Math.log(size) / logBalance + 1) {
+        rebalance(node);
+      }
+    }
+    insertCounts[outcome.ordinal()]++;
+    return outcome;
   }
   
   /**
    * Recursive helper function to insert a Node into the QuadTree. 
+   * Leaves the outcome of the insert in outcome, and the depth of an inserted node in 
+   * insertDepth, for the callers up the recursion. 
    * @param root the node in this recursive call (initially root)
    * @param newNode the node to be inserted
-   * @return
+   * @param depth the level of root, 1 for the root of the tree
+   * @return the node that takes the place of root
    */
-  private AbstractNode<T> insert(AbstractNode<T> root, AbstractNode<T> newNode) {
+  private AbstractNode<T> insert(AbstractNode<T> root, AbstractNode<T> newNode, int depth) {
     if (root == null) {
+      recompute(newNode);
+      outcome = InsertOutcome.INSERTED;
+      insertDepth = depth;
       return newNode;
+    } else if (newNode.equals(root)) {
+      outcome = resolve(root, newNode);
+    } else if (newNode.isNorthEastOf(root)) {
+      root.northEast = insert(root.northEast, newNode, depth + 1);
+    } else if (newNode.isSouthEastOf(root)) {
+      root.southEast = insert(root.southEast, newNode, depth + 1);
+    } else if (newNode.isNorthWestOf(root)) {
+      root.northWest = insert(root.northWest, newNode, depth + 1);
     } else {
-      if (newNode.equals(root)){
-        size--;
-        System.out.println("Attempted to insert a duplicate point ("+ newNode +"): was not inserted");
-      } else if (newNode.isNorthEastOf(root)) {
-        root.northEast = insert(root.northEast, newNode);
-      } else if (newNode.isSouthEastOf(root)) {
-        root.southEast = insert(root.southEast, newNode);
-      } else if (newNode.isNorthWestOf(root)) {
-        root.northWest = insert(root.northWest, newNode);
-      } else if (newNode.isSouthWestOf(root)) {
-        root.southWest = insert(root.southWest, newNode);
-      }
+      root.southWest = insert(root.southWest, newNode, depth + 1);
+    }
+    if (outcome == InsertOutcome.INSERTED) {
+      root.count++;
+      root.aggregate = merge(root.aggregate, newNode.aggregate);
+    } else if (outcome.changed() && aggregator != null) {
+      // The values at the location changed, so the aggregates on the way there are stale. 
+      recompute(root);
     }
     return root;
   }
   
+  /**
+   * Applies the duplicate policy to a node at the location of a node already in the tree. 
+   */
+  InsertOutcome resolve(AbstractNode<T> existing, AbstractNode<T> newNode) {
+    if (!(existing instanceof PointNode<?>) || !(newNode instanceof PointNode<?>)) {
+      // Only point nodes have values to resolve. 
+      return InsertOutcome.REJECTED;
+    }
+    InsertOutcome resolved = duplicatePolicy.resolve((PointNode<T>) existing, ((PointNode<T>) newNode).getValue());
+    if (resolved == null || resolved == InsertOutcome.INSERTED) {
+      throw new QuadTreeException("Duplicate policy " + duplicatePolicy + " returned " + resolved);
+    }
+    return resolved;
+  }
+  
+  /**
+   * Rebuilds the lowest ancestor of a node that was inserted too deep whose own subtree is 
+   * too deep for its size, as in a scapegoat tree. The root is such an ancestor, and a balanced 
+   * subtree is shallow enough, so the rebuild brings every node of the tree back within the bound. 
+   */
+  private void rebalance(AbstractNode<T> node) {
+    List<AbstractNode<T>> path = new ArrayList<AbstractNode<T>>(insertDepth);
+    int x = node.location.x, y = node.location.y;
+    for (AbstractNode<T> n = root; n != node; n = child(n, x, y)) {
+      path.add(n);
+    }
+    for (int i = path.size() - 1; i >= 0; i--) {
+      AbstractNode<T> ancestor = path.get(i);
+      if (ancestor.count > rebuildLimit) {
+        // Every ancestor above is larger still, so this insert leaves the tree as it is. 
+        return;
+      }
+      // The subtree of the ancestor reaches down to node, path.size() - i + 1 levels. 
+      if (path.size() - i + 1 > Math.log(ancestor.count) / logBalance + 1) {
+        rebuild(i == 0 ? null : path.get(i - 1), ancestor);
+        return;
+      }
+    }
+  }
+  
+  /**
+   * Replaces a subtree with a balanced tree of the same nodes. The counts and aggregates 
+   * of its ancestors stay the same, as the subtree holds the same nodes. 
+   * @param parent the parent of the subtree, or null if it is the whole tree
+   * @param subtree the root of the subtree
+   */
+  private void rebuild(AbstractNode<T> parent, AbstractNode<T> subtree) {
+    List<AbstractNode<T>> nodes = new ArrayList<AbstractNode<T>>(subtree.count);
+    collect(subtree, nodes);
+    @SuppressWarnings("unchecked")
+    AbstractNode<T>[] array = nodes.toArray(new AbstractNode[nodes.size()]);
+    // The nodes of a subtree are distinct, so this only sorts them. The builder replaces the 
+    // children of every node in place, so a reader that holds no lock must not walk the tree meanwhile. 
+    int count = BalancedBuilder.sortAndDeduplicate(array, array.length);
+    AbstractNode<T> rebuilt = BalancedBuilder.build(array, count);
+    nodes.clear();
+    collect(rebuilt, nodes);
+    for (int i = nodes.size() - 1; i >= 0; i--) {
+      recompute(nodes.get(i));
+    }
+    setChild(parent, subtree, rebuilt);
+    rebuilds++;
+    rebuiltNodes += count;
+  }
+  
+  /**
+   * Makes inserts keep the tree balanced as it grows, whatever the order of the nodes. 
+   * A subtree of n nodes may be at most log(n) / log(1 / balance) + 1 levels deep, the height 
+   * of a tree in which no subtree holds more than balance times the nodes of its parent. 
+   * When an insert lands deeper than that in the whole tree, the lowest ancestor of the new 
+   * node whose subtree is too deep is rebuilt in place as a balanced subtree, as bulkLoad 
+   * would build it. Rebuilds are rare and cost O(log n) amortized per insert, but a 
+   * subtree of more than rebuildLimit nodes is never rebuilt, so no single insert takes longer 
+   * than rebuilding rebuildLimit nodes; bulkLoad still rebalances the whole tree. 
+   * Rebalancing is off by default. 
+   * @param balance the balance threshold, above 0.5 (rebuild at the slightest imbalance) and 
+   * below 1 (hardly ever rebuild); 0.7 is a good start; 0 turns rebalancing off
+   * @param rebuildLimit the largest subtree an insert may rebuild, for example {@link #DEFAULT_REBUILD_LIMIT}
+   */
+  public void setRebalancing(double balance, int rebuildLimit) {
+    if (balance != 0 && !(balance > 0.5 && balance < 1)) {
+      throw new IllegalArgumentException("Balance threshold " + balance + " is not between 0.5 and 1");
+    }
+    if (rebuildLimit < 1) {
+      throw new IllegalArgumentException("Cannot rebuild subtrees of at most " + rebuildLimit + " nodes");
+    }
+    this.balance = balance;
+    this.logBalance = -Math.log(balance);
+    this.rebuildLimit = rebuildLimit;
+  }
+  
+  /**
+   * Get the balance threshold set with setRebalancing. 
+   * @return the balance threshold, 0 if rebalancing is off
+   */
+  public double getRebalanceThreshold() {
+    return balance;
+  }
+  
+  public int getRebuildLimit() {
+    return rebuildLimit;
+  }
+  
+  /**
+   * Sets what insert does with a node at the location of a node already in the tree: 
+   * reject it, replace the value of the existing node, merge the two values or add the new 
+   * value to the bucket of the existing node. The default is {@link DuplicatePolicy#reject()}. 
+   * bulkLoad always keeps the node it sees first, whatever the policy. 
+   * @param policy the policy, not null
+   */
+  public void setDuplicatePolicy(DuplicatePolicy<T> policy) {
+    if (policy == null) {
+      throw new NullPointerException("policy");
+    }
+    duplicatePolicy = policy;
+  }
+  
+  public DuplicatePolicy<T> getDuplicatePolicy() {
+    return duplicatePolicy;
+  }
+  
+  /**
+   * Get the number of inserts with an outcome since the tree was created. clear does not 
+   * reset the counts. 
+   * @param outcome the outcome
+   * @return the number of inserts that had that outcome
+   */
+  public long getInsertCount(InsertOutcome outcome) {
+    return insertCounts[outcome.ordinal()];
+  }
+  
+  /**
+   * Get the number of inserts that found a node already at their location, whatever the 
+   * duplicate policy did with them. 
+   * @return the number of duplicate inserts since the tree was created
+   */
+  public long getDuplicates() {
+    long duplicates = 0;
+    for (InsertOutcome outcome : InsertOutcome.values()) {
+      if (outcome != InsertOutcome.INSERTED) {
+        duplicates += insertCounts[outcome.ordinal()];
+      }
+    }
+    return duplicates;
+  }
 
+  /**
+   * Find the node at a location. 
+   * @param location the location of the node
+   * @return the node, or null if there is no node at that location
+   */
+  public AbstractNode<T> get(Point location) {
+    return find(location);
+  }
+  
+  /**
+   * Helper function for get, so that the other methods here never call an overridable public one. 
+   */
+  private AbstractNode<T> find(Point location) {
+    AbstractNode<T> node = root;
+    while (node != null && !node.location.equals(location)) {
+      node = child(node, location.x, location.y);
+    }
+    return node;
+  }
+  
+  /**
+   * Removes the node at a location. 
+   * Only the subtree below the removed node is restructured: its nodes are reinserted 
+   * below the parent of the removed node, parents before children, so the rest of the 
+   * tree keeps its shape. 
+   * @param location the location of the node to remove
+   * @return the removed node, or null if there was no node at that location
+   */
+  public AbstractNode<T> remove(Point location) {
+    return removeNode(location);
+  }
+  
+  /**
+   * Helper function for remove, so that move does not call an overridable public method. 
+   */
+  private AbstractNode<T> removeNode(Point location) {
+    AbstractNode<T> parent = null;
+    AbstractNode<T> node = root;
+    while (node != null && !node.location.equals(location)) {
+      parent = node;
+      node = child(node, location.x, location.y);
+    }
+    if (node == null) {
+      return null;
+    }
+    List<AbstractNode<T>> subtree = new ArrayList<AbstractNode<T>>();
+    collect(node, subtree);
+    setChild(parent, node, null);
+    // Unlink the whole subtree before reinserting any of it, so every node is attached without 
+    // the children it had below the removed node. Readers must not walk the tree meanwhile. 
+    for (AbstractNode<T> n : subtree) {
+      n.northEast = n.southEast = n.southWest = n.northWest = null;
+    }
+    for (int i = 1; i < subtree.size(); i++) {
+      attach(parent, subtree.get(i));
+    }
+    // Every node is attached below nodes that come before it, so children come first in reverse. 
+    for (int i = subtree.size() - 1; i >= 0; i--) {
+      recompute(subtree.get(i));
+    }
+    updatePath(parent);
+    size--;
+    return node;
+  }
+  
+  /**
+   * Moves the node at one location to another location. 
+   * If the node stays within the region its ancestors assign to it and all its descendants 
+   * stay in the same quadrants of it, its location is updated in place; otherwise the node 
+   * is removed and inserted again at its new location. 
+   * @param from the current location of the node
+   * @param to the new location of the node
+   * @return true if the node was moved, false if there is no node at from or there already is one at to
+   */
+  public boolean move(Point from, Point to) {
+    if (!bounds.contains(to)) {
+      throw new QuadTreeException("Cannot move node to " + to + " because it is outside QuadTree bounds.");
+    }
+    // Track the region of the node being searched for, as in nearest(). 
+    int minX = bounds.x, minY = bounds.y;
+    int maxX = bounds.x + bounds.width - 1, maxY = bounds.y + bounds.height - 1;
+    AbstractNode<T> parent = null;
+    AbstractNode<T> node = root;
+    while (node != null && !node.location.equals(from)) {
+      parent = node;
+      int nx = node.location.x, ny = node.location.y;
+      if (from.x >= nx && from.y > ny) {
+        minX = nx;
+        minY = ny + 1;
+        node = node.northEast;
+      } else if (from.x > nx && from.y <= ny) {
+        minX = nx + 1;
+        maxY = ny;
+        node = node.southEast;
+      } else if (from.x < nx && from.y >= ny) {
+        maxX = nx - 1;
+        minY = ny;
+        node = node.northWest;
+      } else {
+        maxX = nx;
+        maxY = ny - 1;
+        node = node.southWest;
+      }
+    }
+    if (node == null) {
+      return false;
+    }
+    if (from.equals(to)) {
+      return true;
+    }
+    if (to.x >= minX && to.x <= maxX && to.y >= minY && to.y <= maxY && keepsQuadrants(node, to)) {
+      node.location = new Point(to);
+      return true;
+    }
+    Point old = node.location;
+    if (node.northEast == null && node.southEast == null && node.southWest == null && node.northWest == null) {
+      // A leaf can simply be unlinked, and linked back if the new location turns out to be taken. 
+      setChild(parent, node, null);
+      node.location = new Point(to);
+      if (!attach(null, node)) {
+        node.location = old;
+        attach(parent, node);
+        return false;
+      }
+      updatePath(parent);
+      updatePath(node);
+      return true;
+    }
+    if (find(to) != null) {
+      return false;
+    }
+    removeNode(from);
+    node.location = new Point(to);
+    attach(null, node);
+    updatePath(node);
+    size++;
+    return true;
+  }
+  
+  /**
+   * Determines whether every descendant of a node would stay in the same quadrant 
+   * if the node moved to a new location, and none of them is at that location. 
+   * Stops at the first descendant that would change quadrant. 
+   */
+  private boolean keepsQuadrants(AbstractNode<T> node, Point to) {
+    if (node.northEast == null && node.southEast == null && node.southWest == null && node.northWest == null) {
+      // Only the node itself lies in the region of a leaf. 
+      return true;
+    }
+    AbstractNode<T> moved = new PointNode<T>(to);
+    return inQuadrant(node.northEast, moved, NORTH_EAST) && inQuadrant(node.southEast, moved, SOUTH_EAST)
+        && inQuadrant(node.southWest, moved, SOUTH_WEST) && inQuadrant(node.northWest, moved, NORTH_WEST);
+  }
+  
+  private static final int NORTH_EAST = 0, SOUTH_EAST = 1, SOUTH_WEST = 2, NORTH_WEST = 3;
+  
+  /**
+   * Determines whether all nodes of a subtree lie in one quadrant of a node, without recursion. 
+   */
+  private boolean inQuadrant(AbstractNode<T> subtree, AbstractNode<T> node, int quadrant) {
+    if (subtree == null) {
+      return true;
+    }
+    List<AbstractNode<T>> pending = new ArrayList<AbstractNode<T>>();
+    pending.add(subtree);
+    while (!pending.isEmpty()) {
+      AbstractNode<T> n = pending.remove(pending.size() - 1);
+      boolean in;
+      switch (quadrant) {
+        case NORTH_EAST: in = n.isNorthEastOf(node); break;
+        case SOUTH_EAST: in = n.isSouthEastOf(node); break;
+        case SOUTH_WEST: in = n.isSouthWestOf(node); break;
+        default: in = n.isNorthWestOf(node); break;
+      }
+      if (!in) {
+        return false;
+      }
+      if (n.northEast != null) {
+        pending.add(n.northEast);
+      }
+      if (n.southEast != null) {
+        pending.add(n.southEast);
+      }
+      if (n.southWest != null) {
+        pending.add(n.southWest);
+      }
+      if (n.northWest != null) {
+        pending.add(n.northWest);
+      }
+    }
+    return true;
+  }
+  
+  /**
+   * Get the child of a node whose quadrant contains a location, which must not be the location of the node. 
+   */
+  private AbstractNode<T> child(AbstractNode<T> node, int x, int y) {
+    int nx = node.location.x, ny = node.location.y;
+    if (x >= nx && y > ny) {
+      return node.northEast;
+    } else if (x > nx && y <= ny) {
+      return node.southEast;
+    } else if (x < nx && y >= ny) {
+      return node.northWest;
+    }
+    return node.southWest;
+  }
+  
+  /**
+   * Replaces the link from parent to child, or the root if parent is null. 
+   */
+  private void setChild(AbstractNode<T> parent, AbstractNode<T> child, AbstractNode<T> replacement) {
+    if (parent == null) {
+      root = replacement;
+    } else if (parent.northEast == child) {
+      parent.northEast = replacement;
+    } else if (parent.southEast == child) {
+      parent.southEast = replacement;
+    } else if (parent.southWest == child) {
+      parent.southWest = replacement;
+    } else {
+      parent.northWest = replacement;
+    }
+  }
+  
+  /**
+   * Links a childless node below a node, without recursion. 
+   * @param from the node to start searching from, or null to start from the root
+   * @param node the node to link
+   * @return false if the node was not linked because there already is a node at its location
+   */
+  private boolean attach(AbstractNode<T> from, AbstractNode<T> node) {
+    if (from == null) {
+      if (root == null) {
+        root = node;
+        return true;
+      }
+      from = root;
+    }
+    int x = node.location.x, y = node.location.y;
+    while (true) {
+      if (from.location.x == x && from.location.y == y) {
+        return false;
+      }
+      AbstractNode<T> next = child(from, x, y);
+      if (next == null) {
+        if (x >= from.location.x && y > from.location.y) {
+          from.northEast = node;
+        } else if (x > from.location.x && y <= from.location.y) {
+          from.southEast = node;
+        } else if (x < from.location.x && y >= from.location.y) {
+          from.northWest = node;
+        } else {
+          from.southWest = node;
+        }
+        return true;
+      }
+      from = next;
+    }
+  }
+  
+  /**
+   * Inserts all the nodes at once and rebuilds the whole tree so that it is balanced, 
+   * whatever the order of the nodes. 
+   * Unlike insertAll, which gives a tree whose shape depends on the insertion order and 
+   * can degrade to a linear chain for sorted input, the result is at most log2(n) + 1 levels 
+   * deep. The tree is built in O(n log n), in parallel for large inputs. 
+   * As with insert, a node at the location of a node already in the tree is not inserted. 
+   * The children of all nodes are relinked, so the nodes must not belong to another tree. 
+   * @param nodes an Iterable<Node> object. 
+   */
+  public void bulkLoad(Iterable<AbstractNode<T>> nodes) {
+    List<AbstractNode<T>> all = new ArrayList<AbstractNode<T>>();
+    for (AbstractNode<T> n: nodes) {
+      all.add(n);
+    }
+    @SuppressWarnings("unchecked")
+    AbstractNode<T>[] array = all.toArray(new AbstractNode[all.size()]);
+    bulkLoad(array);
+  }
+  
+  /**
+   * Inserts all the nodes at once and rebuilds the whole tree so that it is balanced. 
+   * @see #bulkLoad(Iterable)
+   * @param nodes an array of Node objects
+   */
+  public void bulkLoad(AbstractNode<T>[] nodes) {
+    for (AbstractNode<T> n: nodes) {
+      if (!bounds.contains(n.getLocation())) {
+        throw new QuadTreeException("Cannot insert node " + n + " because it is outside QuadTree bounds.");
+      }
+    }
+    List<AbstractNode<T>> existing = new ArrayList<AbstractNode<T>>(size + nodes.length);
+    // Nodes already in the tree come first, so they win over new nodes at the same location. 
+    collect(root, existing);
+    int count = existing.size();
+    @SuppressWarnings("unchecked")
+    AbstractNode<T>[] all = existing.toArray(new AbstractNode[count + nodes.length]);
+    System.arraycopy(nodes, 0, all, count, nodes.length);
+    count = BalancedBuilder.sortAndDeduplicate(all, count + nodes.length);
+    root = BalancedBuilder.build(all, count);
+    size = count;
+    recomputeAll();
+  }
+  
+  /**
+   * Recomputes the count and aggregate of a node from its own value and those of its children. 
+   */
+  void recompute(AbstractNode<T> node) {
+    node.count = 1;
+    node.aggregate = aggregator == null ? null : aggregateOf(aggregator, node);
+    include(node, node.northEast);
+    include(node, node.southEast);
+    include(node, node.southWest);
+    include(node, node.northWest);
+  }
+  
+  private void include(AbstractNode<T> node, AbstractNode<T> child) {
+    if (child != null) {
+      node.count += child.count;
+      node.aggregate = merge(node.aggregate, child.aggregate);
+    }
+  }
+  
+  /**
+   * Recomputes the counts and aggregates of a node and all its ancestors, after its subtree changed. 
+   * @param node a node in the tree, or null for none
+   */
+  private void updatePath(AbstractNode<T> node) {
+    if (node == null) {
+      return;
+    }
+    List<AbstractNode<T>> path = new ArrayList<AbstractNode<T>>();
+    int x = node.location.x, y = node.location.y;
+    AbstractNode<T> n = root;
+    while (n != node) {
+      path.add(n);
+      n = child(n, x, y);
+    }
+    recompute(node);
+    for (int i = path.size() - 1; i >= 0; i--) {
+      recompute(path.get(i));
+    }
+  }
+  
+  /**
+   * Recomputes the counts and aggregates of all nodes, children before parents. 
+   */
+  private void recomputeAll() {
+    List<AbstractNode<T>> all = new ArrayList<AbstractNode<T>>();
+    collect(root, all);
+    for (int i = all.size() - 1; i >= 0; i--) {
+      recompute(all.get(i));
+    }
+  }
+  
+  private Object merge(Object a, Object b) {
+    return merge(aggregator, a, b);
+  }
+  
+  /**
+   * Combines two aggregates, either of which may be null for no nodes. 
+   */
+  private static Object merge(Aggregator<Object, Object> aggregator, Object a, Object b) {
+    if (a == null) {
+      return b;
+    }
+    return b == null ? a : aggregator.combine(a, b);
+  }
+  
+  /**
+   * Get the aggregate of the values of a single node, including those in its bucket. 
+   */
+  private static Object aggregateOf(Aggregator<Object, Object> aggregator, AbstractNode<?> node) {
+    Object aggregate = aggregator.of(valueOf(node));
+    if (node instanceof PointNode<?> && ((PointNode<?>) node).bucket != null) {
+      for (Object value : ((PointNode<?>) node).bucket) {
+        aggregate = merge(aggregator, aggregate, aggregator.of(value));
+      }
+    }
+    return aggregate;
+  }
+  
+  private static Object valueOf(AbstractNode<?> node) {
+    return node instanceof PointNode<?> ? ((PointNode<?>) node).getValue() : null;
+  }
+  
+  /**
+   * Adds all nodes of a subtree to a list, parents before children. 
+   * Does not recurse, as unbalanced trees can be too deep to walk recursively. 
+   * @param root the root of the subtree
+   * @param into the list to add the nodes to
+   */
+  void collect(AbstractNode<T> root, List<AbstractNode<T>> into) {
+    if (root == null) {
+      return;
+    }
+    int first = into.size();
+    into.add(root);
+    for (int i = first; i < into.size(); i++) {
+      AbstractNode<T> n = into.get(i);
+      if (n.northEast != null) {
+        into.add(n.northEast);
+      }
+      if (n.southEast != null) {
+        into.add(n.southEast);
+      }
+      if (n.southWest != null) {
+        into.add(n.southWest);
+      }
+      if (n.northWest != null) {
+        into.add(n.northWest);
+      }
+    }
+  }
+  
+  /**
+   * Get the number of levels of the QuadTree, i.e. the number of nodes on the longest 
+   * path from the root to a leaf. 
+   * @return the height of the tree, 0 if it is empty
+   */
+  public int getHeight() {
+    if (root == null) {
+      return 0;
+    }
+    List<AbstractNode<T>> level = new ArrayList<AbstractNode<T>>();
+    List<AbstractNode<T>> next = new ArrayList<AbstractNode<T>>();
+    level.add(root);
+    int height = 0;
+    while (!level.isEmpty()) {
+      height++;
+      for (AbstractNode<T> n: level) {
+        if (n.northEast != null) {
+          next.add(n.northEast);
+        }
+        if (n.southEast != null) {
+          next.add(n.southEast);
+        }
+        if (n.southWest != null) {
+          next.add(n.southWest);
+        }
+        if (n.northWest != null) {
+          next.add(n.northWest);
+        }
+      }
+      List<AbstractNode<T>> done = level;
+      level = next;
+      next = done;
+      next.clear();
+    }
+    return height;
+  }
+  
+  /**
+   * Describes the shape of the tree: how many nodes lie at every depth and how they are 
+   * spread over the quadrants, and how often inserts have rebuilt subtrees to rebalance it. 
+   * Visits every node, level by level. 
+   * @return the report
+   */
+  public StructureReport getStructure() {
+    List<Integer> depths = new ArrayList<Integer>();
+    int[] quadrantSizes = new int[4];
+    long[] quadrantLinks = new long[4];
+    int leaves = 0;
+    if (root != null) {
+      depths.add(1);
+      // Each quadrant of the root is walked on its own, so the subtree counts are not needed. 
+      AbstractNode<T>[] quadrants = quadrantsOf(root);
+      for (int q = 0; q < 4; q++) {
+        List<AbstractNode<T>> level = new ArrayList<AbstractNode<T>>();
+        List<AbstractNode<T>> next = new ArrayList<AbstractNode<T>>();
+        if (quadrants[q] != null) {
+          level.add(quadrants[q]);
+          quadrantLinks[q]++;
+        }
+        for (int depth = 1; !level.isEmpty(); depth++) {
+          if (depth == depths.size()) {
+            depths.add(0);
+          }
+          depths.set(depth, depths.get(depth) + level.size());
+          quadrantSizes[q] += level.size();
+          for (AbstractNode<T> n : level) {
+            AbstractNode<T>[] children = quadrantsOf(n);
+            boolean leaf = true;
+            for (int c = 0; c < 4; c++) {
+              if (children[c] != null) {
+                next.add(children[c]);
+                quadrantLinks[c]++;
+                leaf = false;
+              }
+            }
+            if (leaf) {
+              leaves++;
+            }
+          }
+          List<AbstractNode<T>> done = level;
+          level = next;
+          next = done;
+          next.clear();
+        }
+      }
+      if (depths.size() == 1) {
+        leaves++;
+      }
+    }
+    int[] histogram = new int[depths.size()];
+    int nodes = 0;
+    for (int i = 0; i < histogram.length; i++) {
+      histogram[i] = depths.get(i);
+      nodes += histogram[i];
+    }
+    return new StructureReport(nodes, histogram, quadrantSizes, quadrantLinks, leaves, rebuilds, rebuiltNodes);
+  }
+  
+  /**
+   * The children of a node, indexed by NORTH_EAST, SOUTH_EAST, SOUTH_WEST and NORTH_WEST. 
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> AbstractNode<T>[] quadrantsOf(AbstractNode<T> node) {
+    return new AbstractNode[] {node.northEast, node.southEast, node.southWest, node.northWest};
+  }
+  
+  /**
+   * Returns a new list on every call, so a result is never changed by later queries. 
+   */
   @Override
   public List<AbstractNode<T>> queryRange(Shape range) {
-    queryResult.clear();
-    visited = 0;
-    queryRange(root, range);
-    return queryResult;
+    QueryResult<T> result = query(range);
+    visited = result.getVisited();
+    return result.getNodes();
   }
   
   /**
-   * Recursive helper function to find all points contained within a range. 
-   * @param root the node in the current recursive call (initially root).
+   * Find all points in the QuadTree contained within a range. 
+   * All the state of the search is kept in the returned object, so any number 
+   * of threads can query a tree that is not being modified at the same time. 
    * @param range the range (Shape) that encompasses the locations of desired nodes. 
+   * @return the nodes found and the number of nodes visited to find them
    */
-  private void queryRange(AbstractNode<T> root, Shape range) {
+  public QueryResult<T> query(Shape range) {
+    QueryListener listener = tracing.getListener();
+    if (listener == null) {
+      return search(range, false);
+    }
+    long start = System.nanoTime();
+    QueryResult<T> result = search(range, true);
+    QueryTracing.report(listener, QueryStats.Type.RANGE, result, result.size(), start);
+    return result;
+  }
+  
+  /**
+   * Find all points in the QuadTree contained within a range, lazily. 
+   * The tree is only searched as far as the stream is consumed, so short-circuiting operations 
+   * such as limit() and findFirst() stop the search early. A parallel stream splits the search 
+   * along quadrant boundaries. Nodes come in the same order as query(Shape). 
+   * The tree must not be modified while the stream is in use. 
+   * @param range the range (Shape) that encompasses the locations of desired nodes. 
+   * @return a stream of the nodes in the range
+   */
+  public Stream<AbstractNode<T>> queryStream(Shape range) {
+    return StreamSupport.stream(new RangeSpliterator<T>(root, range, getSize()), false);
+  }
+  
+  /**
+   * Find all points in the QuadTree contained within a range, lazily: each call to next() 
+   * searches the tree only up to the next node in the range. 
+   * The tree must not be modified while the iterator is in use. 
+   * @param range the range (Shape) that encompasses the locations of desired nodes. 
+   * @return an iterator over the nodes in the range, in the same order as query(Shape)
+   */
+  public Iterator<AbstractNode<T>> queryIterator(Shape range) {
+    return Spliterators.iterator(new RangeSpliterator<T>(root, range, getSize()));
+  }
+  
+  /**
+   * Find the points of the QuadTree in each of a list of rectangles, in a single traversal of the tree. 
+   * Every node is visited at most once, and only for the rectangles that can contain nodes 
+   * in its subtree, so many small queries that are close together (the tiles of a map, for 
+   * example) share the work of walking the upper levels of the tree. 
+   * @param ranges the rectangles to query
+   * @return for every rectangle, in the same order, the list that queryRange(Shape) would return for it
+   */
+  public List<List<AbstractNode<T>>> queryRanges(List<? extends Rectangle> ranges) {
+    QueryListener listener = tracing.getListener();
+    long start = listener == null ? 0 : System.nanoTime();
+    BatchRangeQuery<T> batch = new BatchRangeQuery<T>(ranges);
+    List<List<AbstractNode<T>>> results = batch.search(root);
+    visited = batch.visited;
+    if (listener != null) {
+      listener.queryCompleted(new QueryStats(QueryStats.Type.BATCH, batch.visited, batch.pruned, batch.maxDepth, 
+          batch.found, System.nanoTime() - start));
+    }
+    return results;
+  }
+  
+  /**
+   * Like query(Shape), but searches the tree on the threads of the common ForkJoinPool. 
+   * Worth it for ranges that hold many nodes of a large tree; a tree of fewer than a few 
+   * thousand nodes, or a pool of a single thread, is always searched by the current thread. 
+   * @param range the range (Shape) that encompasses the locations of desired nodes. 
+   * @return the nodes found, in the same order as query(Shape), and the number of nodes visited
+   */
+  public QueryResult<T> parallelQuery(Shape range) {
+    return parallelQuery(range, ForkJoinPool.commonPool());
+  }
+  
+  /**
+   * Like query(Shape), but searches the tree on the threads of a ForkJoinPool. 
+   * @param range the range (Shape) that encompasses the locations of desired nodes. 
+   * @param pool the pool that runs the search
+   * @return the nodes found, in the same order as query(Shape), and the number of nodes visited
+   */
+  public QueryResult<T> parallelQuery(Shape range, ForkJoinPool pool) {
+    QueryListener listener = tracing.getListener();
+    long start = listener == null ? 0 : System.nanoTime();
+    QueryResult<T> result = parallelSearch(range, pool, listener != null);
+    if (listener != null) {
+      QueryTracing.report(listener, QueryStats.Type.RANGE, result, result.size(), start);
+    }
+    return result;
+  }
+  
+  /**
+   * Runs a parallel range query without reporting it. 
+   */
+  QueryResult<T> parallelSearch(Shape range, ForkJoinPool pool, boolean traced) {
+    if (getSize() < ParallelRangeQuery.PARALLEL_THRESHOLD || pool.getParallelism() < 2) {
+      return search(range, traced);
+    }
+    Rectangle bounds = range.getBounds();
+    ParallelRangeQuery<T> task = new ParallelRangeQuery<T>(this, root, range, 
+        bounds.x, bounds.y, bounds.x + bounds.width, bounds.y + bounds.height, 1, traced);
+    pool.invoke(task);
+    QueryResult<T> result = new QueryResult<T>(task.count());
+    task.collect(result);
+    return result;
+  }
+  
+  /**
+   * Runs a range query without reporting it. 
+   * @param traced whether to count pruned subtrees and depth for a QueryListener; an untraced 
+   * search only counts the visited nodes and costs nothing extra
+   */
+  QueryResult<T> search(Shape range, boolean traced) {
+    if (traced || range.getClass() == Polygon.class) {
+      return search(range, new QueryResult<T>());
+    }
+    QueryResult<T> result = new QueryResult<T>();
+    Rectangle bounds = range.getBounds();
+    queryRange(root, range, range.getClass() == Rectangle.class, 
+        bounds.x, bounds.y, bounds.x + bounds.width, bounds.y + bounds.height, result);
+    return result;
+  }
+  
+  /**
+   * Runs a traced range query into result without reporting it. 
+   * The search stops early once result is no longer consistent. 
+   */
+  QueryResult<T> search(Shape range, QueryResult<T> result) {
+    Rectangle bounds = range.getBounds();
+    if (range.getClass() == Polygon.class) {
+      queryPolygon(root, (Polygon) range, this.bounds.x, this.bounds.y, this.bounds.x + this.bounds.width - 1, 
+          this.bounds.y + this.bounds.height - 1, bounds.x, bounds.y, bounds.x + bounds.width, bounds.y + bounds.height, result, 1);
+    } else {
+      queryRange(root, bounds.x, bounds.y, bounds.x + bounds.width, bounds.y + bounds.height, collector(range, result), result, 1);
+    }
+    return result;
+  }
+  
+  /**
+   * Recursive helper function of the untraced searches for a Shape. Prunes like the traced 
+   * recursion below, but only counts the visited nodes and adds the nodes found to result 
+   * itself, without a visitor. 
+   * @param rectangle whether range is a Rectangle, which is then tested with the same int 
+   * comparisons as the pruning instead of a call to Rectangle.contains
+   * @param maxX the right edge of the bounds of range, exclusive
+   * @param maxY the bottom edge of the bounds of range, exclusive
+   */
+  void queryRange(AbstractNode<T> root, Shape range, boolean rectangle, int minX, int minY, int maxX, int maxY, 
+      QueryResult<T> result) {
     if (root == null) {
       return;
     }
-    visited++;
-    if (range.contains(root.getLocation())) {
-      queryResult.add(root);
-    } 
-    if (root.isNorthEastOf(range)) {
-      queryRange(root.southWest, range);
+    result.visited++;
+    int x = root.location.x;
+    int y = root.location.y;
+    if (rectangle ? x >= minX && x < maxX && y >= minY && y < maxY : range.contains(x, y)) {
+      result.add(root);
+    }
+    if (searchSouthWest(x, y, minX, minY)) {
+      queryRange(root.southWest, range, rectangle, minX, minY, maxX, maxY, result);
     }
-    if (root.isNorthWestOf(range)) {
-      queryRange(root.southEast, range);
-    } 
-    if (root.isSouthEastOf(range)) {
-      queryRange(root.northWest, range);
+    if (searchSouthEast(x, y, maxX, minY)) {
+      queryRange(root.southEast, range, rectangle, minX, minY, maxX, maxY, result);
     }
-    if (root.isSouthWestOf(range)) {
-      queryRange(root.northEast, range);
+    if (searchNorthWest(x, y, minX, maxY)) {
+      queryRange(root.northWest, range, rectangle, minX, minY, maxX, maxY, result);
     }
-      
+    if (searchNorthEast(x, y, maxX, maxY)) {
+      queryRange(root.northEast, range, rectangle, minX, minY, maxX, maxY, result);
+    }
+  }
+  
+  /**
+   * A visitor that adds the nodes it is passed to result if they lie within range. 
+   * The range searches pass it every node within the bounds of range, right and bottom edge 
+   * included, so for a Rectangle only those edges are left to test, with int comparisons 
+   * instead of a call to Rectangle.contains. 
+   */
+  static <T> NodeVisitor<T> collector(final Shape range, final QueryResult<T> result) {
+    if (range.getClass() == Rectangle.class) {
+      Rectangle rectangle = (Rectangle) range;
+      final int maxX = rectangle.x + rectangle.width;
+      final int maxY = rectangle.y + rectangle.height;
+      return new NodeVisitor<T>() {
+        @Override
+        public boolean visit(AbstractNode<T> node) {
+          if (node.location.x < maxX && node.location.y < maxY) {
+            result.add(node);
+          }
+          return true;
+        }
+      };
+    }
+    return new NodeVisitor<T>() {
+      @Override
+      public boolean visit(AbstractNode<T> node) {
+        if (range.contains(node.location.x, node.location.y)) {
+          result.add(node);
+        }
+        return true;
+      }
+    };
+  }
+  
+  /**
+   * Whether the southwest quadrant of a node at (x, y) can hold a location within a range 
+   * with the given left and top edges. This and the three methods below are the pruning of 
+   * every range search of a point QuadTree, and follow the conventions of child(). 
+   */
+  static boolean searchSouthWest(int x, int y, int minX, int minY) {
+    return x >= minX && y > minY;
   }
   
+  static boolean searchSouthEast(int x, int y, int maxX, int minY) {
+    return x < maxX && y >= minY;
+  }
+  
+  static boolean searchNorthWest(int x, int y, int minX, int maxY) {
+    return x > minX && y <= maxY;
+  }
+  
+  static boolean searchNorthEast(int x, int y, int maxX, int maxY) {
+    return x <= maxX && y < maxY;
+  }
+  
+  /**
+   * Searches a polygon, classifying the region of every subtree of at least CLASSIFY_THRESHOLD 
+   * nodes against it first: a subtree whose region lies inside the polygon is added without 
+   * testing its nodes, and one whose region misses the polygon is skipped. Other nodes are 
+   * tested and pruned like in the other range searches. The regions are grown 
+   * by half a unit, so every node of a region inside the polygon is strictly inside it. 
+   * Always counts pruned subtrees and depth, as classification changes what is visited. 
+   * @param rMinX the region of the subtree of root, inclusive
+   * @param minX the bounds of the polygon, max exclusive
+   */
+  private void queryPolygon(AbstractNode<T> root, Polygon polygon, int rMinX, int rMinY, int rMaxX, int rMaxY, 
+      int minX, int minY, int maxX, int maxY, QueryResult<T> result, int depth) {
+    if (root == null) {
+      return;
+    }
+    Point location = root.location;
+    AbstractNode<T> southWest = root.southWest, southEast = root.southEast;
+    AbstractNode<T> northWest = root.northWest, northEast = root.northEast;
+    if (!result.isConsistent()) {
+      return;
+    }
+    result.maxDepth = Math.max(result.maxDepth, depth);
+    if (root.count >= CLASSIFY_THRESHOLD) {
+      double x0 = rMinX - 0.5, y0 = rMinY - 0.5, w = rMaxX - rMinX + 1.0, h = rMaxY - rMinY + 1.0;
+      if (polygon.contains(x0, y0, w, h)) {
+        result.visited++;
+        addSubtree(root, result);
+        return;
+      }
+      if (!polygon.intersects(x0, y0, w, h)) {
+        result.pruned++;
+        return;
+      }
+    }
+    result.visited++;
+    int x = location.x;
+    int y = location.y;
+    if (polygon.contains(x, y)) {
+      result.add(root);
+    }
+    if (searchSouthWest(x, y, minX, minY)) {
+      queryPolygon(southWest, polygon, rMinX, rMinY, x, y - 1, minX, minY, maxX, maxY, result, depth + 1);
+    } else if (southWest != null) {
+      result.pruned++;
+    }
+    if (searchSouthEast(x, y, maxX, minY)) {
+      queryPolygon(southEast, polygon, x + 1, rMinY, rMaxX, y, minX, minY, maxX, maxY, result, depth + 1);
+    } else if (southEast != null) {
+      result.pruned++;
+    }
+    if (searchNorthWest(x, y, minX, maxY)) {
+      queryPolygon(northWest, polygon, rMinX, y, x - 1, rMaxY, minX, minY, maxX, maxY, result, depth + 1);
+    } else if (northWest != null) {
+      result.pruned++;
+    }
+    if (searchNorthEast(x, y, maxX, maxY)) {
+      queryPolygon(northEast, polygon, x, y + 1, rMaxX, rMaxY, minX, minY, maxX, maxY, result, depth + 1);
+    } else if (northEast != null) {
+      result.pruned++;
+    }
+  }
+  
+  /**
+   * Subtrees with fewer nodes than this are not classified against a polygon or circle, 
+   * as testing their nodes costs little more than classifying their region. 
+   */
+  static final int CLASSIFY_THRESHOLD = 16;
+  
+  /**
+   * Adds all nodes of a subtree to a result, in the order the range searches find them. 
+   */
+  private void addSubtree(AbstractNode<T> root, QueryResult<T> result) {
+    if (root == null) {
+      return;
+    }
+    AbstractNode<T> southWest = root.southWest, southEast = root.southEast;
+    AbstractNode<T> northWest = root.northWest, northEast = root.northEast;
+    if (!result.isConsistent()) {
+      return;
+    }
+    result.add(root);
+    addSubtree(southWest, result);
+    addSubtree(southEast, result);
+    addSubtree(northWest, result);
+    addSubtree(northEast, result);
+  }
+  
+  /**
+   * Find all nodes within a distance of a location, in the same order as query(Shape). 
+   * Unlike withinDistance the nodes are not sorted, and unlike a query with an Ellipse2D 
+   * the test is an exact integer comparison of squared distances. A subtree whose whole 
+   * region lies within the circle is added without testing its nodes, and one whose region 
+   * lies outside of it is skipped. 
+   * @param x the x-coordinate of the center
+   * @param y the y-coordinate of the center
+   * @param radius the largest (Euclidean) distance of a node to the center
+   * @return the nodes within the circle
+   */
+  public List<AbstractNode<T>> queryCircle(int x, int y, double radius) {
+    QueryListener listener = tracing.getListener();
+    long start = listener == null ? 0 : System.nanoTime();
+    QueryResult<T> result = new QueryResult<T>();
+    if (radius >= 0) {
+      long radiusSq = (long) Math.floor(Math.min(radius * radius, (double) Long.MAX_VALUE));
+      queryCircle(root, x, y, radiusSq, bounds.x, bounds.y, bounds.x + bounds.width - 1, bounds.y + bounds.height - 1, result, 1);
+    }
+    visited = result.getVisited();
+    if (listener != null) {
+      QueryTracing.report(listener, QueryStats.Type.RANGE, result, result.size(), start);
+    }
+    return result.getNodes();
+  }
+  
+  /**
+   * Recursive helper function for queryCircle. 
+   * @param rMinX the region of the subtree of root, inclusive
+   */
+  private void queryCircle(AbstractNode<T> root, int cx, int cy, long radiusSq, int rMinX, int rMinY, int rMaxX, int rMaxY, 
+      QueryResult<T> result, int depth) {
+    if (root == null) {
+      return;
+    }
+    long dx = Math.max(Math.max((long) rMinX - cx, (long) cx - rMaxX), 0);
+    long dy = Math.max(Math.max((long) rMinY - cy, (long) cy - rMaxY), 0);
+    if (dx * dx + dy * dy > radiusSq) {
+      result.pruned++;
+      return;
+    }
+    result.maxDepth = Math.max(result.maxDepth, depth);
+    result.visited++;
+    if (root.count >= CLASSIFY_THRESHOLD) {
+      dx = Math.max((long) cx - rMinX, (long) rMaxX - cx);
+      dy = Math.max((long) cy - rMinY, (long) rMaxY - cy);
+      if (dx * dx + dy * dy <= radiusSq) {
+        addSubtree(root, result);
+        return;
+      }
+    }
+    int x = root.location.x;
+    int y = root.location.y;
+    dx = (long) x - cx;
+    dy = (long) y - cy;
+    if (dx * dx + dy * dy <= radiusSq) {
+      result.add(root);
+    }
+    // The regions of the children, following the conventions of the AbstractNode.isXOf methods. 
+    queryCircle(root.southWest, cx, cy, radiusSq, rMinX, rMinY, x, y - 1, result, depth + 1);
+    queryCircle(root.southEast, cx, cy, radiusSq, x + 1, rMinY, rMaxX, y, result, depth + 1);
+    queryCircle(root.northWest, cx, cy, radiusSq, rMinX, y, x - 1, rMaxY, result, depth + 1);
+    queryCircle(root.northEast, cx, cy, radiusSq, x, y + 1, rMaxX, rMaxY, result, depth + 1);
+  }
+  
+  @Override
+  public boolean queryRange(int minX, int minY, int maxX, int maxY, final NodeVisitor<T> visitor) {
+    QueryListener listener = tracing.getListener();
+    QueryResult<T> result = new QueryResult<T>();
+    if (listener == null) {
+      boolean completed = queryRange(root, minX, minY, maxX, maxY, visitor, result, 1);
+      visited = result.getVisited();
+      return completed;
+    }
+    long start = System.nanoTime();
+    final int[] found = new int[1];
+    boolean completed = queryRange(root, minX, minY, maxX, maxY, new NodeVisitor<T>() {
+      @Override
+      public boolean visit(AbstractNode<T> node) {
+        found[0]++;
+        return visitor.visit(node);
+      }
+    }, result, 1);
+    visited = result.getVisited();
+    QueryTracing.report(listener, QueryStats.Type.VISITOR, result, found[0], start);
+    return completed;
+  }
+  
+  /**
+   * Recursive helper function of the visitor queries and the traced and optimistic searches 
+   * for a Shape: passes every node within inclusive bounds to a visitor, and counts the nodes 
+   * visited, the subtrees pruned and the depth reached. The searches for a Shape pass the 
+   * bounds of the Shape, whose right and bottom edges are exclusive, and a {@link #collector} 
+   * that tests the nodes against it. 
+   * @param root the node in the current recursive call (initially root).
+   * @param result only counts, the visitor gets the nodes found
+   * @param depth the depth of root, 1 for the root of the tree
+   * @return false if the visitor stopped the query, or result is no longer consistent
+   */
+  boolean queryRange(AbstractNode<T> root, int minX, int minY, int maxX, int maxY, NodeVisitor<T> visitor, 
+      QueryResult<T> result, int depth) {
+    if (root == null) {
+      return true;
+    }
+    Point location = root.location;
+    AbstractNode<T> southWest = root.southWest, southEast = root.southEast;
+    AbstractNode<T> northWest = root.northWest, northEast = root.northEast;
+    if (!result.isConsistent()) {
+      return false;
+    }
+    result.visited++;
+    result.maxDepth = Math.max(result.maxDepth, depth);
+    int x = location.x;
+    int y = location.y;
+    if (x >= minX && x <= maxX && y >= minY && y <= maxY && !visitor.visit(root)) {
+      return false;
+    }
+    if (searchSouthWest(x, y, minX, minY)) {
+      if (!queryRange(southWest, minX, minY, maxX, maxY, visitor, result, depth + 1)) {
+        return false;
+      }
+    } else if (southWest != null) {
+      result.pruned++;
+    }
+    if (searchSouthEast(x, y, maxX, minY)) {
+      if (!queryRange(southEast, minX, minY, maxX, maxY, visitor, result, depth + 1)) {
+        return false;
+      }
+    } else if (southEast != null) {
+      result.pruned++;
+    }
+    if (searchNorthWest(x, y, minX, maxY)) {
+      if (!queryRange(northWest, minX, minY, maxX, maxY, visitor, result, depth + 1)) {
+        return false;
+      }
+    } else if (northWest != null) {
+      result.pruned++;
+    }
+    if (searchNorthEast(x, y, maxX, maxY)) {
+      if (!queryRange(northEast, minX, minY, maxX, maxY, visitor, result, depth + 1)) {
+        return false;
+      }
+    } else if (northEast != null) {
+      result.pruned++;
+    }
+    return true;
+  }
+  
+  /**
+   * Count the nodes whose location lies within the given bounds. 
+   * Every node knows the size of its subtree, so a subtree whose whole region lies within 
+   * the bounds is counted without visiting any of its nodes, and only the nodes along the 
+   * edges of the range are looked at. All bounds are inclusive. 
+   * @param minX the smallest x-coordinate of the range
+   * @param minY the smallest y-coordinate of the range
+   * @param maxX the largest x-coordinate of the range
+   * @param maxY the largest y-coordinate of the range
+   * @return the number of nodes in the range
+   */
+  public int countRange(int minX, int minY, int maxX, int maxY) {
+    QueryResult<T> result = new QueryResult<T>();
+    int count = countRange(root, bounds.x, bounds.y, bounds.x + bounds.width - 1, bounds.y + bounds.height - 1, 
+        minX, minY, maxX, maxY, result);
+    visited = result.getVisited();
+    return count;
+  }
+  
+  /**
+   * Count the nodes contained in a rectangle. 
+   * Counts the same nodes as queryRange(range) finds. 
+   * @param range the rectangle that encompasses the locations of the nodes to count
+   * @return the number of nodes in the range
+   */
+  public int countRange(Rectangle range) {
+    return countRange(range.x, range.y, range.x + range.width - 1, range.y + range.height - 1);
+  }
+  
+  /**
+   * Recursive helper function for countRange. 
+   * @param root the node in the current recursive call (initially root)
+   * @param rMinX the region of the subtree of root, inclusive, following the conventions of the AbstractNode.isXOf methods
+   */
+  private int countRange(AbstractNode<T> root, int rMinX, int rMinY, int rMaxX, int rMaxY, 
+      int minX, int minY, int maxX, int maxY, QueryResult<T> result) {
+    if (root == null || rMinX > maxX || rMaxX < minX || rMinY > maxY || rMaxY < minY) {
+      return 0;
+    }
+    if (rMinX >= minX && rMaxX <= maxX && rMinY >= minY && rMaxY <= maxY) {
+      return root.count;
+    }
+    result.visited++;
+    int x = root.location.x;
+    int y = root.location.y;
+    int count = x >= minX && x <= maxX && y >= minY && y <= maxY ? 1 : 0;
+    count += countRange(root.northEast, x, y + 1, rMaxX, rMaxY, minX, minY, maxX, maxY, result);
+    count += countRange(root.southEast, x + 1, rMinY, rMaxX, y, minX, minY, maxX, maxY, result);
+    count += countRange(root.southWest, rMinX, rMinY, x, y - 1, minX, minY, maxX, maxY, result);
+    count += countRange(root.northWest, rMinX, y, x - 1, rMaxY, minX, minY, maxX, maxY, result);
+    return count;
+  }
+  
+  /**
+   * Sets the aggregator whose aggregate every subtree of this tree keeps up to date, 
+   * so aggregateRange with the same aggregator can use whole subtrees at once. 
+   * Recomputes the aggregates of all nodes, and every insert, remove and move then 
+   * updates those of the ancestors of the nodes it changes. 
+   * @param aggregator the aggregator, for example {@link Aggregator#SUM}, or null to keep no aggregates
+   */
+  @SuppressWarnings("unchecked")
+  public void setAggregator(Aggregator<? super T, ?> aggregator) {
+    this.aggregator = (Aggregator<Object, Object>) aggregator;
+    recomputeAll();
+  }
+  
+  public Aggregator<?, ?> getAggregator() {
+    return aggregator;
+  }
+  
+  /**
+   * Aggregate the values of the nodes whose location lies within the given bounds. 
+   * If aggregator is the one set with setAggregator, a subtree whose whole region lies 
+   * within the bounds contributes its stored aggregate without being visited, as in 
+   * countRange; any other aggregator is applied to every node in the range. 
+   * All bounds are inclusive. 
+   * @param minX the smallest x-coordinate of the range
+   * @param minY the smallest y-coordinate of the range
+   * @param maxX the largest x-coordinate of the range
+   * @param maxY the largest y-coordinate of the range
+   * @param aggregator the aggregator of the node values
+   * @return the aggregate, or null if no node in the range contributes to it
+   */
+  @SuppressWarnings("unchecked")
+  public <A> A aggregateRange(int minX, int minY, int maxX, int maxY, Aggregator<? super T, A> aggregator) {
+    QueryResult<T> result = new QueryResult<T>();
+    Object aggregate = aggregateRange(root, bounds.x, bounds.y, bounds.x + bounds.width - 1, bounds.y + bounds.height - 1, 
+        minX, minY, maxX, maxY, (Aggregator<Object, Object>) aggregator, aggregator == this.aggregator, result);
+    visited = result.getVisited();
+    return (A) aggregate;
+  }
+  
+  /**
+   * Aggregate the values of the nodes contained in a rectangle. 
+   * @see #aggregateRange(int, int, int, int, Aggregator)
+   * @param range the rectangle that encompasses the locations of the nodes to aggregate
+   * @param aggregator the aggregator of the node values
+   * @return the aggregate, or null if no node in the range contributes to it
+   */
+  public <A> A aggregateRange(Rectangle range, Aggregator<? super T, A> aggregator) {
+    return aggregateRange(range.x, range.y, range.x + range.width - 1, range.y + range.height - 1, aggregator);
+  }
+  
+  /**
+   * Recursive helper function for aggregateRange, like the one for countRange. 
+   * @param stored whether the aggregates stored in the nodes are those of aggregator
+   */
+  private Object aggregateRange(AbstractNode<T> root, int rMinX, int rMinY, int rMaxX, int rMaxY, 
+      int minX, int minY, int maxX, int maxY, Aggregator<Object, Object> aggregator, boolean stored, QueryResult<T> result) {
+    if (root == null || rMinX > maxX || rMaxX < minX || rMinY > maxY || rMaxY < minY) {
+      return null;
+    }
+    if (stored && rMinX >= minX && rMaxX <= maxX && rMinY >= minY && rMaxY <= maxY) {
+      return root.aggregate;
+    }
+    result.visited++;
+    int x = root.location.x;
+    int y = root.location.y;
+    Object aggregate = null;
+    if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+      aggregate = aggregateOf(aggregator, root);
+    }
+    aggregate = merge(aggregator, aggregate, aggregateRange(root.northEast, x, y + 1, rMaxX, rMaxY, 
+        minX, minY, maxX, maxY, aggregator, stored, result));
+    aggregate = merge(aggregator, aggregate, aggregateRange(root.southEast, x + 1, rMinY, rMaxX, y, 
+        minX, minY, maxX, maxY, aggregator, stored, result));
+    aggregate = merge(aggregator, aggregate, aggregateRange(root.southWest, rMinX, rMinY, x, y - 1, 
+        minX, minY, maxX, maxY, aggregator, stored, result));
+    aggregate = merge(aggregator, aggregate, aggregateRange(root.northWest, rMinX, y, x - 1, rMaxY, 
+        minX, minY, maxX, maxY, aggregator, stored, result));
+    return aggregate;
+  }
+  
+  /**
+   * Find the k nodes closest to a location. 
+   * The tree is searched best-first: quadrants are visited in order of their distance to 
+   * the location, and the search stops as soon as the closest unvisited quadrant is 
+   * further away than the k-th closest node found so far. 
+   * @param x the x-coordinate of the location
+   * @param y the y-coordinate of the location
+   * @param k the number of nodes to find
+   * @return at most k nodes, sorted by increasing (Euclidean) distance to the location
+   */
+  public List<AbstractNode<T>> nearest(int x, int y, int k) {
+    return nearest(x, y, k, Long.MAX_VALUE);
+  }
+  
+  /**
+   * Find all nodes within a distance of a location. 
+   * Quadrants further away than the distance are not searched. 
+   * @param x the x-coordinate of the location
+   * @param y the y-coordinate of the location
+   * @param distance the largest (Euclidean) distance of a node to the location
+   * @return the nodes, sorted by increasing distance to the location
+   */
+  public List<AbstractNode<T>> withinDistance(int x, int y, double distance) {
+    if (distance < 0) {
+      return new ArrayList<AbstractNode<T>>();
+    }
+    long maxDistanceSq = (long) Math.floor(Math.min(distance * distance, (double) Long.MAX_VALUE));
+    return nearest(x, y, Integer.MAX_VALUE, maxDistanceSq);
+  }
+  
+  /**
+   * Best-first search for the k nodes closest to (x, y) with a squared distance of at most maxDistanceSq. 
+   */
+  private List<AbstractNode<T>> nearest(int x, int y, int k, long maxDistanceSq) {
+    List<AbstractNode<T>> result = new ArrayList<AbstractNode<T>>();
+    if (root == null || k <= 0) {
+      visited = 0;
+      return result;
+    }
+    int count = 0;
+    PriorityQueue<Candidate<T>> quadrants = new PriorityQueue<Candidate<T>>();
+    // The best k nodes found so far, furthest first. 
+    PriorityQueue<Candidate<T>> best = new PriorityQueue<Candidate<T>>(11, Collections.reverseOrder());
+    quadrants.add(new Candidate<T>(root, bounds.x, bounds.y, bounds.x + bounds.width - 1, bounds.y + bounds.height - 1, x, y));
+    while (!quadrants.isEmpty()) {
+      Candidate<T> quadrant = quadrants.poll();
+      long limit = best.size() < k ? maxDistanceSq : best.peek().distanceSq;
+      if (quadrant.distanceSq > limit) {
+        break;
+      }
+      count++;
+      AbstractNode<T> node = quadrant.node;
+      long dx = (long) node.location.x - x;
+      long dy = (long) node.location.y - y;
+      if (dx * dx + dy * dy <= limit) {
+        if (best.size() == k) {
+          best.poll();
+        }
+        best.add(new Candidate<T>(node, node.location.x, node.location.y, node.location.x, node.location.y, x, y));
+        limit = best.size() < k ? maxDistanceSq : best.peek().distanceSq;
+      }
+      int nx = node.location.x;
+      int ny = node.location.y;
+      // The regions of the children, following the conventions of the AbstractNode.isXOf methods. 
+      offer(quadrants, node.northEast, nx, ny + 1, quadrant.maxX, quadrant.maxY, x, y, limit);
+      offer(quadrants, node.southEast, nx + 1, quadrant.minY, quadrant.maxX, ny, x, y, limit);
+      offer(quadrants, node.southWest, quadrant.minX, quadrant.minY, nx, ny - 1, x, y, limit);
+      offer(quadrants, node.northWest, quadrant.minX, ny, nx - 1, quadrant.maxY, x, y, limit);
+    }
+    visited = count;
+    List<Candidate<T>> sorted = new ArrayList<Candidate<T>>(best);
+    Collections.sort(sorted);
+    for (Candidate<T> c : sorted) {
+      result.add(c.node);
+    }
+    return result;
+  }
+  
+  private static <T> void offer(PriorityQueue<Candidate<T>> quadrants, AbstractNode<T> child, 
+      int minX, int minY, int maxX, int maxY, int x, int y, long limit) {
+    if (child == null) {
+      return;
+    }
+    Candidate<T> candidate = new Candidate<T>(child, minX, minY, maxX, maxY, x, y);
+    if (candidate.distanceSq <= limit) {
+      quadrants.add(candidate);
+    }
+  }
+  
+  /**
+   * A node together with the region its subtree covers, ordered by the squared distance 
+   * from the query location to the closest point of that region. 
+   */
+  private static class Candidate<T> implements Comparable<Candidate<T>> {
+    
+    final AbstractNode<T> node;
+    final int minX, minY, maxX, maxY;
+    final long distanceSq;
+    
+    Candidate(AbstractNode<T> node, int minX, int minY, int maxX, int maxY, int x, int y) {
+      this.node = node;
+      this.minX = minX;
+      this.minY = minY;
+      this.maxX = maxX;
+      this.maxY = maxY;
+      long dx = Math.max(Math.max((long) minX - x, (long) x - maxX), 0);
+      long dy = Math.max(Math.max((long) minY - y, (long) y - maxY), 0);
+      this.distanceSq = dx * dx + dy * dy;
+    }
+
+    @Override
+    public int compareTo(Candidate<T> other) {
+      int c = Long.compare(distanceSq, other.distanceSq);
+      return c != 0 ? c : node.compareTo(other.node);
+    }
+    
+  }
+  
+  /**
+   * Sets the listener that receives the statistics of every range query on this tree, 
+   * or removes it when listener is null. Without a listener range queries run an untraced 
+   * search and are not timed; with one they also count pruned subtrees and depth, and call 
+   * the listener on the querying thread. 
+   * @param listener the listener, for example a {@link QueryMetrics}, or null
+   */
+  public void setQueryListener(QueryListener listener) {
+    tracing.setListener(listener);
+  }
+  
+  public QueryListener getQueryListener() {
+    return tracing.getListener();
+  }
+  
+  /**
+   * Get the number of nodes visited by the last query on this tree. 
+   * When several threads query the tree, use the QueryResult returned by query(Shape) instead, 
+   * or a QueryListener for statistics beyond the visited nodes. 
+   * @return the number of visited nodes
+   */
   public int getVisitedOnLastSearch() {
     return visited;
   }
   
+  /**
+   * Drops the whole tree at once, in O(1), leaving its nodes to the garbage collector. 
+   */
   @Override
   public void clear () {
-    root.clear();
+    detach();
+  }
+  
+  /**
+   * Empties the tree in O(1) and gives all its nodes to a pool, so that rebuilding the tree 
+   * with nodes from {@link NodePool#acquire(int, int, Object)} reuses them. 
+   * The nodes must not be referenced anywhere else. 
+   * @param pool the pool that recycles the nodes
+   */
+  public void clear(NodePool<T> pool) {
+    pool.release(detach());
+  }
+  
+  /**
+   * Empties the tree, so that clear and clear(NodePool) never call an overridable public method. 
+   * @return the old root
+   */
+  private AbstractNode<T> detach() {
+    AbstractNode<T> old = root;
+    root = null;
+    size = 0;
+    return old;
   }
   
   /**
@@ -125,32 +1569,24 @@ public class PointQuadTree<T> extends AbstractQuadTree<T> {
    * @return
    */
   public List<AbstractNode<T>> innefficientQueryRange(Shape range) {
-    queryResult.clear();
-    visited = 0;
-    innefficientQueryRange(root, range);
-    return queryResult;
+    QueryResult<T> result = new QueryResult<T>();
+    innefficientQueryRange(root, range, result);
+    visited = result.getVisited();
+    return result.getNodes();
   }
   
-  private void innefficientQueryRange(AbstractNode<T> root, Shape range) {
+  private void innefficientQueryRange(AbstractNode<T> root, Shape range, QueryResult<T> result) {
     if (root == null) {
       return;
     }
-    visited++;
+    result.visited++;
     if (range.contains(root.getLocation())) {
-      queryResult.add(root);
+      result.add(root);
     }
-    innefficientQueryRange(root.northEast, range);
-    innefficientQueryRange(root.northWest, range);
-    innefficientQueryRange(root.southEast, range);
-    innefficientQueryRange(root.southWest, range);
-  }
-  
-  /**
-   * Get the total amount of nodes in the QuadTree. 
-   * @return the number of nodes in the QuadTree. 
-   */
-  public int getSize() {
-    return size;
+    innefficientQueryRange(root.northEast, range, result);
+    innefficientQueryRange(root.northWest, range, result);
+    innefficientQueryRange(root.southEast, range, result);
+    innefficientQueryRange(root.southWest, range, result);
   }
   
   /**
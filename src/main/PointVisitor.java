@@ -0,0 +1,21 @@
+package main;
+
+/**
+ * Callback for queries that report points as primitive coordinates, 
+ * so that no node objects have to be created for them. 
+ * @author FrancescoA
+ *
+ * @param <T> the type of the point values
+ */
+public interface PointVisitor<T> {
+
+  /**
+   * Called once for every point found by a query.
+   * @param x the x-coordinate of the point
+   * @param y the y-coordinate of the point
+   * @param value the value of the point
+   * @return true to continue the query, false to stop it
+   */
+  boolean visit(int x, int y, T value);
+
+}
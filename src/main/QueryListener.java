@@ -0,0 +1,19 @@
+package main;
+
+/**
+ * Receives the statistics of every query on a tree it was registered with
+ * through {@link PointQuadTree#setQueryListener(QueryListener)}.
+ * @see QueryMetrics
+ * @author FrancescoA
+ *
+ */
+public interface QueryListener {
+
+  /**
+   * Called on the querying thread after each query, so it must be thread-safe if the tree is
+   * queried by several threads, and fast, because it adds to the latency of every query.
+   * @param stats the statistics of the query that just completed
+   */
+  void queryCompleted(QueryStats stats);
+
+}
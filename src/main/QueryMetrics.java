@@ -0,0 +1,167 @@
+package main;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A {@link QueryListener} that aggregates the statistics of all the queries of one or more trees
+ * into histograms of latency and visited nodes, and totals of pruned subtrees and results.
+ * It can be read directly or through JMX once registered with {@link #register(String)}.
+ * <pre>
+ * QueryMetrics metrics = new QueryMetrics();
+ * tree.setQueryListener(metrics);
+ * metrics.register("places");   // visible as main:type=QueryMetrics,name="places"
+ * </pre>
+ * All methods are thread-safe.
+ * @author FrancescoA
+ *
+ */
+public class QueryMetrics implements QueryListener, QueryMetricsMBean {
+
+  private final Histogram latency = new Histogram();
+  private final Histogram visited = new Histogram();
+  private final LongAdder pruned = new LongAdder();
+  private final LongAdder results = new LongAdder();
+  private final AtomicInteger maxDepth = new AtomicInteger();
+
+  @Override
+  public void queryCompleted(QueryStats stats) {
+    latency.record(stats.getElapsedNanos());
+    visited.record(stats.getVisited());
+    pruned.add(stats.getPruned());
+    results.add(stats.getResults());
+    int depth = maxDepth.get();
+    while (stats.getMaxDepth() > depth && !maxDepth.compareAndSet(depth, stats.getMaxDepth())) {
+      depth = maxDepth.get();
+    }
+  }
+
+  /**
+   * Get the histogram of query latencies, in nanoseconds.
+   * @return the live histogram
+   */
+  public Histogram getLatencyHistogram() {
+    return latency;
+  }
+
+  /**
+   * Get the histogram of the number of nodes visited per query.
+   * @return the live histogram
+   */
+  public Histogram getVisitedHistogram() {
+    return visited;
+  }
+
+  @Override
+  public long getQueries() {
+    return latency.getCount();
+  }
+
+  @Override
+  public double getMeanLatencyMicros() {
+    return latency.getMean() / 1e3;
+  }
+
+  @Override
+  public double getLatencyMicrosP50() {
+    return latency.getValueAtPercentile(50) / 1e3;
+  }
+
+  @Override
+  public double getLatencyMicrosP99() {
+    return latency.getValueAtPercentile(99) / 1e3;
+  }
+
+  @Override
+  public double getLatencyMicrosP999() {
+    return latency.getValueAtPercentile(99.9) / 1e3;
+  }
+
+  @Override
+  public double getMaxLatencyMicros() {
+    return latency.getMax() / 1e3;
+  }
+
+  @Override
+  public double getMeanVisited() {
+    return visited.getMean();
+  }
+
+  @Override
+  public long getVisitedP50() {
+    return visited.getValueAtPercentile(50);
+  }
+
+  @Override
+  public long getVisitedP99() {
+    return visited.getValueAtPercentile(99);
+  }
+
+  @Override
+  public long getMaxVisited() {
+    return visited.getMax();
+  }
+
+  @Override
+  public double getMeanPruned() {
+    long n = getQueries();
+    return n == 0 ? 0 : (double) pruned.sum() / n;
+  }
+
+  @Override
+  public double getMeanResults() {
+    long n = getQueries();
+    return n == 0 ? 0 : (double) results.sum() / n;
+  }
+
+  @Override
+  public int getMaxDepth() {
+    return maxDepth.get();
+  }
+
+  @Override
+  public void reset() {
+    latency.reset();
+    visited.reset();
+    pruned.reset();
+    results.reset();
+    maxDepth.set(0);
+  }
+
+  /**
+   * Registers these metrics with the platform MBean server.
+   * @param name the value of the name key of the MBean
+   * @return the name the MBean was registered under
+   * @throws JMException if the name is invalid or already registered
+   */
+  public ObjectName register(String name) throws JMException {
+    ObjectName objectName = objectName(name);
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    return objectName;
+  }
+
+  /**
+   * Removes these metrics from the platform MBean server.
+   * @param name the name passed to {@link #register(String)}
+   * @throws JMException if no MBean is registered under that name
+   */
+  public void unregister(String name) throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    server.unregisterMBean(objectName(name));
+  }
+
+  private static ObjectName objectName(String name) throws JMException {
+    return new ObjectName("main:type=QueryMetrics,name=" + ObjectName.quote(name));
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d queries, latency p50 %.1f us, p99 %.1f us, max %.1f us, visited p50 %d, p99 %d, max %d",
+        getQueries(), getLatencyMicrosP50(), getLatencyMicrosP99(), getMaxLatencyMicros(),
+        getVisitedP50(), getVisitedP99(), getMaxVisited());
+  }
+
+}
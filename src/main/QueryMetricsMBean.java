@@ -0,0 +1,39 @@
+package main;
+
+/**
+ * The JMX management interface of {@link QueryMetrics}.
+ * Latencies are in microseconds, percentiles are upper bounds within 12.5% of the true value.
+ * @author FrancescoA
+ *
+ */
+public interface QueryMetricsMBean {
+
+  long getQueries();
+
+  double getMeanLatencyMicros();
+
+  double getLatencyMicrosP50();
+
+  double getLatencyMicrosP99();
+
+  double getLatencyMicrosP999();
+
+  double getMaxLatencyMicros();
+
+  double getMeanVisited();
+
+  long getVisitedP50();
+
+  long getVisitedP99();
+
+  long getMaxVisited();
+
+  double getMeanPruned();
+
+  double getMeanResults();
+
+  int getMaxDepth();
+
+  void reset();
+
+}
@@ -0,0 +1,96 @@
+package main;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * The result of a single query: the nodes that were found and 
+ * statistics about the search that found them. 
+ * A new instance is created for every query, so results are never 
+ * shared between queries or threads. 
+ * @author FrancescoA
+ *
+ * @param <T> the type of the node values
+ */
+public class QueryResult<T> {
+  
+  private final List<AbstractNode<T>> nodes;
+  int visited;
+  // Not counted by the untraced searches for a Shape. 
+  int pruned;
+  int maxDepth;
+  // Set for an optimistic search, which must stop as soon as a write has run. 
+  private final StampedLock lock;
+  private final long stamp;
+  
+  /**
+   * Creates an empty result. 
+   */
+  public QueryResult() {
+    this(10, null, 0);
+  }
+  
+  /**
+   * Creates an empty result with room for capacity nodes. 
+   */
+  QueryResult(int capacity) {
+    this(capacity, null, 0);
+  }
+  
+  /**
+   * Creates an empty result for a search that holds no lock, and is only valid 
+   * as long as lock.validate(stamp) holds. 
+   */
+  QueryResult(StampedLock lock, long stamp) {
+    this(10, lock, stamp);
+  }
+  
+  private QueryResult(int capacity, StampedLock lock, long stamp) {
+    this.nodes = new ArrayList<AbstractNode<T>>(capacity);
+    this.lock = lock;
+    this.stamp = stamp;
+  }
+  
+  /**
+   * Get the nodes found by the query. 
+   * @return the nodes in the order they were found
+   */
+  public List<AbstractNode<T>> getNodes() {
+    return nodes;
+  }
+  
+  /**
+   * Get the number of nodes the query visited to find its results. 
+   * @return the number of visited nodes
+   */
+  public int getVisited() {
+    return visited;
+  }
+  
+  /**
+   * Get the number of nodes found by the query. 
+   * @return the number of results
+   */
+  public int size() {
+    return nodes.size();
+  }
+  
+  /**
+   * Whether the fields read so far by the search can be trusted: always, unless the search 
+   * is optimistic and a write has run since it started. Links and locations must be read 
+   * into locals before this is checked, and only followed after it held. 
+   */
+  boolean isConsistent() {
+    return lock == null || lock.validate(stamp);
+  }
+  
+  void add(AbstractNode<T> node) {
+    nodes.add(node);
+  }
+  
+  @Override
+  public String toString() {
+    return nodes.toString();
+  }
+
+}
@@ -0,0 +1,88 @@
+package main;
+
+/**
+ * Statistics about a single query, passed to a {@link QueryListener} when the query completes.
+ * @author FrancescoA
+ *
+ */
+public final class QueryStats {
+
+  /**
+   * The kind of query the statistics describe.
+   */
+  public enum Type {
+    /** queryRange(Shape), query(Shape) or queryCircle, which collect the nodes found. */
+    RANGE,
+    /** queryRange with a NodeVisitor, which passes the nodes found to the visitor. */
+    VISITOR,
+    /** queryRanges, which answers many queries in one traversal; the results of all the queries are counted. */
+    BATCH
+  }
+
+  private final Type type;
+  private final int visited;
+  private final int pruned;
+  private final int maxDepth;
+  private final int results;
+  private final long elapsedNanos;
+
+  public QueryStats(Type type, int visited, int pruned, int maxDepth, int results, long elapsedNanos) {
+    this.type = type;
+    this.visited = visited;
+    this.pruned = pruned;
+    this.maxDepth = maxDepth;
+    this.results = results;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * Get the number of nodes the query looked at.
+   * @return the number of visited nodes
+   */
+  public int getVisited() {
+    return visited;
+  }
+
+  /**
+   * Get the number of non-empty subtrees the query skipped because they cannot intersect the range.
+   * @return the number of pruned subtrees
+   */
+  public int getPruned() {
+    return pruned;
+  }
+
+  /**
+   * Get the depth of the deepest node the query visited, 1 for the root and 0 if nothing was visited.
+   * @return the maximum depth reached
+   */
+  public int getMaxDepth() {
+    return maxDepth;
+  }
+
+  /**
+   * Get the number of nodes the query returned, or passed to its visitor.
+   * @return the number of results
+   */
+  public int getResults() {
+    return results;
+  }
+
+  /**
+   * Get the wall-clock time of the query, including the time spent in a visitor.
+   * @return the elapsed time in nanoseconds
+   */
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  @Override
+  public String toString() {
+    return type + " query: " + results + " results, " + visited + " visited, " + pruned + " pruned, depth "
+        + maxDepth + ", " + elapsedNanos / 1000 + " us";
+  }
+
+}
@@ -0,0 +1,32 @@
+package main;
+
+/**
+ * Holds the QueryListener of a tree and reports the statistics of its traced queries.
+ * Shared by PointQuadTree and LockFreePointQuadTree, which are not related by inheritance.
+ * @author FrancescoA
+ *
+ */
+final class QueryTracing {
+
+  private volatile QueryListener listener;
+
+  /**
+   * Get the listener, read once per query so that a query is either traced from start to end or not at all.
+   */
+  QueryListener getListener() {
+    return listener;
+  }
+
+  void setListener(QueryListener listener) {
+    this.listener = listener;
+  }
+
+  /**
+   * Passes the statistics of a traced query that started at start (System.nanoTime()) to a listener.
+   */
+  static void report(QueryListener listener, QueryStats.Type type, QueryResult<?> result, int results, long start) {
+    long elapsed = System.nanoTime() - start;
+    listener.queryCompleted(new QueryStats(type, result.visited, result.pruned, result.maxDepth, results, elapsed));
+  }
+
+}
@@ -0,0 +1,138 @@
+package main;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Walks a PointQuadTree lazily for the nodes within a range.
+ *
+ * The subtrees still to be searched are kept on an explicit stack, and a node is only
+ * visited when the next result is asked for, so a consumer that stops early never
+ * touches the rest of the tree. Nodes are returned in the same order as
+ * {@link PointQuadTree#query(Shape)}. trySplit hands the subtrees at the top of the
+ * stack, which come first in that order, to a new spliterator, so parallel streams
+ * split the tree along quadrant boundaries.
+ * @author FrancescoA
+ *
+ * @param <T> the type of the node values
+ */
+class RangeSpliterator<T> implements Spliterator<AbstractNode<T>> {
+
+  private final Shape range;
+  private final int minX, minY, maxX, maxY;
+  private AbstractNode<T>[] stack;
+  private int top;
+  // A node found while splitting, which comes before everything on the stack.
+  private AbstractNode<T> pending;
+  private long estimate;
+
+  @SuppressWarnings("unchecked")
+  RangeSpliterator(AbstractNode<T> root, Shape range, long estimate) {
+    this.range = range;
+    Rectangle bounds = range.getBounds();
+    this.minX = bounds.x;
+    this.minY = bounds.y;
+    this.maxX = bounds.x + bounds.width;
+    this.maxY = bounds.y + bounds.height;
+    this.stack = new AbstractNode[32];
+    if (root != null) {
+      stack[top++] = root;
+    }
+    this.estimate = estimate;
+  }
+
+  private RangeSpliterator(RangeSpliterator<T> parent, AbstractNode<T>[] stack, int top, AbstractNode<T> pending) {
+    this.range = parent.range;
+    this.minX = parent.minX;
+    this.minY = parent.minY;
+    this.maxX = parent.maxX;
+    this.maxY = parent.maxY;
+    this.stack = stack;
+    this.top = top;
+    this.pending = pending;
+    this.estimate = parent.estimate;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super AbstractNode<T>> action) {
+    if (pending != null) {
+      AbstractNode<T> node = pending;
+      pending = null;
+      action.accept(node);
+      return true;
+    }
+    while (top > 0) {
+      AbstractNode<T> node = pop();
+      if (range.contains(node.getLocation())) {
+        action.accept(node);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Takes the next subtree off the stack and pushes its children that intersect the range.
+   * @return the root of the subtree
+   */
+  private AbstractNode<T> pop() {
+    AbstractNode<T> node = stack[--top];
+    stack[top] = null;
+    if (top + 4 > stack.length) {
+      stack = Arrays.copyOf(stack, 2 * stack.length);
+    }
+    int x = node.location.x;
+    int y = node.location.y;
+    // Pushed in reverse, so they are searched in the same order as the recursive search.
+    if (node.northEast != null && x <= maxX && y < maxY) {
+      stack[top++] = node.northEast;
+    }
+    if (node.northWest != null && x > minX && y <= maxY) {
+      stack[top++] = node.northWest;
+    }
+    if (node.southEast != null && x < maxX && y >= minY) {
+      stack[top++] = node.southEast;
+    }
+    if (node.southWest != null && x >= minX && y > minY) {
+      stack[top++] = node.southWest;
+    }
+    return node;
+  }
+
+  @Override
+  public Spliterator<AbstractNode<T>> trySplit() {
+    // A single subtree is opened up into its root and its children.
+    while (top == 1 && pending == null) {
+      AbstractNode<T> node = pop();
+      if (range.contains(node.getLocation())) {
+        pending = node;
+      }
+    }
+    if (top < 2) {
+      return null;
+    }
+    int half = top / 2;
+    @SuppressWarnings("unchecked")
+    AbstractNode<T>[] prefix = new AbstractNode[Math.max(32, 2 * half)];
+    System.arraycopy(stack, top - half, prefix, 0, half);
+    Arrays.fill(stack, top - half, top, null);
+    top -= half;
+    estimate >>>= 1;
+    RangeSpliterator<T> split = new RangeSpliterator<T>(this, prefix, half, pending);
+    pending = null;
+    return split;
+  }
+
+  @Override
+  public long estimateSize() {
+    return estimate;
+  }
+
+  @Override
+  public int characteristics() {
+    return ORDERED | DISTINCT | NONNULL;
+  }
+
+}
@@ -0,0 +1,73 @@
+package main;
+import java.awt.Rectangle;
+
+/**
+ * The load on one tile of a {@link ShardedQuadTree}: how many points it holds and how many
+ * inserts and queries it has served, to find the tiles that get most of the traffic.
+ * @author FrancescoA
+ *
+ */
+public final class ShardLoad {
+
+  private final int column;
+  private final int row;
+  private final Rectangle bounds;
+  private final int size;
+  private final long inserts;
+  private final long queries;
+
+  public ShardLoad(int column, int row, Rectangle bounds, int size, long inserts, long queries) {
+    this.column = column;
+    this.row = row;
+    this.bounds = new Rectangle(bounds);
+    this.size = size;
+    this.inserts = inserts;
+    this.queries = queries;
+  }
+
+  public int getColumn() {
+    return column;
+  }
+
+  public int getRow() {
+    return row;
+  }
+
+  /**
+   * Get the region of the tile; the right and bottom edges are exclusive.
+   * @return a copy of the bounds of the tile
+   */
+  public Rectangle getBounds() {
+    return new Rectangle(bounds);
+  }
+
+  /**
+   * Get the number of points in the tile.
+   * @return the size of the tile
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Get the number of inserts routed to the tile, including those of duplicates.
+   * @return the number of inserts
+   */
+  public long getInserts() {
+    return inserts;
+  }
+
+  /**
+   * Get the number of range queries that searched the tile.
+   * @return the number of queries
+   */
+  public long getQueries() {
+    return queries;
+  }
+
+  @Override
+  public String toString() {
+    return "tile (" + column + ", " + row + "): " + size + " points, " + inserts + " inserts, " + queries + " queries";
+  }
+
+}
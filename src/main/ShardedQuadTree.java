@@ -0,0 +1,273 @@
+package main;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A point QuadTree that partitions its bounds into a grid of tiles, each of them an
+ * independent {@link ConcurrentPointQuadTree} with its own lock.
+ *
+ * Inserts are routed to the tile that contains their location, so threads that insert into
+ * different tiles never wait for each other, and a range query only searches the tiles its
+ * bounds intersect: one tile on the querying thread, several tiles in parallel on a
+ * ForkJoinPool, concatenating their results tile by tile, row by row. The size of the tree
+ * is the sum of the sizes of its tiles. {@link #getShardLoads()} tells how many points,
+ * inserts and queries every tile has, which shows whether the data or the traffic
+ * concentrates on a few hot tiles that should be split further.
+ * @author FrancescoA
+ *
+ * @param <T> the type of the node values
+ */
+public class ShardedQuadTree<T> extends AbstractQuadTree<T> {
+
+  private final int columns, rows;
+  private final ConcurrentPointQuadTree<T>[] tiles;
+  private final LongAdder[] inserts, queries;
+  private final ForkJoinPool pool;
+
+  /**
+   * A sharded tree whose queries run in parallel on the common ForkJoinPool.
+   * @param bounds the dimension and location of the QuadTree
+   * @param columns the number of tiles across
+   * @param rows the number of tiles down
+   */
+  public ShardedQuadTree(Rectangle bounds, int columns, int rows) {
+    this(bounds, columns, rows, ForkJoinPool.commonPool());
+  }
+
+  public ShardedQuadTree(int x, int y, int width, int height, int columns, int rows) {
+    this(new Rectangle(x, y, width, height), columns, rows);
+  }
+
+  /**
+   * @param bounds the dimension and location of the QuadTree
+   * @param columns the number of tiles across
+   * @param rows the number of tiles down
+   * @param pool the pool that searches several tiles in parallel; with a parallelism
+   *        of 1 they are searched one after the other on the querying thread
+   */
+  @SuppressWarnings("unchecked")
+  public ShardedQuadTree(Rectangle bounds, int columns, int rows, ForkJoinPool pool) {
+    super(bounds);
+    if (columns <= 0 || rows <= 0 || columns > this.bounds.width || rows > this.bounds.height) {
+      throw new IllegalArgumentException("Cannot split " + bounds + " into " + columns + " x " + rows + " tiles");
+    }
+    this.columns = columns;
+    this.rows = rows;
+    this.pool = pool;
+    tiles = new ConcurrentPointQuadTree[columns * rows];
+    inserts = new LongAdder[columns * rows];
+    queries = new LongAdder[columns * rows];
+    for (int i = 0; i < tiles.length; i++) {
+      tiles[i] = new ConcurrentPointQuadTree<T>(tileBounds(i % columns, i / columns));
+      inserts[i] = new LongAdder();
+      queries[i] = new LongAdder();
+    }
+  }
+
+  /**
+   * The x-coordinate where a column starts: the smallest x that column(x) maps to it.
+   */
+  private int columnStart(int column) {
+    return bounds.x + (int) (((long) column * bounds.width + columns - 1) / columns);
+  }
+
+  private int rowStart(int row) {
+    return bounds.y + (int) (((long) row * bounds.height + rows - 1) / rows);
+  }
+
+  /**
+   * The region of a tile, right and bottom edges exclusive.
+   */
+  private Rectangle tileBounds(int column, int row) {
+    int x = columnStart(column), y = rowStart(row);
+    return new Rectangle(x, y, columnStart(column + 1) - x, rowStart(row + 1) - y);
+  }
+
+  /**
+   * The column of an x-coordinate within the bounds.
+   */
+  private int column(int x) {
+    return (int) ((long) (x - bounds.x) * columns / bounds.width);
+  }
+
+  private int row(int y) {
+    return (int) ((long) (y - bounds.y) * rows / bounds.height);
+  }
+
+  private int tile(Point location) {
+    return row(location.y) * columns + column(location.x);
+  }
+
+  @Override
+  public InsertOutcome insert(AbstractNode<T> node) {
+    if (!bounds.contains(node.getLocation())) {
+      throw new QuadTreeException("Cannot insert node " + node + " because it is outside QuadTree bounds.");
+    }
+    int i = tile(node.getLocation());
+    inserts[i].increment();
+    return tiles[i].insert(node);
+  }
+
+  /**
+   * Constructs a new Node with the given parameters and inserts it into the tile that contains it.
+   * @param location the location of the Node
+   * @param value the value of the Node
+   * @return what the insert did
+   */
+  public InsertOutcome insert(Point location, T value) {
+    return insert(new PointNode<T>(location, value));
+  }
+
+  /**
+   * Find the node at a location.
+   * @param location the location of the node
+   * @return the node, or null if there is no node at that location
+   */
+  public AbstractNode<T> get(Point location) {
+    if (!bounds.contains(location)) {
+      return null;
+    }
+    return tiles[tile(location)].get(location);
+  }
+
+  /**
+   * Removes the node at a location.
+   * @param location the location of the node to remove
+   * @return the removed node, or null if there was no node at that location
+   */
+  public AbstractNode<T> remove(Point location) {
+    if (!bounds.contains(location)) {
+      return null;
+    }
+    return tiles[tile(location)].remove(location);
+  }
+
+  /**
+   * Get the total amount of nodes in all the tiles. Tiles are counted one after the other,
+   * so the sum may miss or include the inserts that happen while it is taken.
+   * @return the number of nodes in the QuadTree
+   */
+  @Override
+  public int getSize() {
+    int size = 0;
+    for (ConcurrentPointQuadTree<T> tile : tiles) {
+      size += tile.getSize();
+    }
+    return size;
+  }
+
+  /**
+   * A sharded tree has one root per tile and none of its own.
+   * @return null
+   */
+  @Override
+  public AbstractNode<T> getRoot() {
+    return null;
+  }
+
+  /**
+   * Searches every tile that the bounds of range intersect, in parallel if there are several.
+   * @return the nodes found, tile by tile, row by row
+   */
+  @Override
+  public List<AbstractNode<T>> queryRange(final Shape range) {
+    Rectangle r = range.getBounds();
+    List<Integer> hit = tiles(r.x, r.y, r.x + r.width - 1, r.y + r.height - 1);
+    List<AbstractNode<T>> result = new ArrayList<AbstractNode<T>>();
+    if (hit.size() == 1 || pool.getParallelism() < 2) {
+      for (int i : hit) {
+        result.addAll(tiles[i].queryRange(range));
+      }
+      return result;
+    }
+    List<ForkJoinTask<List<AbstractNode<T>>>> tasks = new ArrayList<ForkJoinTask<List<AbstractNode<T>>>>();
+    for (int k = 1; k < hit.size(); k++) {
+      final ConcurrentPointQuadTree<T> tile = tiles[hit.get(k)];
+      tasks.add(pool.submit(new Callable<List<AbstractNode<T>>>() {
+        @Override
+        public List<AbstractNode<T>> call() {
+          return tile.queryRange(range);
+        }
+      }));
+    }
+    // The first tile is searched by this thread while the pool searches the others.
+    result.addAll(tiles[hit.get(0)].queryRange(range));
+    for (ForkJoinTask<List<AbstractNode<T>>> task : tasks) {
+      result.addAll(task.join());
+    }
+    return result;
+  }
+
+  /**
+   * Passes the nodes within inclusive bounds to a visitor, searching the tiles one after the
+   * other on the calling thread, so the visitor is never called concurrently.
+   */
+  @Override
+  public boolean queryRange(int minX, int minY, int maxX, int maxY, NodeVisitor<T> visitor) {
+    for (int i : tiles(minX, minY, maxX, maxY)) {
+      if (!tiles[i].queryRange(minX, minY, maxX, maxY, visitor)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Lists the tiles that intersect inclusive bounds, row by row, and counts a query on each of them.
+   */
+  private List<Integer> tiles(int minX, int minY, int maxX, int maxY) {
+    List<Integer> hit = new ArrayList<Integer>();
+    minX = Math.max(minX, bounds.x);
+    minY = Math.max(minY, bounds.y);
+    maxX = Math.min(maxX, bounds.x + bounds.width - 1);
+    maxY = Math.min(maxY, bounds.y + bounds.height - 1);
+    if (minX > maxX || minY > maxY) {
+      return hit;
+    }
+    int firstColumn = column(minX), lastColumn = column(maxX);
+    for (int row = row(minY); row <= row(maxY); row++) {
+      for (int column = firstColumn; column <= lastColumn; column++) {
+        int i = row * columns + column;
+        queries[i].increment();
+        hit.add(i);
+      }
+    }
+    return hit;
+  }
+
+  /**
+   * Get the load on every tile, row by row.
+   * @return one ShardLoad per tile
+   */
+  public List<ShardLoad> getShardLoads() {
+    List<ShardLoad> loads = new ArrayList<ShardLoad>(tiles.length);
+    for (int i = 0; i < tiles.length; i++) {
+      int column = i % columns, row = i / columns;
+      loads.add(new ShardLoad(column, row, tileBounds(column, row), tiles[i].getSize(), inserts[i].sum(), queries[i].sum()));
+    }
+    return loads;
+  }
+
+  public int getColumns() {
+    return columns;
+  }
+
+  public int getRows() {
+    return rows;
+  }
+
+  @Override
+  public void clear() {
+    for (ConcurrentPointQuadTree<T> tile : tiles) {
+      tile.clear();
+    }
+  }
+
+}
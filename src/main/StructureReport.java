@@ -0,0 +1,121 @@
+package main;
+import java.util.Arrays;
+
+/**
+ * The shape of a {@link PointQuadTree} at one point in time: how many nodes lie at every
+ * depth and how the nodes are spread over the quadrants, to see how balanced the tree is.
+ * @see PointQuadTree#getStructure()
+ * @author FrancescoA
+ *
+ */
+public final class StructureReport {
+
+  private final int size;
+  private final int[] depths;
+  private final int[] quadrantSizes;
+  private final long[] quadrantLinks;
+  private final int leaves;
+  private final long rebuilds;
+  private final long rebuiltNodes;
+
+  public StructureReport(int size, int[] depths, int[] quadrantSizes, long[] quadrantLinks, int leaves, long rebuilds, long rebuiltNodes) {
+    this.size = size;
+    this.depths = depths.clone();
+    this.quadrantSizes = quadrantSizes.clone();
+    this.quadrantLinks = quadrantLinks.clone();
+    this.leaves = leaves;
+    this.rebuilds = rebuilds;
+    this.rebuiltNodes = rebuiltNodes;
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Get the number of levels of the tree.
+   * @return the height of the tree, 0 if it is empty
+   */
+  public int getHeight() {
+    return depths.length;
+  }
+
+  /**
+   * Get the number of nodes at every depth, starting with the root at depth 0.
+   * @return a copy of the depth histogram, with getHeight() entries
+   */
+  public int[] getDepthHistogram() {
+    return depths.clone();
+  }
+
+  /**
+   * Get the average depth of the nodes, which is what an average lookup costs.
+   * @return the average depth, with the root at depth 0
+   */
+  public double getAverageDepth() {
+    long total = 0;
+    for (int depth = 0; depth < depths.length; depth++) {
+      total += (long) depth * depths[depth];
+    }
+    return size == 0 ? 0 : (double) total / size;
+  }
+
+  /**
+   * Get how much deeper the tree is than a balanced one, whose height is at most log2(n) + 1.
+   * @return the height of the tree divided by log2(n) + 1, 1 or less for a balanced tree
+   */
+  public double getImbalance() {
+    return size == 0 ? 1 : depths.length / (Math.log(size) / Math.log(2) + 1);
+  }
+
+  /**
+   * Get the number of nodes in each quadrant of the root, in the order NE, SE, SW, NW.
+   * @return a copy of the sizes of the four subtrees of the root
+   */
+  public int[] getQuadrantSizes() {
+    return quadrantSizes.clone();
+  }
+
+  /**
+   * Get the number of nodes that are the NE, SE, SW and NW child of their parent.
+   * @return a copy of the numbers of nodes linked in each direction
+   */
+  public long[] getQuadrantLinks() {
+    return quadrantLinks.clone();
+  }
+
+  /**
+   * Get the number of nodes without children.
+   * @return the number of leaves
+   */
+  public int getLeaves() {
+    return leaves;
+  }
+
+  /**
+   * Get the number of subtrees the tree has rebuilt to rebalance itself.
+   * @see PointQuadTree#setRebalancing(double, int)
+   * @return the number of rebuilds since the tree was created
+   */
+  public long getRebuilds() {
+    return rebuilds;
+  }
+
+  /**
+   * Get the total number of nodes in the subtrees the tree has rebuilt.
+   * @return the number of rebuilt nodes since the tree was created
+   */
+  public long getRebuiltNodes() {
+    return rebuiltNodes;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%d nodes, height %d (imbalance %.2f), average depth %.2f, %d leaves%n"
+        + "depths: %s%nquadrant sizes (NE, SE, SW, NW): %s%nquadrant links (NE, SE, SW, NW): %s%n"
+        + "%d rebuilds of %d nodes", size, getHeight(), getImbalance(), getAverageDepth(), leaves,
+        Arrays.toString(depths), Arrays.toString(quadrantSizes), Arrays.toString(quadrantLinks),
+        rebuilds, rebuiltNodes);
+  }
+
+}
@@ -0,0 +1,79 @@
+package main;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Converts node values to and from the bytes stored in a QuadTree snapshot. 
+ * Null values are handled by the snapshot itself and never passed to a codec. 
+ * @see MappedPointQuadTree
+ * @author FrancescoA
+ *
+ * @param <T> the type of the node values
+ */
+public interface ValueCodec<T> {
+  
+  /**
+   * Write a value. 
+   * @param value the value, never null
+   * @param out the output to write the value to
+   * @throws IOException if the value cannot be written
+   */
+  void write(T value, DataOutput out) throws IOException;
+  
+  /**
+   * Read a value written by {@link #write(Object, DataOutput)}. 
+   * @param in a buffer whose position and limit are the start and the end of the value; 
+   * the codec may change its position but not the bytes it holds
+   * @return the value
+   */
+  T read(ByteBuffer in);
+  
+  /**
+   * A codec for trees without values: nothing is stored and every value reads as null. 
+   */
+  static <T> ValueCodec<T> none() {
+    return new ValueCodec<T>() {
+      @Override
+      public void write(T value, DataOutput out) {
+      }
+      @Override
+      public T read(ByteBuffer in) {
+        return null;
+      }
+    };
+  }
+  
+  /**
+   * A codec storing strings as UTF-8. 
+   */
+  ValueCodec<String> STRING = new ValueCodec<String>() {
+    private final Charset utf8 = Charset.forName("UTF-8");
+    @Override
+    public void write(String value, DataOutput out) throws IOException {
+      out.write(value.getBytes(utf8));
+    }
+    @Override
+    public String read(ByteBuffer in) {
+      byte[] bytes = new byte[in.remaining()];
+      in.get(bytes);
+      return new String(bytes, utf8);
+    }
+  };
+  
+  /**
+   * A codec storing integers as 4 bytes. 
+   */
+  ValueCodec<Integer> INTEGER = new ValueCodec<Integer>() {
+    @Override
+    public void write(Integer value, DataOutput out) throws IOException {
+      out.writeInt(value);
+    }
+    @Override
+    public Integer read(ByteBuffer in) {
+      return in.getInt();
+    }
+  };
+  
+}
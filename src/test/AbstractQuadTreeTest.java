@@ -0,0 +1,139 @@
+package test;
+
+import static org.junit.Assert.*;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import main.AbstractNode;
+import main.AbstractQuadTree;
+import main.NodeVisitor;
+import main.PointNode;
+import main.QuadTreeException;
+import org.junit.Test;
+
+/**
+ * Test cases that every QuadTree implementation has to pass. 
+ * Subclasses only provide the tree to test. 
+ * @author FrancescoA
+ *
+ */
+public abstract class AbstractQuadTreeTest {
+
+  /**
+   * Create an empty tree of the implementation under test. 
+   */
+  protected abstract AbstractQuadTree<Integer> createQuadTree(int x, int y, int width, int height);
+  
+  @Test(expected = QuadTreeException.class)
+  public void insertOutsideBoundsShouldFail() {
+    AbstractQuadTree<Integer> qt = createQuadTree(0,0,100,100);
+    PointNode<Integer> n = new PointNode<Integer>(101,101);
+    qt.insert(n);
+  }
+  
+  @Test
+  public void shouldRejectDuplicates() {
+    AbstractQuadTree<Integer> qt = createQuadTree(0,0,100,100);
+    PointNode<Integer> n1 = new PointNode<Integer>(1,1);
+    PointNode<Integer> n2 = new PointNode<Integer>(1,1);
+    qt.insert(n1);
+    qt.insert(n2);
+    assertEquals(1,qt.getSize());
+  }
+  
+  @Test
+  public void shouldAcceptPointsOnTheBounds() {
+    AbstractQuadTree<Integer> qt = createQuadTree(0,0,100,100);
+    qt.insert(new PointNode<Integer>(0,0));
+    qt.insert(new PointNode<Integer>(100,100));
+    qt.insert(new PointNode<Integer>(0,100));
+    qt.insert(new PointNode<Integer>(100,0));
+    assertEquals(4, qt.getSize());
+  }
+  
+  @Test
+  public void queriesShouldMatchBruteForce() {
+    Random random = new Random(5);
+    AbstractQuadTree<Integer> qt = createQuadTree(0,0,1000,1000);
+    List<AbstractNode<Integer>> inserted = new ArrayList<AbstractNode<Integer>>();
+    for (int i = 0; i < 3000; i++) {
+      PointNode<Integer> n = new PointNode<Integer>(random.nextInt(1001), random.nextInt(1001), i);
+      if (!inserted.contains(n)) {
+        inserted.add(n);
+      }
+      qt.insert(n);
+    }
+    assertEquals(inserted.size(), qt.getSize());
+    for (int i = 0; i < 30; i++) {
+      Rectangle query = new Rectangle(random.nextInt(1000), random.nextInt(1000), random.nextInt(300), random.nextInt(300));
+      List<String> expected = new ArrayList<String>();
+      for (AbstractNode<Integer> n : inserted) {
+        if (query.contains(n.getLocation())) {
+          expected.add(n.getLocation().toString());
+        }
+      }
+      Collections.sort(expected);
+      assertEquals(expected, locations(qt.queryRange(query)));
+      final List<AbstractNode<Integer>> visited = new ArrayList<AbstractNode<Integer>>();
+      assertTrue(qt.queryRange(query, new NodeVisitor<Integer>() {
+        @Override
+        public boolean visit(AbstractNode<Integer> node) {
+          return visited.add(node);
+        }
+      }));
+      assertEquals(expected, locations(visited));
+    }
+  }
+  
+  @Test
+  public void visitorShouldStopEarly() {
+    AbstractQuadTree<Integer> qt = createQuadTree(0,0,100,100);
+    for (int i = 0; i < 100; i++) {
+      qt.insert(new PointNode<Integer>(i, 99 - i));
+    }
+    final int[] count = new int[1];
+    boolean completed = qt.queryRange(0, 0, 100, 100, new NodeVisitor<Integer>() {
+      @Override
+      public boolean visit(AbstractNode<Integer> node) {
+        return ++count[0] < 5;
+      }
+    });
+    assertFalse(completed);
+    assertEquals(5, count[0]);
+  }
+  
+  @Test
+  public void getAllNodesShouldReturnEveryNode() {
+    AbstractQuadTree<Integer> qt = createQuadTree(0,0,100,100);
+    for (int i = 0; i < 100; i++) {
+      qt.insert(new PointNode<Integer>((i * 37) % 101, (i * 53) % 101));
+    }
+    List<AbstractNode<Integer>> allNodes = qt.getAllNodes();
+    assertEquals(qt.getSize(), allNodes.size());
+  }
+
+  @Test
+  public void queriesShouldNotShareTheirResults() {
+    AbstractQuadTree<Integer> qt = createQuadTree(0,0,100,100);
+    for (int i = 0; i < 100; i++) {
+      qt.insert(new PointNode<Integer>((i * 37) % 101, (i * 53) % 101));
+    }
+    List<AbstractNode<Integer>> left = qt.queryRange(new Rectangle(0,0,50,101));
+    List<String> expected = locations(left);
+    List<AbstractNode<Integer>> right = qt.queryRange(new Rectangle(51,0,50,101));
+    assertNotSame(left, right);
+    assertEquals(expected, locations(left));
+  }
+
+  private static List<String> locations(List<AbstractNode<Integer>> nodes) {
+    List<String> locations = new ArrayList<String>();
+    for (AbstractNode<Integer> n : nodes) {
+      locations.add(n.getLocation().toString());
+    }
+    Collections.sort(locations);
+    return locations;
+  }
+  
+}
@@ -0,0 +1,147 @@
+package test;
+
+import static org.junit.Assert.*;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import main.AbstractNode;
+import main.AbstractQuadTree;
+import main.ArrayPointQuadTree;
+import main.InsertOutcome;
+import main.PointNode;
+import main.PointVisitor;
+import main.PointQuadTree;
+import main.QuadTreeException;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+/**
+ * ArrayPointQuadTree test cases, mostly checked against PointQuadTree. 
+ * @author FrancescoA
+ *
+ */
+public class ArrayPointQuadTreeTest extends AbstractQuadTreeTest {
+
+  @Override
+  protected AbstractQuadTree<Integer> createQuadTree(int x, int y, int width, int height) {
+    return new ArrayPointQuadTree<Integer>(x, y, width, height);
+  }
+
+  private static final int[][] POINTS = {
+    {1,2}, {0,0}, {100,100}, {17,8}, {21,55}, {9,35}, {39,54}, {86,70}, {48,47}, {12,3},
+    {96,5}, {53,35}, {9,32}, {39,30}, {85,0}, {70,83}, {57,44}, {7,32}, {23,89}, {53,81},
+  };
+  
+  private ArrayPointQuadTree<String> getQuadTree() {
+    ArrayPointQuadTree<String> qt = new ArrayPointQuadTree<String>(0,0,100,100);
+    for (int[] p : POINTS) {
+      qt.insert(p[0], p[1], null);
+    }
+    return qt;
+  }
+  
+  @Test(expected = QuadTreeException.class)
+  public void testOutOfBoundEntry() {
+    ArrayPointQuadTree<String> qt = new ArrayPointQuadTree<String>(0,0,100,100);
+    qt.insert(101, 101, null);
+  }
+  
+  @Test
+  public void shouldNotInsertDuplicates() {
+    ArrayPointQuadTree<String> qt = new ArrayPointQuadTree<String>(0,0,100,100);
+    assertTrue(qt.insert(1, 1, "a"));
+    assertFalse(qt.insert(1, 1, "b"));
+    assertEquals(InsertOutcome.REJECTED, qt.insert(new Point(1, 1), "c"));
+    assertEquals(InsertOutcome.INSERTED, qt.insert(new Point(2, 2), "d"));
+    assertEquals(2, qt.getSize());
+    assertEquals("[a= (1, 1), d= (2, 2)]", qt.getAllNodes().toString());
+  }
+  
+  @Test
+  public void shouldGrowPastInitialCapacity() {
+    ArrayPointQuadTree<String> qt = new ArrayPointQuadTree<String>(new Rectangle(0,0,100,100), 1);
+    for (int[] p : POINTS) {
+      qt.insert(new PointNode<String>(p[0], p[1], "v"));
+    }
+    assertEquals(POINTS.length, qt.getSize());
+    assertTrue(qt.getCapacity() >= POINTS.length);
+  }
+  
+  @Test
+  public void testQuery2() {
+    ArrayPointQuadTree<String> qt = getQuadTree();
+    List<AbstractNode<String>> results = qt.queryRange(new Rectangle(50,70));
+    assertEquals("[(1, 2), (0, 0), (17, 8), (12, 3), (9, 35), (9, 32), (7, 32), (21, 55), (39, 54), (39, 30), (48, 47)]",results.toString());
+  }
+  
+  @Test
+  public void shouldMatchPointQuadTree() {
+    Random random = new Random(7);
+    PointQuadTree<Integer> objects = new PointQuadTree<Integer>(0,0,1000,1000);
+    ArrayPointQuadTree<Integer> arrays = new ArrayPointQuadTree<Integer>(0,0,1000,1000);
+    for (int i = 0; i < 5000; i++) {
+      PointNode<Integer> n = new PointNode<Integer>(random.nextInt(1000), random.nextInt(1000), i);
+      objects.insert(n);
+      arrays.insert(n.getLocation().x, n.getLocation().y, i);
+    }
+    assertEquals(objects.getSize(), arrays.getSize());
+    for (int i = 0; i < 50; i++) {
+      Rectangle query = new Rectangle(random.nextInt(1000), random.nextInt(1000), random.nextInt(300), random.nextInt(300));
+      assertEquals(objects.queryRange(query).toString(), arrays.queryRange(query).toString());
+      assertEquals(objects.getVisitedOnLastSearch(), arrays.getVisitedOnLastSearch());
+    }
+  }
+  
+  @Test
+  public void testPointVisitorQuery() {
+    ArrayPointQuadTree<String> qt = getQuadTree();
+    final List<String> visited = new ArrayList<String>();
+    boolean completed = qt.queryRange(new Rectangle(50,70), new PointVisitor<String>() {
+      @Override
+      public boolean visit(int x, int y, String value) {
+        visited.add("(" + x + ", " + y + ")");
+        return visited.size() < 4;
+      }
+    });
+    assertFalse(completed);
+    assertEquals("[(1, 2), (0, 0), (17, 8), (12, 3)]", visited.toString());
+  }
+  
+  @Test 
+  public void comapareQueries() {
+    ArrayPointQuadTree<String> qt = getQuadTree();
+    Rectangle query = new Rectangle(50,70);
+    List<AbstractNode<String>> results = qt.queryRange(query);
+    Collections.sort(results);
+    String sorted = results.toString();
+    List<AbstractNode<String>> results2 = qt.innefficientQueryRange(query);
+    Collections.sort(results2);
+    assertEquals(sorted, results2.toString());
+  }
+  
+  @Test
+  public void testClear() {
+    ArrayPointQuadTree<String> qt = getQuadTree();
+    qt.clear();
+    assertEquals(0, qt.getSize());
+    assertNull(qt.getRoot());
+    assertEquals(0, qt.getAllNodes().size());
+  }
+  
+  
+  public static void main(String[] args) {
+    System.out.println("Starting tests");
+    Result result = JUnitCore.runClasses(ArrayPointQuadTreeTest.class);
+    for (Failure failure : result.getFailures()) {
+      System.out.println(failure.toString());
+    }
+    System.out.println("Tests ended");
+  }
+  
+
+}
@@ -0,0 +1,67 @@
+package test;
+
+import static org.junit.Assert.*;
+import java.awt.Rectangle;
+import main.AbstractQuadTree;
+import main.BucketPRQuadTree;
+import main.PointNode;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+/**
+ * BucketPRQuadTree test cases, on top of the ones every QuadTree has to pass. 
+ * @author FrancescoA
+ *
+ */
+public class BucketPRQuadTreeTest extends AbstractQuadTreeTest {
+
+  @Override
+  protected AbstractQuadTree<Integer> createQuadTree(int x, int y, int width, int height) {
+    // A small capacity so that the tests exercise splitting. 
+    return new BucketPRQuadTree<Integer>(new Rectangle(x, y, width, height), 4, 8);
+  }
+  
+  @Test
+  public void shouldSplitFullLeaves() {
+    BucketPRQuadTree<Integer> qt = new BucketPRQuadTree<Integer>(new Rectangle(0,0,100,100), 4, 8);
+    for (int i = 0; i < 4; i++) {
+      qt.insert(new PointNode<Integer>(i, i));
+    }
+    assertEquals(1, qt.getHeight());
+    qt.insert(new PointNode<Integer>(90, 90));
+    assertEquals(2, qt.getHeight());
+  }
+  
+  @Test
+  public void depthShouldBeBoundedForSortedInput() {
+    BucketPRQuadTree<Integer> qt = new BucketPRQuadTree<Integer>(new Rectangle(0,0,10000,10000), 4, 6);
+    for (int i = 0; i < 10000; i++) {
+      qt.insert(new PointNode<Integer>(i, i));
+    }
+    assertEquals(10000, qt.getSize());
+    assertEquals(7, qt.getHeight());
+    assertEquals(100, qt.queryRange(new Rectangle(5000,5000,100,100)).size());
+  }
+  
+  @Test
+  public void testClear() {
+    BucketPRQuadTree<Integer> qt = new BucketPRQuadTree<Integer>(0,0,100,100);
+    qt.insert(new PointNode<Integer>(1, 1));
+    qt.clear();
+    assertEquals(0, qt.getSize());
+    assertEquals(0, qt.getAllNodes().size());
+  }
+  
+  
+  public static void main(String[] args) {
+    System.out.println("Starting tests");
+    Result result = JUnitCore.runClasses(BucketPRQuadTreeTest.class);
+    for (Failure failure : result.getFailures()) {
+      System.out.println(failure.toString());
+    }
+    System.out.println("Tests ended");
+  }
+
+}
@@ -0,0 +1,146 @@
+package test;
+
+import static org.junit.Assert.*;
+import java.awt.Point;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import main.AbstractNode;
+import main.AbstractQuadTree;
+import main.CachingPointQuadTree;
+import main.PointNode;
+import main.PointQuadTree;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+/**
+ * CachingPointQuadTree test cases.
+ * @author FrancescoA
+ *
+ */
+public class CachingPointQuadTreeTest extends AbstractQuadTreeTest {
+
+  @Override
+  protected AbstractQuadTree<Integer> createQuadTree(int x, int y, int width, int height) {
+    return new CachingPointQuadTree<Integer>(x, y, width, height);
+  }
+
+  @Test
+  public void repeatedQueriesShouldHitTheCache() {
+    CachingPointQuadTree<Integer> qt = new CachingPointQuadTree<Integer>(0,0,100,100);
+    qt.insert(new PointNode<Integer>(10,10,1));
+    qt.insert(new PointNode<Integer>(60,60,2));
+    Rectangle query = new Rectangle(0,0,50,50);
+    List<AbstractNode<Integer>> first = qt.queryRange(query);
+    assertEquals("[1= (10, 10)]", first.toString());
+    assertEquals(1, qt.getMisses());
+    // Neither changing the shape nor the returned list changes the cached entry.
+    query.setLocation(50,50);
+    first.clear();
+    assertEquals("[1= (10, 10)]", qt.queryRange(new Rectangle(0,0,50,50)).toString());
+    assertEquals(1, qt.getHits());
+    assertEquals(0, qt.getVisitedOnLastSearch());
+    // Shapes that are not compared by value are never cached.
+    Polygon triangle = new Polygon(new int[] {0, 50, 0}, new int[] {0, 0, 50}, 3);
+    qt.queryRange(triangle);
+    qt.queryRange(triangle);
+    assertEquals(1, qt.getHits());
+    assertEquals(1, qt.getCachedQueries());
+  }
+
+  @Test
+  public void writesShouldOnlyInvalidateTheQueriesTheyChange() {
+    CachingPointQuadTree<Integer> qt = new CachingPointQuadTree<Integer>(0,0,100,100);
+    qt.insert(new PointNode<Integer>(10,10,1));
+    Rectangle left = new Rectangle(0,0,50,100);
+    Rectangle right = new Rectangle(50,0,50,100);
+    qt.queryRange(left);
+    qt.queryRange(right);
+    qt.insert(new PointNode<Integer>(70,70,2));
+    assertEquals(1, qt.getInvalidations());
+    assertEquals(1, qt.queryRange(left).size());
+    assertEquals(1, qt.getHits());
+    assertEquals("[2= (70, 70)]", qt.queryRange(right).toString());
+    assertTrue(qt.move(new Point(70,70), new Point(20,20)));
+    assertEquals(3, qt.getInvalidations());
+    assertEquals(2, qt.queryRange(left).size());
+    assertEquals(0, qt.queryRange(right).size());
+    assertNotNull(qt.remove(new Point(10,10)));
+    assertEquals("[2= (20, 20)]", qt.queryRange(left).toString());
+    assertEquals(1, qt.getHits());
+  }
+
+  @Test
+  public void leastRecentlyUsedQueriesShouldBeEvicted() {
+    CachingPointQuadTree<Integer> qt = new CachingPointQuadTree<Integer>(new Rectangle(0,0,100,100), 2);
+    qt.insert(new PointNode<Integer>(10,10,1));
+    Rectangle a = new Rectangle(0,0,10,10), b = new Rectangle(0,0,20,20), c = new Rectangle(0,0,30,30);
+    qt.queryRange(a);
+    qt.queryRange(b);
+    qt.queryRange(a);
+    qt.queryRange(c);
+    assertEquals(1, qt.getEvictions());
+    qt.queryRange(a);
+    assertEquals(2, qt.getHits());
+    qt.queryRange(b);
+    assertEquals(2, qt.getHits());
+    assertEquals(2, qt.getCachedQueries());
+  }
+
+  @Test
+  public void cachedResultsShouldMatchAnUncachedTree() {
+    Random random = new Random(15);
+    CachingPointQuadTree<Integer> cached = new CachingPointQuadTree<Integer>(new Rectangle(0,0,200,200), 16);
+    PointQuadTree<Integer> plain = new PointQuadTree<Integer>(0,0,200,200);
+    List<Rectangle> queries = new ArrayList<Rectangle>();
+    for (int i = 0; i < 24; i++) {
+      queries.add(new Rectangle(random.nextInt(200), random.nextInt(200), random.nextInt(80), random.nextInt(80)));
+    }
+    for (int i = 0; i < 3000; i++) {
+      Point p = new Point(random.nextInt(200), random.nextInt(200));
+      switch (random.nextInt(4)) {
+        case 0:
+          cached.remove(p);
+          plain.remove(p);
+          break;
+        case 1:
+          Point to = new Point(random.nextInt(200), random.nextInt(200));
+          assertEquals(plain.move(p, to), cached.move(p, to));
+          break;
+        default:
+          if (plain.get(p) == null) {
+            cached.insert(new PointNode<Integer>(p, i));
+            plain.insert(new PointNode<Integer>(p, i));
+          }
+      }
+      Rectangle query = queries.get(random.nextInt(queries.size()));
+      assertEquals(plain.queryRange(query), cached.queryRange(query));
+    }
+    assertTrue(cached.getHits() > 0);
+    assertTrue(cached.getEvictions() > 0);
+  }
+
+  @Test
+  public void insertingByLocationShouldInvalidateTheCache() {
+    CachingPointQuadTree<Integer> qt = new CachingPointQuadTree<Integer>(0,0,100,100);
+    assertEquals(0, qt.getAllNodes().size());
+    qt.insert(new Point(60,60), 1);
+    assertEquals(1, qt.getInvalidations());
+    assertEquals("[1= (60, 60)]", qt.getAllNodes().toString());
+    assertEquals(1, qt.getSize());
+  }
+
+  public static void main(String[] args) {
+    System.out.println("Starting tests");
+    Result result = JUnitCore.runClasses(CachingPointQuadTreeTest.class);
+    for (Failure failure : result.getFailures()) {
+      System.out.println(failure.toString());
+    }
+    System.out.println("Tests ended");
+  }
+
+}
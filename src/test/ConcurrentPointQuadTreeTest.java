@@ -0,0 +1,257 @@
+package test;
+
+import static org.junit.Assert.*;
+import java.awt.Point;
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import main.AbstractNode;
+import main.AbstractQuadTree;
+import main.ConcurrentPointQuadTree;
+import main.NodePool;
+import main.NodeVisitor;
+import main.PointNode;
+import main.PointQuadTree;
+import main.QueryResult;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+/**
+ * ConcurrentPointQuadTree test cases. 
+ * @author FrancescoA
+ *
+ */
+public class ConcurrentPointQuadTreeTest extends AbstractQuadTreeTest {
+
+  @Override
+  protected AbstractQuadTree<Integer> createQuadTree(int x, int y, int width, int height) {
+    return new ConcurrentPointQuadTree<Integer>(x, y, width, height);
+  }
+
+
+  @Test
+  public void resultsShouldNotBeSharedBetweenQueries() {
+    ConcurrentPointQuadTree<String> qt = new ConcurrentPointQuadTree<String>(0,0,100,100);
+    qt.insert(new PointNode<String>(1,1));
+    qt.insert(new PointNode<String>(50,50));
+    List<AbstractNode<String>> first = qt.queryRange(new Rectangle(10,10));
+    List<AbstractNode<String>> second = qt.queryRange(new Rectangle(40,40,20,20));
+    assertEquals("[(1, 1)]", first.toString());
+    assertEquals("[(50, 50)]", second.toString());
+  }
+  
+  @Test
+  public void readersShouldSeeConsistentResultsDuringInserts() throws InterruptedException {
+    final ConcurrentPointQuadTree<Integer> qt = new ConcurrentPointQuadTree<Integer>(0,0,1000,1000);
+    // The left half is filled up front, the writer only inserts into the right half. 
+    final Rectangle left = new Rectangle(0,0,500,1001);
+    Random random = new Random(3);
+    for (int i = 0; i < 2000; i++) {
+      qt.insert(new PointNode<Integer>(random.nextInt(500), random.nextInt(1000), i));
+    }
+    final int expected = qt.queryRange(left).size();
+    final AtomicInteger failures = new AtomicInteger();
+    final AtomicInteger queries = new AtomicInteger();
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        Random random = new Random(4);
+        for (int i = 0; i < 20000; i++) {
+          qt.insert(new PointNode<Integer>(500 + random.nextInt(500), random.nextInt(1000), i));
+        }
+      }
+    };
+    Thread[] readers = new Thread[4];
+    for (int r = 0; r < readers.length; r++) {
+      readers[r] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 500; i++) {
+            QueryResult<Integer> result = qt.query(left);
+            queries.incrementAndGet();
+            if (result.size() != expected) {
+              failures.incrementAndGet();
+            }
+          }
+        }
+      };
+    }
+    writer.start();
+    for (Thread reader : readers) {
+      reader.start();
+    }
+    writer.join();
+    for (Thread reader : readers) {
+      reader.join();
+    }
+    assertEquals(2000, queries.get());
+    assertEquals(0, failures.get());
+    assertEquals(qt.getSize(), qt.getAllNodes().size());
+  }
+  
+  
+  @Test
+  @SuppressWarnings("unchecked")
+  public void readersShouldSeeConsistentResultsDuringRelinkingWrites() throws InterruptedException {
+    final ConcurrentPointQuadTree<Integer> qt = new ConcurrentPointQuadTree<Integer>(0,0,1000,1000);
+    Random random = new Random(5);
+    while (qt.getSize() < 2000) {
+      qt.insert(new PointNode<Integer>(random.nextInt(1000), random.nextInt(1000), qt.getSize()));
+    }
+    final Rectangle all = new Rectangle(0,0,1001,1001);
+    final Polygon triangle = new Polygon(new int[] {-1, 3000, -1}, new int[] {-1, -1, 3000}, 3);
+    final Point from = qt.getRoot().getLocation();
+    final Point to = new Point(1000, 1000);
+    final AtomicInteger failures = new AtomicInteger();
+    // Moving the root and rebuilding the whole tree relink nodes that the readers are walking. 
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 200; i++) {
+          qt.move(from, to);
+          qt.move(to, from);
+          qt.bulkLoad(new AbstractNode[0]);
+        }
+      }
+    };
+    Thread[] readers = new Thread[4];
+    for (int r = 0; r < readers.length; r++) {
+      readers[r] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 500; i++) {
+            try {
+              if (qt.query(all).size() != 2000 || qt.query(triangle).size() != 2000) {
+                failures.incrementAndGet();
+              }
+            } catch (RuntimeException e) {
+              failures.incrementAndGet();
+            } catch (StackOverflowError e) {
+              failures.incrementAndGet();
+            }
+          }
+        }
+      };
+    }
+    writer.start();
+    for (Thread reader : readers) {
+      reader.start();
+    }
+    writer.join();
+    for (Thread reader : readers) {
+      reader.join();
+    }
+    assertEquals(0, failures.get());
+    assertEquals(2000, qt.getAllNodes().size());
+  }
+  
+  @Test
+  public void readersShouldSeeConsistentResultsDuringRebalancingInserts() throws InterruptedException {
+    final ConcurrentPointQuadTree<Integer> qt = new ConcurrentPointQuadTree<Integer>(0,0,1000,1000);
+    qt.setRebalancing(0.7, PointQuadTree.DEFAULT_REBUILD_LIMIT);
+    final Rectangle left = new Rectangle(0,0,500,1001);
+    final Rectangle all = new Rectangle(0,0,1001,1001);
+    Random random = new Random(6);
+    while (qt.getSize() < 2000) {
+      qt.insert(new PointNode<Integer>(random.nextInt(500), random.nextInt(1000), qt.getSize()));
+    }
+    final int expected = qt.queryRange(left).size();
+    final AtomicInteger failures = new AtomicInteger();
+    // Sorted inserts into the right half grow a chain, which the inserts keep rebuilding. 
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 3000; i++) {
+          qt.insert(new PointNode<Integer>(500 + i / 8, i % 8 * 120 + i / 30, i));
+        }
+      }
+    };
+    Thread[] readers = new Thread[4];
+    for (int r = 0; r < readers.length; r++) {
+      readers[r] = new Thread() {
+        @Override
+        public void run() {
+          int last = 0;
+          for (int i = 0; i < 500; i++) {
+            try {
+              int found = qt.query(all).size();
+              if (qt.query(left).size() != expected || found < last) {
+                failures.incrementAndGet();
+              }
+              last = found;
+            } catch (RuntimeException e) {
+              failures.incrementAndGet();
+            } catch (StackOverflowError e) {
+              failures.incrementAndGet();
+            }
+          }
+        }
+      };
+    }
+    writer.start();
+    for (Thread reader : readers) {
+      reader.start();
+    }
+    writer.join();
+    for (Thread reader : readers) {
+      reader.join();
+    }
+    assertEquals(0, failures.get());
+    assertEquals(5000, qt.getSize());
+    assertEquals(5000, qt.getAllNodes().size());
+    assertTrue(qt.getStructure().getRebuilds() > 0);
+    assertTrue(qt.getHeight() < 40);
+  }
+  
+  @Test(expected = UnsupportedOperationException.class)
+  public void recyclingNodesShouldNotBeSupported() {
+    ConcurrentPointQuadTree<Integer> qt = new ConcurrentPointQuadTree<Integer>(0,0,100,100);
+    qt.insert(new PointNode<Integer>(1,1,1));
+    qt.clear(new NodePool<Integer>());
+  }
+  
+  @Test
+  public void insertingByLocationShouldTakeTheWriteLock() throws InterruptedException {
+    final ConcurrentPointQuadTree<Integer> qt = new ConcurrentPointQuadTree<Integer>(0,0,100,100);
+    qt.insert(new Point(50,50), 1);
+    final Thread writer = new Thread() {
+      @Override
+      public void run() {
+        qt.insert(new Point(60,60), 2);
+      }
+    };
+    final boolean[] blocked = new boolean[1];
+    // The visitor runs under the read lock, so the insert has to wait until the query is done. 
+    qt.queryRange(0, 0, 100, 100, new NodeVisitor<Integer>() {
+      @Override
+      public boolean visit(AbstractNode<Integer> node) {
+        writer.start();
+        try {
+          writer.join(200);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        blocked[0] = writer.isAlive();
+        return false;
+      }
+    });
+    writer.join();
+    assertTrue(blocked[0]);
+    assertEquals(2, qt.getSize());
+    assertEquals(2, qt.getAllNodes().size());
+  }
+  
+  public static void main(String[] args) {
+    System.out.println("Starting tests");
+    Result result = JUnitCore.runClasses(ConcurrentPointQuadTreeTest.class);
+    for (Failure failure : result.getFailures()) {
+      System.out.println(failure.toString());
+    }
+    System.out.println("Tests ended");
+  }
+
+}
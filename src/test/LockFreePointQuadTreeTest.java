@@ -0,0 +1,224 @@
+package test;
+
+import static org.junit.Assert.*;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+import main.AbstractNode;
+import main.AbstractQuadTree;
+import main.InsertOutcome;
+import main.LockFreePointQuadTree;
+import main.PointNode;
+import main.PointQuadTree;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+/**
+ * LockFreePointQuadTree test cases.
+ * @author FrancescoA
+ *
+ */
+public class LockFreePointQuadTreeTest extends AbstractQuadTreeTest {
+
+  @Override
+  protected AbstractQuadTree<Integer> createQuadTree(int x, int y, int width, int height) {
+    return new LockFreePointQuadTree<Integer>(x, y, width, height);
+  }
+
+  @Test
+  public void shouldBuildTheSameTreeAsPointQuadTree() {
+    LockFreePointQuadTree<Integer> lockFree = new LockFreePointQuadTree<Integer>(0,0,300,300);
+    PointQuadTree<Integer> plain = new PointQuadTree<Integer>(0,0,300,300);
+    Random random = new Random(19);
+    for (int i = 0; i < 5000; i++) {
+      Point p = new Point(random.nextInt(300), random.nextInt(300));
+      if (plain.get(p) == null) {
+        plain.insert(new PointNode<Integer>(p, i));
+      }
+      lockFree.insert(new PointNode<Integer>(p, i));
+    }
+    assertEquals(plain.getSize(), lockFree.getSize());
+    assertEquals(5000 - plain.getSize(), lockFree.getDuplicates());
+    assertEquals(plain.getHeight(), lockFree.getHeight());
+    for (int i = 0; i < 50; i++) {
+      Rectangle query = new Rectangle(random.nextInt(300), random.nextInt(300), random.nextInt(150), random.nextInt(150));
+      assertEquals(plain.queryRange(query).toString(), lockFree.queryRange(query).toString());
+      assertEquals(plain.getVisitedOnLastSearch(), lockFree.getVisitedOnLastSearch());
+    }
+    lockFree.clear();
+    assertEquals(0, lockFree.getSize());
+    assertNull(lockFree.get(new Point(1,1)));
+  }
+
+  @Test
+  public void racingDuplicatesShouldBeInsertedOnce() throws Exception {
+    final LockFreePointQuadTree<Integer> qt = new LockFreePointQuadTree<Integer>(0,0,200,200);
+    final List<Point> points = new ArrayList<Point>();
+    for (int x = 0; x < 200; x += 2) {
+      for (int y = 0; y < 200; y += 2) {
+        points.add(new Point(x, y));
+      }
+    }
+    // Every thread inserts every point, in its own order, starting at the same time.
+    final int threads = 8;
+    final CyclicBarrier start = new CyclicBarrier(threads);
+    final AtomicInteger failures = new AtomicInteger();
+    Thread[] writers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      final int seed = t;
+      writers[t] = new Thread() {
+        @Override
+        public void run() {
+          List<Point> mine = new ArrayList<Point>(points);
+          Collections.shuffle(mine, new Random(seed));
+          try {
+            start.await();
+          } catch (Exception e) {
+            failures.incrementAndGet();
+            return;
+          }
+          for (Point p : mine) {
+            qt.insert(new PointNode<Integer>(new Point(p), seed));
+          }
+        }
+      };
+      writers[t].start();
+    }
+    for (Thread writer : writers) {
+      writer.join();
+    }
+    assertEquals(0, failures.get());
+    assertEquals(points.size(), qt.getSize());
+    assertEquals((long) points.size() * (threads - 1), qt.getDuplicates());
+    List<AbstractNode<Integer>> all = qt.getAllNodes();
+    assertEquals(points.size(), all.size());
+    Set<Point> locations = new HashSet<Point>();
+    for (AbstractNode<Integer> node : all) {
+      assertTrue(locations.add(node.getLocation()));
+      assertSame(node, qt.get(node.getLocation()));
+    }
+    assertEquals(new HashSet<Point>(points), locations);
+  }
+
+  @Test
+  public void readersShouldNeverLoseNodesDuringInserts() throws InterruptedException {
+    final LockFreePointQuadTree<Integer> qt = new LockFreePointQuadTree<Integer>(0,0,1000,1000);
+    final Rectangle left = new Rectangle(0,0,500,1001);
+    Random random = new Random(7);
+    for (int i = 0; i < 2000; i++) {
+      qt.insert(new PointNode<Integer>(random.nextInt(500), random.nextInt(1000), i));
+    }
+    final int expected = qt.queryRange(left).size();
+    final AtomicInteger failures = new AtomicInteger();
+    Thread[] writers = new Thread[4];
+    for (int w = 0; w < writers.length; w++) {
+      final int seed = w;
+      writers[w] = new Thread() {
+        @Override
+        public void run() {
+          Random random = new Random(seed);
+          for (int i = 0; i < 20000; i++) {
+            qt.insert(new PointNode<Integer>(random.nextInt(1000), random.nextInt(1000), i));
+          }
+        }
+      };
+    }
+    Thread reader = new Thread() {
+      @Override
+      public void run() {
+        int last = expected;
+        for (int i = 0; i < 300; i++) {
+          // Nodes are only ever added, so a later query finds at least what an earlier one did.
+          int found = qt.queryRange(left).size();
+          if (found < last) {
+            failures.incrementAndGet();
+          }
+          last = found;
+        }
+      }
+    };
+    for (Thread writer : writers) {
+      writer.start();
+    }
+    reader.start();
+    for (Thread writer : writers) {
+      writer.join();
+    }
+    reader.join();
+    assertEquals(0, failures.get());
+    assertEquals(qt.getSize(), qt.getAllNodes().size());
+  }
+
+  @Test
+  public void insertingByLocationShouldBeLockFree() throws InterruptedException {
+    final LockFreePointQuadTree<Integer> qt = new LockFreePointQuadTree<Integer>(0,0,400,400);
+    Thread[] writers = new Thread[4];
+    for (int w = 0; w < writers.length; w++) {
+      final int column = w;
+      writers[w] = new Thread() {
+        @Override
+        public void run() {
+          Random random = new Random(column);
+          // Every thread inserts its own column of each group of four, so no location is taken twice.
+          for (int i = 0; i < 5000; i++) {
+            qt.insert(new Point(random.nextInt(100) * 4 + column, random.nextInt(400)), i);
+          }
+        }
+      };
+      writers[w].start();
+    }
+    for (Thread writer : writers) {
+      writer.join();
+    }
+    assertEquals(qt.getInsertCount(InsertOutcome.INSERTED), qt.getSize());
+    assertEquals(20000, qt.getSize() + qt.getDuplicates());
+    assertEquals(qt.getSize(), qt.getAllNodes().size());
+  }
+
+  @Test
+  public void clearShouldNotCountRacingInserts() throws InterruptedException {
+    final LockFreePointQuadTree<Integer> qt = new LockFreePointQuadTree<Integer>(0,0,1000,1000);
+    Thread[] writers = new Thread[4];
+    for (int w = 0; w < writers.length; w++) {
+      final int seed = w;
+      writers[w] = new Thread() {
+        @Override
+        public void run() {
+          Random random = new Random(seed);
+          for (int i = 0; i < 20000; i++) {
+            qt.insert(new PointNode<Integer>(random.nextInt(1000), random.nextInt(1000), i));
+          }
+        }
+      };
+      writers[w].start();
+    }
+    for (int i = 0; i < 200; i++) {
+      qt.clear();
+      Thread.yield();
+    }
+    for (Thread writer : writers) {
+      writer.join();
+    }
+    // Inserts that raced with a clear went into a discarded tree and must not be counted.
+    assertEquals(qt.getAllNodes().size(), qt.getSize());
+  }
+
+  public static void main(String[] args) {
+    System.out.println("Starting tests");
+    Result result = JUnitCore.runClasses(LockFreePointQuadTreeTest.class);
+    for (Failure failure : result.getFailures()) {
+      System.out.println(failure.toString());
+    }
+    System.out.println("Tests ended");
+  }
+
+}
@@ -0,0 +1,129 @@
+package test;
+
+import static org.junit.Assert.*;
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import main.AbstractNode;
+import main.DuplicatePolicy;
+import main.MappedPointQuadTree;
+import main.PointNode;
+import main.PointQuadTree;
+import main.PointVisitor;
+import main.QuadTreeException;
+import main.ValueCodec;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+/**
+ * MappedPointQuadTree test cases. 
+ * @author FrancescoA
+ *
+ */
+public class MappedPointQuadTreeTest {
+
+  private Path file;
+  
+  @Before
+  public void createFile() throws IOException {
+    file = File.createTempFile("quadtree", ".snapshot").toPath();
+  }
+  
+  @After
+  public void deleteFile() throws IOException {
+    Files.deleteIfExists(file);
+  }
+  
+  @Test
+  public void snapshotShouldAnswerQueriesLikeTheTree() throws IOException {
+    Random random = new Random(2);
+    PointQuadTree<String> qt = new PointQuadTree<String>(0,0,1000,1000);
+    for (int i = 0; i < 2000; i++) {
+      qt.insert(new PointNode<String>(random.nextInt(1000), random.nextInt(1000), i % 7 == 0 ? null : "P" + i));
+    }
+    MappedPointQuadTree.write(qt, file, ValueCodec.STRING);
+    MappedPointQuadTree<String> mapped = MappedPointQuadTree.open(file, ValueCodec.STRING);
+    assertEquals(qt.getSize(), mapped.getSize());
+    assertEquals(qt.getRoot().toString(), mapped.getRoot().toString());
+    for (int i = 0; i < 20; i++) {
+      Rectangle query = new Rectangle(random.nextInt(1000), random.nextInt(1000), random.nextInt(300), random.nextInt(300));
+      assertEquals(qt.queryRange(query).toString(), mapped.queryRange(query).toString());
+    }
+    assertEquals(qt.getAllNodes().toString(), mapped.getAllNodes().toString());
+  }
+  
+  @Test
+  public void visitorShouldDecodeValues() throws IOException {
+    PointQuadTree<Integer> qt = new PointQuadTree<Integer>(0,0,100,100);
+    qt.insert(new PointNode<Integer>(10, 10, 1));
+    qt.insert(new PointNode<Integer>(20, 20, 2));
+    qt.insert(new PointNode<Integer>(90, 90, 3));
+    MappedPointQuadTree.write(qt, file, ValueCodec.INTEGER);
+    MappedPointQuadTree<Integer> mapped = MappedPointQuadTree.open(file, ValueCodec.INTEGER);
+    final List<Integer> values = new ArrayList<Integer>();
+    assertTrue(mapped.queryRange(0, 0, 50, 50, new PointVisitor<Integer>() {
+      @Override
+      public boolean visit(int x, int y, Integer value) {
+        return values.add(value);
+      }
+    }));
+    assertEquals("[1, 2]", values.toString());
+  }
+  
+  @Test
+  public void emptyTreeShouldRoundTrip() throws IOException {
+    PointQuadTree<String> qt = new PointQuadTree<String>(0,0,100,100);
+    MappedPointQuadTree.write(qt, file, ValueCodec.<String>none());
+    MappedPointQuadTree<String> mapped = MappedPointQuadTree.open(file, ValueCodec.<String>none());
+    assertEquals(0, mapped.getSize());
+    assertNull(mapped.getRoot());
+    assertEquals(0, mapped.getAllNodes().size());
+  }
+  
+  @Test(expected = IOException.class)
+  public void shouldRejectOtherFiles() throws IOException {
+    Files.write(file, "not a snapshot, just some text".getBytes("UTF-8"));
+    MappedPointQuadTree.open(file, ValueCodec.STRING);
+  }
+  
+  @Test
+  public void writeShouldRejectBucketsWithoutLeavingAFile() throws IOException {
+    PointQuadTree<String> qt = new PointQuadTree<String>(0,0,100,100);
+    qt.setDuplicatePolicy(DuplicatePolicy.<String>bucket());
+    qt.insert(new PointNode<String>(5, 5, "a"));
+    qt.insert(new PointNode<String>(5, 5, "b"));
+    try {
+      MappedPointQuadTree.write(qt, file, ValueCodec.STRING);
+      fail();
+    } catch (QuadTreeException e) {
+      // Expected.
+    }
+    assertFalse(Files.exists(file));
+  }
+  
+  @Test(expected = UnsupportedOperationException.class)
+  public void snapshotShouldBeReadOnly() throws IOException {
+    MappedPointQuadTree.write(new PointQuadTree<String>(0,0,100,100), file, ValueCodec.STRING);
+    MappedPointQuadTree.open(file, ValueCodec.STRING).insert(new PointNode<String>(1,1));
+  }
+  
+  
+  public static void main(String[] args) {
+    System.out.println("Starting tests");
+    Result result = JUnitCore.runClasses(MappedPointQuadTreeTest.class);
+    for (Failure failure : result.getFailures()) {
+      System.out.println(failure.toString());
+    }
+    System.out.println("Tests ended");
+  }
+
+}
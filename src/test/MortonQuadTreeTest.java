@@ -0,0 +1,189 @@
+package test;
+
+import static org.junit.Assert.*;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import main.AbstractNode;
+import main.DuplicatePolicy;
+import main.MortonQuadTree;
+import main.PointNode;
+import main.PointQuadTree;
+import main.PointVisitor;
+import main.QuadTreeException;
+import main.RangeScanner;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+/**
+ * MortonQuadTree test cases, checked against PointQuadTree. 
+ * @author FrancescoA
+ *
+ */
+public class MortonQuadTreeTest {
+
+  private static List<String> sorted(List<AbstractNode<Integer>> nodes) {
+    List<String> strings = new ArrayList<String>();
+    for (AbstractNode<Integer> n : nodes) {
+      strings.add(n.toString());
+    }
+    Collections.sort(strings);
+    return strings;
+  }
+
+  @Test
+  public void shouldFindTheSameNodesAsPointQuadTree() {
+    Random random = new Random(16);
+    PointQuadTree<Integer> qt = new PointQuadTree<Integer>(-50,20,1000,700);
+    for (int i = 0; i < 5000; i++) {
+      // Half of the points are packed into a small corner, so queries skip long runs.
+      int x = i % 2 == 0 ? random.nextInt(1000) - 50 : random.nextInt(40) - 50;
+      qt.insert(new PointNode<Integer>(x, 20 + random.nextInt(700), i));
+    }
+    MortonQuadTree<Integer> morton = MortonQuadTree.build(qt);
+    assertEquals(qt.getSize(), morton.getSize());
+    for (int i = 0; i < 200; i++) {
+      int x = random.nextInt(1100) - 100, y = random.nextInt(800);
+      int w = random.nextInt(i % 4 == 0 ? 800 : 60), h = random.nextInt(i % 4 == 0 ? 800 : 60);
+      Shape query = i % 3 == 0 ? new Ellipse2D.Double(x, y, w, h) : new Rectangle(x, y, w, h);
+      List<AbstractNode<Integer>> found = morton.queryRange(query);
+      assertEquals(sorted(qt.queryRange(query)), sorted(found));
+      assertTrue(morton.getVisitedOnLastSearch() >= found.size());
+    }
+    assertEquals(sorted(qt.getAllNodes()), sorted(morton.getAllNodes()));
+    assertEquals(qt.getSize(), morton.getVisitedOnLastSearch());
+  }
+
+  @Test
+  public void buildShouldSkipDuplicatesAndCheckBounds() {
+    List<PointNode<String>> nodes = new ArrayList<PointNode<String>>();
+    nodes.add(new PointNode<String>(5, 5, "first"));
+    nodes.add(new PointNode<String>(7, 3, "other"));
+    nodes.add(new PointNode<String>(5, 5, "second"));
+    MortonQuadTree<String> morton = MortonQuadTree.build(new Rectangle(0,0,10,10), nodes);
+    assertEquals(2, morton.getSize());
+    assertEquals("[first= (5, 5)]", morton.queryRange(new Rectangle(5,5,1,1)).toString());
+    nodes.add(new PointNode<String>(50, 5));
+    try {
+      MortonQuadTree.build(new Rectangle(0,0,10,10), nodes);
+      fail();
+    } catch (QuadTreeException e) {
+      // Expected.
+    }
+  }
+
+  @Test(expected = QuadTreeException.class)
+  public void buildShouldRejectBuckets() {
+    PointQuadTree<String> qt = new PointQuadTree<String>(0,0,100,100);
+    qt.setDuplicatePolicy(DuplicatePolicy.<String>bucket());
+    qt.insert(new PointNode<String>(5, 5, "a"));
+    qt.insert(new PointNode<String>(5, 5, "b"));
+    MortonQuadTree.build(qt);
+  }
+
+  @Test
+  public void visitorShouldGetPointsInMortonOrderAndStop() {
+    PointQuadTree<Integer> qt = new PointQuadTree<Integer>(0,0,8,8);
+    int value = 0;
+    for (int x = 0; x < 8; x++) {
+      for (int y = 0; y < 8; y++) {
+        qt.insert(new PointNode<Integer>(x, y, value++));
+      }
+    }
+    MortonQuadTree<Integer> morton = MortonQuadTree.build(qt);
+    final List<String> points = new ArrayList<String>();
+    assertTrue(morton.queryRange(1, 1, 2, 2, new PointVisitor<Integer>() {
+      @Override
+      public boolean visit(int x, int y, Integer value) {
+        return points.add(x + "," + y);
+      }
+    }));
+    // Z order: within each quadrant, x varies first.
+    assertEquals("[1,1, 2,1, 1,2, 2,2]", points.toString());
+    points.clear();
+    assertFalse(morton.queryRange(0, 0, 7, 7, new PointVisitor<Integer>() {
+      @Override
+      public boolean visit(int x, int y, Integer value) {
+        points.add(x + "," + y);
+        return points.size() < 3;
+      }
+    }));
+    assertEquals(3, points.size());
+  }
+
+  @Test
+  public void blockScansShouldFindTheSameNodesInTheSameOrder() {
+    Random random = new Random(25);
+    PointQuadTree<Integer> qt = new PointQuadTree<Integer>(-50,20,1000,700);
+    for (int i = 0; i < 5000; i++) {
+      int x = i % 2 == 0 ? random.nextInt(1000) - 50 : random.nextInt(40) - 50;
+      qt.insert(new PointNode<Integer>(x, 20 + random.nextInt(700), i));
+    }
+    MortonQuadTree<Integer> morton = MortonQuadTree.build(qt);
+    for (int i = 0; i < 200; i++) {
+      int x = random.nextInt(1100) - 100, y = random.nextInt(800);
+      int w = random.nextInt(i % 4 == 0 ? 800 : 60), h = random.nextInt(i % 4 == 0 ? 800 : 60);
+      Shape query = i % 3 == 0 ? new Ellipse2D.Double(x, y, w, h) : new Rectangle(x, y, w, h);
+      morton.setScanner(null);
+      String expected = morton.queryRange(query).toString();
+      morton.setScanner(RangeScanner.SCALAR);
+      assertEquals(expected, morton.queryRange(query).toString());
+      morton.setScanner(RangeScanner.vector());
+      assertEquals(expected, morton.queryRange(query).toString());
+    }
+    final List<String> points = new ArrayList<String>();
+    assertFalse(morton.queryRange(0, 0, 500, 500, new PointVisitor<Integer>() {
+      @Override
+      public boolean visit(int x, int y, Integer value) {
+        points.add(x + "," + y);
+        return points.size() < 100;
+      }
+    }));
+    assertEquals(100, points.size());
+  }
+
+  @Test
+  public void vectorScannerShouldMatchScalarScanner() {
+    Random random = new Random(26);
+    int[] xs = new int[1000], ys = new int[1000];
+    for (int i = 0; i < xs.length; i++) {
+      // Some coordinates at the extremes, where a difference with the range overflows.
+      xs[i] = i % 50 == 0 ? Integer.MIN_VALUE + i : random.nextInt(200) - 100;
+      ys[i] = i % 70 == 0 ? Integer.MAX_VALUE - i : random.nextInt(200) - 100;
+    }
+    RangeScanner vector = RangeScanner.vector();
+    int[] expected = new int[xs.length], hits = new int[xs.length];
+    for (int i = 0; i < 500; i++) {
+      int from = random.nextInt(xs.length), to = from + random.nextInt(xs.length - from + 1);
+      int minX = random.nextInt(220) - 110, minY = random.nextInt(220) - 110;
+      int maxX = i % 10 == 0 ? Integer.MAX_VALUE : minX + random.nextInt(150);
+      int maxY = i % 10 == 1 ? minY - 1 : minY + random.nextInt(150);
+      int count = RangeScanner.SCALAR.scan(xs, ys, from, to, minX, minY, maxX, maxY, expected);
+      assertEquals(count, vector.scan(xs, ys, from, to, minX, minY, maxX, maxY, hits));
+      for (int k = 0; k < count; k++) {
+        assertEquals(expected[k], hits[k]);
+      }
+    }
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void shouldBeReadOnly() {
+    MortonQuadTree.build(new PointQuadTree<String>(0,0,100,100)).insert(new PointNode<String>(1,1));
+  }
+
+  public static void main(String[] args) {
+    System.out.println("Starting tests");
+    Result result = JUnitCore.runClasses(MortonQuadTreeTest.class);
+    for (Failure failure : result.getFailures()) {
+      System.out.println(failure.toString());
+    }
+    System.out.println("Tests ended");
+  }
+
+}
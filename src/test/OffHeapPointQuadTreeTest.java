@@ -0,0 +1,102 @@
+package test;
+
+import static org.junit.Assert.*;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Random;
+import main.AbstractQuadTree;
+import main.InsertOutcome;
+import main.OffHeapPointQuadTree;
+import main.PointNode;
+import main.PointQuadTree;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+/**
+ * OffHeapPointQuadTree test cases.
+ * @author FrancescoA
+ *
+ */
+public class OffHeapPointQuadTreeTest extends AbstractQuadTreeTest {
+
+  @Override
+  protected AbstractQuadTree<Integer> createQuadTree(int x, int y, int width, int height) {
+    return new OffHeapPointQuadTree<Integer>(x, y, width, height);
+  }
+
+  @Test
+  public void shouldMatchPointQuadTreeAcrossChunks() {
+    // 50 nodes per chunk, rounded up to 64, so the tree spans dozens of chunks.
+    OffHeapPointQuadTree<Integer> offHeap = new OffHeapPointQuadTree<Integer>(new Rectangle(0,0,500,500), 50);
+    PointQuadTree<Integer> plain = new PointQuadTree<Integer>(0,0,500,500);
+    Random random = new Random(21);
+    for (int i = 0; i < 3000; i++) {
+      Point p = new Point(random.nextInt(500), random.nextInt(500));
+      if (plain.get(p) == null) {
+        plain.insert(new PointNode<Integer>(p, i));
+        assertTrue(offHeap.insert(p.x, p.y, i));
+      } else {
+        assertFalse(offHeap.insert(p.x, p.y, i));
+      }
+    }
+    assertEquals(plain.getSize(), offHeap.getSize());
+    assertEquals((plain.getSize() + 63) / 64 * 64 * 32L, offHeap.getOffHeapBytes());
+    assertEquals(plain.getRoot().toString(), offHeap.getRoot().toString());
+    for (int i = 0; i < 100; i++) {
+      Rectangle query = new Rectangle(random.nextInt(500), random.nextInt(500), random.nextInt(200), random.nextInt(200));
+      assertEquals(plain.queryRange(query).toString(), offHeap.queryRange(query).toString());
+      assertEquals(plain.getVisitedOnLastSearch(), offHeap.getVisitedOnLastSearch());
+    }
+  }
+
+  @Test
+  public void valuesShouldSurviveTheRoundTrip() {
+    OffHeapPointQuadTree<Object> qt = new OffHeapPointQuadTree<Object>(0,0,10,10);
+    qt.insert(new Point(1,1), Integer.MIN_VALUE);
+    qt.insert(new Point(2,2), -1);
+    qt.insert(new Point(3,3), null);
+    qt.insert(new Point(4,4), "four");
+    qt.insert(new Point(5,5), 5L);
+    assertEquals("[-2147483648= (1, 1), -1= (2, 2), (3, 3), four= (4, 4), 5= (5, 5)]", qt.getAllNodes().toString());
+    assertEquals(Integer.class, ((PointNode<Object>) qt.getAllNodes().get(0)).getValue().getClass());
+    assertEquals(Long.class, ((PointNode<Object>) qt.getAllNodes().get(4)).getValue().getClass());
+  }
+
+  @Test
+  public void insertShouldReportItsOutcome() {
+    OffHeapPointQuadTree<String> qt = new OffHeapPointQuadTree<String>(0,0,10,10);
+    assertEquals(InsertOutcome.INSERTED, qt.insert(new Point(1,1), "a"));
+    assertEquals(InsertOutcome.REJECTED, qt.insert(new Point(1,1), "b"));
+    assertEquals(1, qt.getSize());
+  }
+
+  @Test
+  public void clearShouldFreeTheChunks() {
+    OffHeapPointQuadTree<String> qt = new OffHeapPointQuadTree<String>(new Rectangle(0,0,100,100), 16);
+    for (int i = 0; i < 100; i++) {
+      qt.insert(i, i, "p" + i);
+    }
+    assertEquals(7 * 16 * 32, qt.getOffHeapBytes());
+    qt.clear();
+    assertEquals(0, qt.getSize());
+    assertEquals(0, qt.getOffHeapBytes());
+    assertNull(qt.getRoot());
+    assertTrue(qt.getAllNodes().isEmpty());
+    // The tree allocates new chunks as it fills up again.
+    qt.insert(7, 7, "again");
+    assertEquals("[again= (7, 7)]", qt.getAllNodes().toString());
+    assertEquals(16 * 32, qt.getOffHeapBytes());
+  }
+
+  public static void main(String[] args) {
+    System.out.println("Starting tests");
+    Result result = JUnitCore.runClasses(OffHeapPointQuadTreeTest.class);
+    for (Failure failure : result.getFailures()) {
+      System.out.println(failure.toString());
+    }
+    System.out.println("Tests ended");
+  }
+
+}
@@ -0,0 +1,195 @@
+package test;
+
+import static org.junit.Assert.*;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import main.AbstractNode;
+import main.AbstractQuadTree;
+import main.Aggregator;
+import main.DuplicatePolicy;
+import main.InsertOutcome;
+import main.PersistentPointQuadTree;
+import main.PointNode;
+import main.PointQuadTree;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+/**
+ * PersistentPointQuadTree test cases.
+ * @author FrancescoA
+ *
+ */
+public class PersistentPointQuadTreeTest extends AbstractQuadTreeTest {
+
+  @Override
+  protected AbstractQuadTree<Integer> createQuadTree(int x, int y, int width, int height) {
+    return new PersistentPointQuadTree<Integer>(x, y, width, height);
+  }
+
+  @Test
+  public void snapshotsShouldNotSeeLaterWrites() {
+    PersistentPointQuadTree<Integer> qt = new PersistentPointQuadTree<Integer>(0,0,100,100);
+    qt.insert(new PointNode<Integer>(50,50,1));
+    qt.insert(new PointNode<Integer>(20,20,2));
+    qt.insert(new PointNode<Integer>(10,10,3));
+    PersistentPointQuadTree<Integer> snapshot = qt.snapshot();
+    qt.insert(new PointNode<Integer>(70,70,4));
+    assertNotNull(qt.remove(new Point(20,20)));
+    assertTrue(qt.move(new Point(50,50), new Point(60,40)));
+    assertEquals("[3= (10, 10), 1= (60, 40), 4= (70, 70)]", sorted(qt.getAllNodes()));
+    assertEquals(3, snapshot.getSize());
+    assertEquals("[3= (10, 10), 2= (20, 20), 1= (50, 50)]", sorted(snapshot.getAllNodes()));
+    assertEquals(3, snapshot.countRange(0, 0, 100, 100));
+    qt.clear();
+    assertEquals(0, qt.getSize());
+    assertEquals(3, snapshot.getAllNodes().size());
+    // Writes to a snapshot do not reach the tree it was taken from either.
+    snapshot.insert(new PointNode<Integer>(90,90,5));
+    assertEquals(4, snapshot.getSize());
+    assertEquals(0, qt.getAllNodes().size());
+  }
+
+  @Test
+  public void resolvedDuplicatesShouldNotChangeSnapshots() {
+    PersistentPointQuadTree<Integer> qt = new PersistentPointQuadTree<Integer>(0,0,100,100);
+    qt.setAggregator(Aggregator.SUM);
+    qt.insert(new PointNode<Integer>(50,50,1));
+    qt.insert(new PointNode<Integer>(20,20,2));
+    PersistentPointQuadTree<Integer> snapshot = qt.snapshot();
+    qt.setDuplicatePolicy(DuplicatePolicy.merge(Integer::sum));
+    assertEquals(InsertOutcome.MERGED, qt.insert(new PointNode<Integer>(20,20,5)));
+    qt.setDuplicatePolicy(DuplicatePolicy.<Integer>bucket());
+    assertEquals(InsertOutcome.BUCKETED, qt.insert(new PointNode<Integer>(50,50,3)));
+    assertEquals(2, qt.getSize());
+    assertEquals("[1= (50, 50), 7= (20, 20)]", qt.getAllNodes().toString());
+    assertEquals("[1, 3]", ((PointNode<Integer>) qt.get(new Point(50,50))).getValues().toString());
+    assertEquals(11.0, qt.aggregateRange(0, 0, 100, 100, Aggregator.SUM), 0);
+    assertEquals("[1= (50, 50), 2= (20, 20)]", snapshot.getAllNodes().toString());
+    assertEquals("[1]", ((PointNode<Integer>) snapshot.get(new Point(50,50))).getValues().toString());
+    assertEquals(3.0, snapshot.aggregateRange(0, 0, 100, 100, Aggregator.SUM), 0);
+  }
+
+  @Test
+  public void withShouldOnlyCopyThePathToTheNewNode() {
+    PersistentPointQuadTree<Integer> qt = new PersistentPointQuadTree<Integer>(0,0,1000,1000);
+    Random random = new Random(20);
+    for (int i = 0; i < 2000; i++) {
+      qt.insert(new PointNode<Integer>(random.nextInt(1000), random.nextInt(1000), i));
+    }
+    PersistentPointQuadTree<Integer> next = qt.with(new Point(500,501), -1);
+    assertEquals(qt.getSize() + 1, next.getSize());
+    assertNull(qt.get(new Point(500,501)));
+    assertNotNull(next.get(new Point(500,501)));
+    Map<AbstractNode<Integer>, Boolean> old = new IdentityHashMap<AbstractNode<Integer>, Boolean>();
+    for (AbstractNode<Integer> node : qt.getAllNodes()) {
+      old.put(node, true);
+    }
+    int copied = 0;
+    for (AbstractNode<Integer> node : next.getAllNodes()) {
+      if (!old.containsKey(node)) {
+        copied++;
+      }
+    }
+    // The new node and copies of its ancestors, which replace the originals in the new version.
+    assertTrue(copied <= next.getHeight());
+    Map<AbstractNode<Integer>, Boolean> kept = new IdentityHashMap<AbstractNode<Integer>, Boolean>();
+    for (AbstractNode<Integer> node : next.getAllNodes()) {
+      kept.put(node, true);
+    }
+    int replaced = 0;
+    for (AbstractNode<Integer> node : old.keySet()) {
+      if (!kept.containsKey(node)) {
+        replaced++;
+      }
+    }
+    assertEquals(copied - 1, replaced);
+  }
+
+  @Test
+  public void versionsShouldMatchAPointQuadTreeAtTheTimeOfTheirSnapshot() {
+    Random random = new Random(21);
+    PersistentPointQuadTree<Integer> persistent = new PersistentPointQuadTree<Integer>(0,0,200,200);
+    PointQuadTree<Integer> plain = new PointQuadTree<Integer>(0,0,200,200);
+    persistent.setAggregator(Aggregator.SUM);
+    plain.setAggregator(Aggregator.SUM);
+    List<PersistentPointQuadTree<Integer>> snapshots = new ArrayList<PersistentPointQuadTree<Integer>>();
+    List<String> expected = new ArrayList<String>();
+    Rectangle query = new Rectangle(40,40,120,120);
+    for (int i = 0; i < 3000; i++) {
+      Point p = new Point(random.nextInt(200), random.nextInt(200));
+      switch (random.nextInt(4)) {
+        case 0:
+          assertEquals(String.valueOf(plain.remove(p)), String.valueOf(persistent.remove(p)));
+          break;
+        case 1:
+          Point to = new Point(random.nextInt(200), random.nextInt(200));
+          assertEquals(plain.move(p, to), persistent.move(p, to));
+          break;
+        default:
+          if (plain.get(p) == null) {
+            plain.insert(new PointNode<Integer>(p, i));
+            persistent.insert(new PointNode<Integer>(new Point(p), i));
+          }
+      }
+      if (i % 100 == 0) {
+        snapshots.add(persistent.snapshot());
+        expected.add(sorted(plain.queryRange(query)) + " " + plain.countRange(query) + " " + plain.aggregateRange(query, Aggregator.SUM));
+      }
+    }
+    assertEquals(plain.getSize(), persistent.getSize());
+    assertEquals(sorted(plain.getAllNodes()), sorted(persistent.getAllNodes()));
+    for (int i = 0; i < snapshots.size(); i++) {
+      PersistentPointQuadTree<Integer> snapshot = snapshots.get(i);
+      assertEquals(expected.get(i), sorted(snapshot.queryRange(query)) + " " + snapshot.countRange(query)
+          + " " + snapshot.aggregateRange(query, Aggregator.SUM));
+    }
+  }
+
+  private static String sorted(List<AbstractNode<Integer>> nodes) {
+    List<AbstractNode<Integer>> copy = new ArrayList<AbstractNode<Integer>>(nodes);
+    Collections.sort(copy);
+    return copy.toString();
+  }
+
+  @Test
+  public void moveShouldKeepTheBucket() {
+    PersistentPointQuadTree<String> qt = new PersistentPointQuadTree<String>(0,0,100,100);
+    qt.setDuplicatePolicy(DuplicatePolicy.<String>bucket());
+    qt.insert(new Point(50,50), "a");
+    qt.insert(new Point(50,50), "b");
+    qt.insert(new Point(20,20), "c");
+    PersistentPointQuadTree<String> snapshot = qt.snapshot();
+    assertTrue(qt.move(new Point(50,50), new Point(70,70)));
+    assertEquals("[a, b]", ((PointNode<String>) qt.get(new Point(70,70))).getValues().toString());
+    assertEquals("[a, b]", ((PointNode<String>) snapshot.get(new Point(50,50))).getValues().toString());
+  }
+
+  @Test
+  public void insertingByLocationShouldNotChangeSnapshots() {
+    PersistentPointQuadTree<Integer> qt = new PersistentPointQuadTree<Integer>(0,0,100,100);
+    qt.insert(new Point(50,50), 1);
+    PersistentPointQuadTree<Integer> snapshot = qt.snapshot();
+    assertEquals(InsertOutcome.INSERTED, qt.insert(new Point(60,60), 2));
+    assertEquals(2, qt.getAllNodes().size());
+    assertEquals(1, snapshot.getSize());
+    assertEquals("[1= (50, 50)]", snapshot.getAllNodes().toString());
+  }
+
+  public static void main(String[] args) {
+    System.out.println("Starting tests");
+    Result result = JUnitCore.runClasses(PersistentPointQuadTreeTest.class);
+    for (Failure failure : result.getFailures()) {
+      System.out.println(failure.toString());
+    }
+    System.out.println("Tests ended");
+  }
+
+}
@@ -1,12 +1,35 @@
 package test;
 
 import static org.junit.Assert.*;
+import java.awt.Point;
+import java.awt.Polygon;
 import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import main.AbstractNode;
+import main.AbstractQuadTree;
+import main.Aggregator;
+import main.DuplicatePolicy;
+import main.InsertOutcome;
+import main.NodePool;
+import main.NodeVisitor;
 import main.PointNode;
 import main.PointQuadTree;
 import main.QuadTreeException;
+import main.QueryListener;
+import main.QueryResult;
+import main.QueryStats;
+import main.StructureReport;
 import org.junit.Test;
 import org.junit.runner.JUnitCore;
 import org.junit.runner.Result;
@@ -17,7 +40,12 @@ import org.junit.runner.notification.Failure;
  * @author FrancescoA
  *
  */
-public class QuadTreeTest {
+public class QuadTreeTest extends AbstractQuadTreeTest {
+
+  @Override
+  protected AbstractQuadTree<Integer> createQuadTree(int x, int y, int width, int height) {
+    return new PointQuadTree<Integer>(x, y, width, height);
+  }
 
   private PointQuadTree getQuadTree() {
     PointQuadTree qt = new PointQuadTree(0,0,100,100);
@@ -65,6 +93,62 @@ public class QuadTreeTest {
     assertEquals(1,qt.getSize());
   }
   
+  @Test
+  public void duplicatePoliciesShouldResolveDuplicatesAndCountThem() {
+    PointQuadTree<Integer> qt = new PointQuadTree<Integer>(0,0,100,100);
+    assertEquals(InsertOutcome.INSERTED, qt.insert(new Point(5,5), 1));
+    assertEquals(InsertOutcome.REJECTED, qt.insert(new Point(5,5), 2));
+    assertEquals("[1= (5, 5)]", qt.getAllNodes().toString());
+    qt.setDuplicatePolicy(DuplicatePolicy.<Integer>replace());
+    assertEquals(InsertOutcome.REPLACED, qt.insert(new Point(5,5), 3));
+    assertEquals("[3= (5, 5)]", qt.getAllNodes().toString());
+    qt.setDuplicatePolicy(DuplicatePolicy.merge(Integer::sum));
+    assertEquals(InsertOutcome.MERGED, qt.insert(new Point(5,5), 4));
+    assertEquals("[7= (5, 5)]", qt.getAllNodes().toString());
+    qt.setDuplicatePolicy(DuplicatePolicy.<Integer>bucket());
+    assertEquals(InsertOutcome.BUCKETED, qt.insert(new Point(5,5), 5));
+    assertEquals(InsertOutcome.BUCKETED, qt.insert(new Point(5,5), 6));
+    assertEquals("[7, 5, 6]", ((PointNode<Integer>) qt.get(new Point(5,5))).getValues().toString());
+    assertEquals(1, qt.getSize());
+    assertEquals(1, qt.getInsertCount(InsertOutcome.INSERTED));
+    assertEquals(1, qt.getInsertCount(InsertOutcome.REJECTED));
+    assertEquals(2, qt.getInsertCount(InsertOutcome.BUCKETED));
+    assertEquals(5, qt.getDuplicates());
+  }
+  
+  @Test
+  public void duplicatesShouldUpdateTheAggregates() {
+    PointQuadTree<Integer> qt = new PointQuadTree<Integer>(0,0,100,100);
+    qt.setAggregator(Aggregator.SUM);
+    qt.setDuplicatePolicy(DuplicatePolicy.merge(Integer::sum));
+    Random random = new Random(23);
+    int[][] sums = new int[20][20];
+    for (int i = 0; i < 2000; i++) {
+      int x = random.nextInt(20), y = random.nextInt(20);
+      qt.insert(new Point(x, y), i);
+      sums[x][y] += i;
+    }
+    qt.setDuplicatePolicy(DuplicatePolicy.<Integer>bucket());
+    for (int i = 0; i < 500; i++) {
+      int x = random.nextInt(20), y = random.nextInt(20);
+      qt.insert(new Point(x, y), i);
+      sums[x][y] += i;
+    }
+    assertEquals(2500, qt.getInsertCount(InsertOutcome.INSERTED) + qt.getDuplicates());
+    for (int i = 0; i < 50; i++) {
+      int minX = random.nextInt(20), minY = random.nextInt(20);
+      int maxX = minX + random.nextInt(20 - minX), maxY = minY + random.nextInt(20 - minY);
+      long expected = 0;
+      for (int x = minX; x <= maxX; x++) {
+        for (int y = minY; y <= maxY; y++) {
+          expected += sums[x][y];
+        }
+      }
+      Double sum = qt.aggregateRange(minX, minY, maxX, maxY, Aggregator.SUM);
+      assertEquals(expected, sum == null ? 0 : sum, 0);
+    }
+  }
+  
   @Test
   public void shouldNotGiveOutOfBoundException() {
     PointQuadTree qt = new PointQuadTree(0,0,100,100);
@@ -131,6 +215,615 @@ public class QuadTreeTest {
     assertEquals(true, queryOneVisits < queryTwoVisits);
   }
   
+  @Test
+  public void testVisitorQuery() {
+    PointQuadTree qt = getQuadTree();
+    Rectangle query = new Rectangle(50,70);
+    final List<AbstractNode> visited = new ArrayList<AbstractNode>();
+    boolean completed = qt.queryRange(query, new NodeVisitor() {
+      @Override
+      public boolean visit(AbstractNode node) {
+        return visited.add(node);
+      }
+    });
+    assertTrue(completed);
+    assertEquals(qt.queryRange(query).toString(), visited.toString());
+  }
+  
+  @Test
+  public void testVisitorQueryInclusiveBounds() {
+    PointQuadTree qt = getQuadTree();
+    final List<AbstractNode> visited = new ArrayList<AbstractNode>();
+    qt.queryRange(9, 32, 39, 55, new NodeVisitor() {
+      @Override
+      public boolean visit(AbstractNode node) {
+        return visited.add(node);
+      }
+    });
+    Collections.sort(visited);
+    assertEquals("[(9, 32), (9, 35), (21, 55), (39, 54)]", visited.toString());
+  }
+  
+  @Test
+  public void testVisitorEarlyTermination() {
+    PointQuadTree qt = getQuadTree();
+    final List<AbstractNode> visited = new ArrayList<AbstractNode>();
+    boolean completed = qt.queryRange(new Rectangle(50,70), new NodeVisitor() {
+      @Override
+      public boolean visit(AbstractNode node) {
+        visited.add(node);
+        return visited.size() < 3;
+      }
+    });
+    assertFalse(completed);
+    assertEquals(3, visited.size());
+  }
+  
+  @Test
+  public void bulkLoadShouldMatchInsertAll() {
+    PointQuadTree qt = getQuadTree();
+    PointQuadTree bulk = new PointQuadTree(0,0,100,100);
+    bulk.bulkLoad((PointNode[]) getQuadTree().getAllNodes().toArray(new PointNode[0]));
+    assertEquals(qt.getSize(), bulk.getSize());
+    Rectangle query = new Rectangle(50,70);
+    List<PointNode> expected = qt.queryRange(query);
+    List<PointNode> results = bulk.queryRange(query);
+    Collections.sort(expected);
+    Collections.sort(results);
+    assertEquals(expected.toString(), results.toString());
+  }
+  
+  @Test
+  public void bulkLoadShouldBalanceSortedInput() {
+    int n = 10000;
+    PointNode[] nodes = new PointNode[n];
+    for (int i = 0; i < n; i++) {
+      nodes[i] = new PointNode(i, i);
+    }
+    PointQuadTree qt = new PointQuadTree(0,0,n,n);
+    qt.bulkLoad(nodes);
+    assertEquals(n, qt.getSize());
+    assertTrue(qt.getHeight() <= 14);
+    assertEquals(11, qt.queryRange(new Rectangle(100,100,11,11)).size());
+  }
+  
+  @Test
+  public void bulkLoadShouldKeepExistingNodesAndSkipDuplicates() {
+    PointQuadTree qt = new PointQuadTree(0,0,100,100);
+    qt.insert(new PointNode(5,5,"old"));
+    qt.bulkLoad(new PointNode[] {new PointNode(5,5,"new"), new PointNode(6,6,"a"), new PointNode(6,6,"b")});
+    assertEquals(2, qt.getSize());
+    List<PointNode> all = qt.getAllNodes();
+    Collections.sort(all);
+    assertEquals("[old= (5, 5), a= (6, 6)]", all.toString());
+  }
+  
+  @Test
+  public void testNearest() {
+    PointQuadTree qt = getQuadTree();
+    assertEquals("[(48, 47), (57, 44), (39, 54)]", qt.nearest(50,50,3).toString());
+    assertEquals("[(0, 0)]", qt.nearest(-5,-5,1).toString());
+    assertEquals(qt.getSize(), qt.nearest(50,50,100).size());
+    assertEquals(0, qt.nearest(50,50,0).size());
+  }
+  
+  @Test
+  public void testWithinDistance() {
+    PointQuadTree qt = getQuadTree();
+    assertEquals("[(7, 32), (9, 32)]", qt.withinDistance(8,32,3).toString());
+    assertEquals(0, qt.withinDistance(30,20,1).size());
+  }
+  
+  @Test
+  public void nearestShouldMatchBruteForce() {
+    Random random = new Random(11);
+    PointQuadTree<Integer> qt = new PointQuadTree<Integer>(0,0,1000,1000);
+    for (int i = 0; i < 3000; i++) {
+      qt.insert(new PointNode<Integer>(random.nextInt(1000), random.nextInt(1000), i));
+    }
+    List<AbstractNode<Integer>> all = qt.getAllNodes();
+    for (int i = 0; i < 20; i++) {
+      final int x = random.nextInt(1000);
+      final int y = random.nextInt(1000);
+      List<AbstractNode<Integer>> nearest = qt.nearest(x, y, 10);
+      assertTrue(qt.getVisitedOnLastSearch() < qt.getSize() / 4);
+      long tenth = distanceSq(nearest.get(9), x, y);
+      int closer = 0;
+      for (AbstractNode<Integer> n : all) {
+        if (distanceSq(n, x, y) < tenth) {
+          closer++;
+        }
+      }
+      assertTrue(closer < 10);
+      for (int j = 1; j < nearest.size(); j++) {
+        assertTrue(distanceSq(nearest.get(j - 1), x, y) <= distanceSq(nearest.get(j), x, y));
+      }
+      int within = 0;
+      for (AbstractNode<Integer> n : all) {
+        if (distanceSq(n, x, y) <= 50 * 50) {
+          within++;
+        }
+      }
+      assertEquals(within, qt.withinDistance(x, y, 50).size());
+    }
+  }
+  
+  private static long distanceSq(AbstractNode<?> n, int x, int y) {
+    long dx = n.getLocation().x - x;
+    long dy = n.getLocation().y - y;
+    return dx * dx + dy * dy;
+  }
+  
+  @Test
+  public void testRemove() {
+    PointQuadTree qt = getQuadTree();
+    int size = qt.getSize();
+    assertNull(qt.remove(new Point(50,50)));
+    assertEquals("(1, 2)", qt.remove(new Point(1,2)).toString());
+    assertEquals("(39, 54)", qt.remove(new Point(39,54)).toString());
+    assertEquals(size - 2, qt.getSize());
+    assertEquals(size - 2, qt.getAllNodes().size());
+    assertNull(qt.get(new Point(1,2)));
+    assertNotNull(qt.get(new Point(48,47)));
+    List<PointNode> results = qt.queryRange(new Rectangle(50,70));
+    Collections.sort(results);
+    assertEquals("[(0, 0), (7, 32), (9, 32), (9, 35), (12, 3), (17, 8), (21, 55), (39, 30), (48, 47)]", results.toString());
+  }
+  
+  @Test
+  public void testMove() {
+    PointQuadTree qt = getQuadTree();
+    int size = qt.getSize();
+    assertTrue(qt.move(new Point(53,81), new Point(54,82)));
+    assertTrue(qt.move(new Point(1,2), new Point(99,99)));
+    assertFalse(qt.move(new Point(50,50), new Point(51,51)));
+    assertFalse(qt.move(new Point(0,0), new Point(100,100)));
+    assertEquals(size, qt.getSize());
+    assertNull(qt.get(new Point(1,2)));
+    assertEquals("(99, 99)", qt.get(new Point(99,99)).toString());
+    assertEquals("(54, 82)", qt.get(new Point(54,82)).toString());
+    assertEquals(size, qt.getAllNodes().size());
+  }
+  
+  @Test
+  public void removeAndMoveShouldMatchBruteForce() {
+    Random random = new Random(9);
+    PointQuadTree<Integer> qt = new PointQuadTree<Integer>(0,0,200,200);
+    List<Point> points = new ArrayList<Point>();
+    for (int i = 0; i < 2000; i++) {
+      Point p = new Point(random.nextInt(200), random.nextInt(200));
+      if (!points.contains(p)) {
+        points.add(p);
+        qt.insert(p, i);
+      }
+    }
+    for (int i = 0; i < 1000; i++) {
+      Point p = points.get(random.nextInt(points.size()));
+      Point to = new Point(Math.min(200, Math.max(0, p.x + random.nextInt(11) - 5)), Math.min(200, Math.max(0, p.y + random.nextInt(11) - 5)));
+      if (i % 3 == 0) {
+        assertNotNull(qt.remove(p));
+        points.remove(p);
+      } else if (qt.move(p, to)) {
+        points.set(points.indexOf(p), to);
+      } else {
+        assertTrue(points.contains(to));
+      }
+    }
+    assertEquals(points.size(), qt.getSize());
+    for (int i = 0; i < 20; i++) {
+      Rectangle query = new Rectangle(random.nextInt(200), random.nextInt(200), random.nextInt(80), random.nextInt(80));
+      int expected = 0;
+      for (Point p : points) {
+        if (query.contains(p)) {
+          expected++;
+        }
+      }
+      assertEquals(expected, qt.queryRange(query).size());
+    }
+  }
+  
+  @Test
+  public void listenerShouldReceiveStatsOfEveryQuery() {
+    PointQuadTree qt = getQuadTree();
+    final List<QueryStats> stats = new ArrayList<QueryStats>();
+    qt.setQueryListener(new QueryListener() {
+      @Override
+      public void queryCompleted(QueryStats s) {
+        stats.add(s);
+      }
+    });
+    Rectangle query = new Rectangle(5, 30, 40, 30);
+    List results = qt.queryRange(query);
+    assertEquals(1, stats.size());
+    QueryStats range = stats.get(0);
+    assertEquals(QueryStats.Type.RANGE, range.getType());
+    assertEquals(results.size(), range.getResults());
+    assertEquals(qt.getVisitedOnLastSearch(), range.getVisited());
+    assertTrue(range.getPruned() > 0);
+    assertTrue(range.getVisited() + range.getPruned() <= qt.getSize());
+    assertTrue(range.getMaxDepth() >= 1 && range.getMaxDepth() <= qt.getHeight());
+    
+    final int[] visits = new int[1];
+    qt.queryRange(query, new NodeVisitor() {
+      @Override
+      public boolean visit(AbstractNode node) {
+        return ++visits[0] < 2;
+      }
+    });
+    assertEquals(2, stats.size());
+    assertEquals(QueryStats.Type.VISITOR, stats.get(1).getType());
+    assertEquals(2, stats.get(1).getResults());
+    
+    qt.setQueryListener(null);
+    qt.queryRange(query);
+    assertEquals(2, stats.size());
+  }
+  
+  @Test
+  public void rectangleAndShapeQueriesShouldBeSearchedAlike() {
+    PointQuadTree qt = getQuadTree();
+    final List<QueryStats> stats = new ArrayList<QueryStats>();
+    qt.setQueryListener(new QueryListener() {
+      @Override
+      public void queryCompleted(QueryStats s) {
+        stats.add(s);
+      }
+    });
+    Rectangle query = new Rectangle(5, 30, 40, 30);
+    List rectangle = qt.queryRange(query);
+    List shape = qt.queryRange(new Rectangle2D.Double(5, 30, 40, 30));
+    assertEquals(rectangle, shape);
+    assertEquals(2, stats.size());
+    assertEquals(stats.get(0).getVisited(), stats.get(1).getVisited());
+    assertEquals(stats.get(0).getPruned(), stats.get(1).getPruned());
+    assertEquals(stats.get(0).getMaxDepth(), stats.get(1).getMaxDepth());
+    
+    qt.setQueryListener(null);
+    assertEquals(rectangle, qt.queryRange(query));
+    assertEquals(stats.get(0).getVisited(), qt.getVisitedOnLastSearch());
+  }
+  
+  @Test
+  public void parallelQueryShouldMatchSequentialQuery() {
+    Random random = new Random(11);
+    PointQuadTree<Integer> qt = new PointQuadTree<Integer>(0,0,1000,1000);
+    for (int i = 0; qt.getSize() < 50000; i++) {
+      Point p = new Point(random.nextInt(1000), random.nextInt(1000));
+      if (qt.get(p) == null) {
+        qt.insert(p, i);
+      }
+    }
+    // An explicit pool, because the common pool has a single thread on a single-core machine. 
+    ForkJoinPool pool = new ForkJoinPool(4);
+    final List<QueryStats> stats = new ArrayList<QueryStats>();
+    for (int i = 0; i < 20; i++) {
+      Rectangle query = new Rectangle(random.nextInt(1000), random.nextInt(1000), random.nextInt(1000), random.nextInt(1000));
+      QueryResult<Integer> sequential = qt.query(query);
+      QueryResult<Integer> parallel = qt.parallelQuery(query, pool);
+      assertEquals(sequential.getNodes(), parallel.getNodes());
+      assertEquals(sequential.getVisited(), parallel.getVisited());
+    }
+    qt.setQueryListener(new QueryListener() {
+      @Override
+      public void queryCompleted(QueryStats s) {
+        stats.add(s);
+      }
+    });
+    Rectangle query = new Rectangle(100, 200, 500, 400);
+    qt.query(query);
+    qt.parallelQuery(query, pool);
+    pool.shutdown();
+    assertEquals(2, stats.size());
+    assertEquals(stats.get(0).getResults(), stats.get(1).getResults());
+    assertEquals(stats.get(0).getPruned(), stats.get(1).getPruned());
+    assertEquals(stats.get(0).getMaxDepth(), stats.get(1).getMaxDepth());
+  }
+  
+  @Test
+  public void queryRangesShouldMatchSingleQueries() {
+    Random random = new Random(12);
+    PointQuadTree<Integer> qt = new PointQuadTree<Integer>(0,0,500,500);
+    for (int i = 0; qt.getSize() < 5000; i++) {
+      Point p = new Point(random.nextInt(500), random.nextInt(500));
+      if (qt.get(p) == null) {
+        qt.insert(p, i);
+      }
+    }
+    List<Rectangle> tiles = new ArrayList<Rectangle>();
+    for (int tx = 0; tx < 8; tx++) {
+      for (int ty = 0; ty < 8; ty++) {
+        tiles.add(new Rectangle(100 + 25 * tx, 150 + 25 * ty, 25, 25));
+      }
+    }
+    tiles.add(new Rectangle(0, 0, 501, 501));
+    tiles.add(new Rectangle(40, 40, 0, 10));
+    int single = 0;
+    List<List<AbstractNode<Integer>>> batch = qt.queryRanges(tiles);
+    int batchVisited = qt.getVisitedOnLastSearch();
+    assertEquals(tiles.size(), batch.size());
+    for (int i = 0; i < tiles.size(); i++) {
+      assertEquals(qt.queryRange(tiles.get(i)), batch.get(i));
+      single += qt.getVisitedOnLastSearch();
+    }
+    assertEquals(5000, batch.get(64).size());
+    assertTrue(batch.get(65).isEmpty());
+    assertTrue(batchVisited <= qt.getSize());
+    assertTrue(batchVisited < single);
+  }
+  
+  @Test
+  public void queryStreamShouldMatchQuery() {
+    Random random = new Random(13);
+    PointQuadTree<Integer> qt = new PointQuadTree<Integer>(0,0,500,500);
+    for (int i = 0; qt.getSize() < 5000; i++) {
+      Point p = new Point(random.nextInt(500), random.nextInt(500));
+      if (qt.get(p) == null) {
+        qt.insert(p, i);
+      }
+    }
+    for (int i = 0; i < 20; i++) {
+      Shape query = i % 2 == 0 
+          ? new Rectangle(random.nextInt(500), random.nextInt(500), random.nextInt(300), random.nextInt(300)) 
+          : new Ellipse2D.Double(random.nextInt(500), random.nextInt(500), random.nextInt(300), random.nextInt(300));
+      List<AbstractNode<Integer>> expected = qt.queryRange(query);
+      assertEquals(expected, qt.queryStream(query).collect(Collectors.toList()));
+      assertEquals(expected, qt.queryStream(query).parallel().collect(Collectors.toList()));
+      List<AbstractNode<Integer>> iterated = new ArrayList<AbstractNode<Integer>>();
+      for (Iterator<AbstractNode<Integer>> it = qt.queryIterator(query); it.hasNext();) {
+        iterated.add(it.next());
+      }
+      assertEquals(expected, iterated);
+      
+      // Splitting hands out prefixes, so the parts in split order are the whole result. 
+      Spliterator<AbstractNode<Integer>> rest = qt.queryStream(query).spliterator();
+      List<AbstractNode<Integer>> parts = new ArrayList<AbstractNode<Integer>>();
+      Spliterator<AbstractNode<Integer>> prefix;
+      while ((prefix = rest.trySplit()) != null) {
+        prefix.forEachRemaining(parts::add);
+      }
+      rest.forEachRemaining(parts::add);
+      assertEquals(expected, parts);
+    }
+  }
+  
+  @Test
+  public void queryStreamShouldStopEarly() {
+    PointQuadTree<Integer> qt = new PointQuadTree<Integer>(0,0,500,500);
+    for (int x = 0; x < 100; x++) {
+      for (int y = 0; y < 100; y++) {
+        qt.insert(new Point((x * 37) % 100, (y * 53) % 100), x);
+      }
+    }
+    final int[] tested = new int[1];
+    Shape everything = new Rectangle(0, 0, 500, 500) {
+      @Override
+      public boolean contains(Point2D p) {
+        tested[0]++;
+        return super.contains(p);
+      }
+    };
+    assertEquals(10, qt.queryStream(everything).limit(10).count());
+    assertEquals(10, tested[0]);
+  }
+  
+  @Test
+  public void countAndAggregateShouldMatchBruteForce() {
+    Random random = new Random(14);
+    PointQuadTree<Integer> qt = new PointQuadTree<Integer>(0,0,200,200);
+    qt.setAggregator(Aggregator.SUM);
+    List<PointNode<Integer>> nodes = new ArrayList<PointNode<Integer>>();
+    for (int i = 0; i < 2000; i++) {
+      PointNode<Integer> n = new PointNode<Integer>(random.nextInt(200), random.nextInt(200), i);
+      if (!nodes.contains(n)) {
+        nodes.add(n);
+      }
+      qt.insert(n);
+    }
+    assertAggregates(qt, nodes, random);
+    for (int i = 0; i < 600; i++) {
+      PointNode<Integer> n = nodes.get(random.nextInt(nodes.size()));
+      Point to = new Point(random.nextInt(200), random.nextInt(200));
+      if (i % 3 == 0) {
+        assertSame(n, qt.remove(n.getLocation()));
+        nodes.remove(n);
+      } else {
+        qt.move(n.getLocation(), to);
+      }
+    }
+    assertAggregates(qt, nodes, random);
+    List<AbstractNode<Integer>> more = new ArrayList<AbstractNode<Integer>>();
+    for (int i = 0; i < 1000; i++) {
+      PointNode<Integer> n = new PointNode<Integer>(random.nextInt(200), random.nextInt(200), -i);
+      if (!nodes.contains(n) && !more.contains(n)) {
+        more.add(n);
+        nodes.add(n);
+      }
+    }
+    qt.bulkLoad(more);
+    assertAggregates(qt, nodes, random);
+    // The root region lies within the range, so nothing is visited. 
+    assertEquals(nodes.size(), qt.countRange(-1000, -1000, 1000, 1000));
+    assertEquals(0, qt.getVisitedOnLastSearch());
+  }
+  
+  private static void assertAggregates(PointQuadTree<Integer> qt, List<PointNode<Integer>> nodes, Random random) {
+    for (int i = 0; i < 50; i++) {
+      Rectangle query = new Rectangle(random.nextInt(200) - 10, random.nextInt(200) - 10, random.nextInt(120), random.nextInt(120));
+      int count = 0;
+      double sum = 0;
+      Double max = null;
+      for (PointNode<Integer> n : nodes) {
+        if (query.contains(n.getLocation())) {
+          count++;
+          sum += n.getValue();
+          max = max == null ? n.getValue() : Math.max(max, n.getValue());
+        }
+      }
+      assertEquals(count, qt.countRange(query));
+      assertEquals(count == 0 ? null : sum, qt.aggregateRange(query, Aggregator.SUM));
+      assertEquals(max, qt.aggregateRange(query, Aggregator.MAX));
+    }
+  }
+  
+  @Test
+  public void shapeFastPathsShouldMatchGenericSearch() {
+    Random random = new Random(17);
+    PointQuadTree<Integer> qt = new PointQuadTree<Integer>(0,0,1000,1000);
+    for (int i = 0; i < 5000; i++) {
+      qt.insert(new PointNode<Integer>(random.nextInt(1000), random.nextInt(1000), i));
+    }
+    for (int i = 0; i < 50; i++) {
+      // Subclasses take the generic search. 
+      Rectangle rectangle = new Rectangle(random.nextInt(1000), random.nextInt(1000), random.nextInt(300), random.nextInt(300));
+      assertEquals(qt.queryRange(new Rectangle(rectangle) {}), qt.queryRange(rectangle));
+      int n = 3 + random.nextInt(8);
+      int cx = random.nextInt(1000), cy = random.nextInt(1000), size = 50 + random.nextInt(500);
+      int[] xs = new int[n], ys = new int[n];
+      for (int k = 0; k < n; k++) {
+        // A star-shaped, mostly concave, polygon around (cx, cy). 
+        double angle = 2 * Math.PI * k / n, r = (k % 2 == 0 ? 1 : 0.3 + random.nextDouble()) * size;
+        xs[k] = cx + (int) (r * Math.cos(angle));
+        ys[k] = cy + (int) (r * Math.sin(angle));
+      }
+      List<AbstractNode<Integer>> generic = qt.queryRange(new Polygon(xs, ys, n) {});
+      int genericVisited = qt.getVisitedOnLastSearch();
+      assertEquals(generic, qt.queryRange(new Polygon(xs, ys, n)));
+      assertTrue(qt.getVisitedOnLastSearch() <= genericVisited);
+    }
+    // Most of the tree lies inside, so most subtrees are taken whole. 
+    Polygon large = new Polygon(new int[] {-10, 1010, 1010, -10}, new int[] {-10, -10, 1010, 800}, 4);
+    assertEquals(qt.queryRange(new Polygon(large.xpoints, large.ypoints, 4) {}), qt.queryRange(large));
+    assertTrue(qt.getVisitedOnLastSearch() < qt.getSize() / 4);
+  }
+  
+  @Test
+  public void queryCircleShouldMatchWithinDistance() {
+    Random random = new Random(18);
+    PointQuadTree<Integer> qt = new PointQuadTree<Integer>(0,0,1000,1000);
+    for (int i = 0; i < 5000; i++) {
+      qt.insert(new PointNode<Integer>(random.nextInt(1000), random.nextInt(1000), i));
+    }
+    for (int i = 0; i < 50; i++) {
+      int x = random.nextInt(1200) - 100, y = random.nextInt(1200) - 100;
+      double radius = random.nextDouble() * (i % 5 == 0 ? 1000 : 100);
+      List<AbstractNode<Integer>> circle = qt.queryCircle(x, y, radius);
+      List<AbstractNode<Integer>> expected = qt.withinDistance(x, y, radius);
+      Collections.sort(circle);
+      Collections.sort(expected);
+      assertEquals(expected, circle);
+    }
+    assertEquals(qt.getSize(), qt.queryCircle(500, 500, 1000).size());
+    assertTrue(qt.getVisitedOnLastSearch() < 10);
+    assertEquals(0, qt.queryCircle(500, 500, -1).size());
+  }
+  
+  @Test
+  public void clearShouldEmptyTheTree() {
+    PointQuadTree<Integer> qt = new PointQuadTree<Integer>(0,0,100,100);
+    qt.clear();
+    qt.insert(new PointNode<Integer>(10,10,1));
+    qt.insert(new PointNode<Integer>(20,20,2));
+    qt.clear();
+    assertEquals(0, qt.getSize());
+    assertNull(qt.getRoot());
+    assertTrue(qt.getAllNodes().isEmpty());
+    qt.insert(new PointNode<Integer>(20,20,3));
+    assertEquals("[3= (20, 20)]", qt.getAllNodes().toString());
+  }
+  
+  @Test
+  public void rebuildsShouldRecycleTheNodesOfTheClearedTree() {
+    PointQuadTree<Integer> qt = new PointQuadTree<Integer>(0,0,1000,1000);
+    PointQuadTree<Integer> fresh = new PointQuadTree<Integer>(0,0,1000,1000);
+    NodePool<Integer> pool = new NodePool<Integer>();
+    qt.setAggregator(Aggregator.SUM);
+    fresh.setAggregator(Aggregator.SUM);
+    Random random = new Random(22);
+    int inserted = 0, largest = 0;
+    for (int round = 0; round < 3; round++) {
+      qt.clear(pool);
+      fresh.clear();
+      for (int i = 0; i < 2000; i++) {
+        int x = random.nextInt(1000), y = random.nextInt(1000);
+        if (fresh.get(new Point(x, y)) == null) {
+          qt.insert(pool.acquire(x, y, i));
+          fresh.insert(new PointNode<Integer>(x, y, i));
+        }
+      }
+      assertEquals(fresh.getSize(), qt.getSize());
+      inserted += qt.getSize();
+      largest = Math.max(largest, qt.getSize());
+      assertEquals(fresh.getAllNodes().toString(), qt.getAllNodes().toString());
+      assertEquals(fresh.countRange(0, 0, 500, 500), qt.countRange(0, 0, 500, 500));
+      assertEquals(fresh.aggregateRange(0, 0, 500, 500, Aggregator.SUM), qt.aggregateRange(0, 0, 500, 500, Aggregator.SUM));
+    }
+    // Every round reuses all the nodes of the one before, so only the largest round allocates.
+    assertEquals(largest, pool.getAllocated());
+    assertEquals(inserted - largest, pool.getRecycled());
+  }
+  
+  @Test
+  public void rebalancingShouldKeepSortedInsertsShallow() {
+    PointQuadTree<Integer> plain = new PointQuadTree<Integer>(0,0,5000,5000);
+    PointQuadTree<Integer> qt = new PointQuadTree<Integer>(0,0,5000,5000);
+    qt.setRebalancing(0.7, PointQuadTree.DEFAULT_REBUILD_LIMIT);
+    qt.setAggregator(Aggregator.SUM);
+    plain.setAggregator(Aggregator.SUM);
+    // Along the diagonal, where every node is NE of the one before: a chain without rebalancing. 
+    for (int i = 0; i < 3000; i++) {
+      plain.insert(new Point(i, i), i);
+      qt.insert(new Point(i, i), i);
+      assertTrue(qt.getHeight() <= Math.log(i + 1) / -Math.log(0.7) + 1);
+    }
+    assertEquals(3000, qt.getSize());
+    assertEquals(3000, plain.getHeight());
+    Random random = new Random(24);
+    StructureReport structure = qt.getStructure();
+    assertTrue(structure.getRebuilds() > 0);
+    assertTrue(structure.getImbalance() < 2);
+    for (int i = 0; i < 50; i++) {
+      Rectangle query = new Rectangle(random.nextInt(3000), random.nextInt(3000), random.nextInt(1000), random.nextInt(1000));
+      assertEquals(sorted(plain.queryRange(query)), sorted(qt.queryRange(query)));
+      assertEquals(plain.countRange(query.x, query.y, query.x + query.width, query.y + query.height), 
+          qt.countRange(query.x, query.y, query.x + query.width, query.y + query.height));
+      assertEquals(plain.aggregateRange(query, Aggregator.SUM), qt.aggregateRange(query, Aggregator.SUM));
+    }
+  }
+  
+  @Test
+  public void rebalancingShouldNotRebuildSubtreesOverTheLimit() {
+    PointQuadTree<Integer> qt = new PointQuadTree<Integer>(0,0,5000,5000);
+    qt.setRebalancing(0.7, 64);
+    for (int i = 0; i < 2000; i++) {
+      qt.insert(new Point(i, i), i);
+    }
+    StructureReport structure = qt.getStructure();
+    assertTrue(structure.getRebuilds() > 0);
+    assertTrue(structure.getRebuiltNodes() <= 64 * structure.getRebuilds());
+    assertEquals(2000, qt.getAllNodes().size());
+  }
+  
+  @Test
+  public void structureReportShouldDescribeTheShape() {
+    PointQuadTree qt = getQuadTree();
+    StructureReport structure = qt.getStructure();
+    assertEquals(qt.getSize(), structure.getSize());
+    assertEquals(qt.getHeight(), structure.getHeight());
+    int nodes = 0;
+    for (int count : structure.getDepthHistogram()) {
+      nodes += count;
+    }
+    assertEquals(qt.getSize(), nodes);
+    assertEquals(1, structure.getDepthHistogram()[0]);
+    int[] quadrants = structure.getQuadrantSizes();
+    assertEquals(qt.getSize() - 1, quadrants[0] + quadrants[1] + quadrants[2] + quadrants[3]);
+    // The root is (1, 2), so its NE quadrant holds the nodes at x >= 1 and y > 2. 
+    assertEquals(qt.countRange(1, 3, 100, 100), quadrants[0]);
+    long[] links = structure.getQuadrantLinks();
+    assertEquals(qt.getSize() - 1, links[0] + links[1] + links[2] + links[3]);
+    assertEquals(0, new PointQuadTree<Integer>(0,0,10,10).getStructure().getHeight());
+  }
+  
   @Test
   public void testQueryAll() {
     PointQuadTree qt = getQuadTree();
@@ -139,6 +832,12 @@ public class QuadTreeTest {
   }
   
   
+  private static String sorted(List<AbstractNode<Integer>> nodes) {
+    List<AbstractNode<Integer>> copy = new ArrayList<AbstractNode<Integer>>(nodes);
+    Collections.sort(copy);
+    return copy.toString();
+  }
+  
   public static void main(String[] args) {
     System.out.println("Starting tests");
     Result result = JUnitCore.runClasses(QuadTreeTest.class);
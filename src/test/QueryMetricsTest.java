@@ -0,0 +1,111 @@
+package test;
+
+import static org.junit.Assert.*;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import javax.management.ObjectName;
+import main.Histogram;
+import main.PointQuadTree;
+import main.QueryMetrics;
+import main.QueryStats;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+/**
+ * Test cases for QueryMetrics and its Histogram. 
+ * @author FrancescoA
+ *
+ */
+public class QueryMetricsTest {
+
+  @Test
+  public void histogramShouldBeExactForSmallValues() {
+    Histogram histogram = new Histogram();
+    for (int i = 0; i < 8; i++) {
+      histogram.record(i);
+    }
+    assertEquals(8, histogram.getCount());
+    assertEquals(3.5, histogram.getMean(), 1e-9);
+    assertEquals(3, histogram.getValueAtPercentile(50));
+    assertEquals(7, histogram.getValueAtPercentile(100));
+    assertEquals(0, histogram.getValueAtPercentile(0));
+  }
+
+  @Test
+  public void histogramPercentilesShouldBeWithinTheBucketError() {
+    Histogram histogram = new Histogram();
+    Random random = new Random(3);
+    long[] values = new long[10000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (long) Math.abs(random.nextGaussian() * 1e6);
+      histogram.record(values[i]);
+    }
+    Arrays.sort(values);
+    for (double p : new double[] {10, 50, 90, 99, 99.9}) {
+      long exact = values[(int) Math.ceil(p / 100 * values.length) - 1];
+      long reported = histogram.getValueAtPercentile(p);
+      assertTrue(p + ": " + reported + " < " + exact, reported >= exact);
+      assertTrue(p + ": " + reported + " > " + exact, reported <= exact * 1.125 + 1);
+    }
+    assertEquals(values[values.length - 1], histogram.getMax());
+    assertEquals(values[values.length - 1], histogram.getValueAtPercentile(100));
+    histogram.reset();
+    assertEquals(0, histogram.getCount());
+    assertEquals(0, histogram.getValueAtPercentile(99));
+  }
+
+  @Test
+  public void metricsShouldAggregateQueries() {
+    QueryMetrics metrics = new QueryMetrics();
+    metrics.queryCompleted(new QueryStats(QueryStats.Type.RANGE, 10, 4, 3, 2, 1000));
+    metrics.queryCompleted(new QueryStats(QueryStats.Type.VISITOR, 30, 0, 7, 6, 3000));
+    assertEquals(2, metrics.getQueries());
+    assertEquals(2.0, metrics.getMeanLatencyMicros(), 1e-9);
+    assertEquals(3.0, metrics.getMaxLatencyMicros(), 1e-9);
+    assertEquals(20.0, metrics.getMeanVisited(), 1e-9);
+    assertEquals(30, metrics.getMaxVisited());
+    assertEquals(2.0, metrics.getMeanPruned(), 1e-9);
+    assertEquals(4.0, metrics.getMeanResults(), 1e-9);
+    assertEquals(7, metrics.getMaxDepth());
+    metrics.reset();
+    assertEquals(0, metrics.getQueries());
+    assertEquals(0, metrics.getMaxDepth());
+  }
+
+  @Test
+  public void metricsShouldBeReadableThroughJmx() throws Exception {
+    PointQuadTree<Integer> tree = new PointQuadTree<Integer>(0, 0, 100, 100);
+    for (int i = 0; i < 100; i++) {
+      tree.insert(new Point(i, (i * 37) % 100), i);
+    }
+    QueryMetrics metrics = new QueryMetrics();
+    tree.setQueryListener(metrics);
+    ObjectName name = metrics.register("test");
+    try {
+      for (int i = 0; i < 10; i++) {
+        tree.queryRange(new Rectangle(10 * i, 0, 10, 100));
+      }
+      assertEquals(10L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Queries"));
+      assertEquals(metrics.getMaxVisited(), ManagementFactory.getPlatformMBeanServer().getAttribute(name, "MaxVisited"));
+      assertEquals(10.0, metrics.getMeanResults(), 1e-9);
+    } finally {
+      metrics.unregister("test");
+    }
+    assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+  }
+
+  public static void main(String[] args) {
+    System.out.println("Starting tests");
+    Result result = JUnitCore.runClasses(QueryMetricsTest.class);
+    for (Failure failure : result.getFailures()) {
+      System.out.println(failure.toString());
+    }
+    System.out.println("Tests ended");
+  }
+
+}
@@ -0,0 +1,120 @@
+package test;
+
+import static org.junit.Assert.*;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import main.AbstractNode;
+import main.AbstractQuadTree;
+import main.PointNode;
+import main.PointQuadTree;
+import main.ShardLoad;
+import main.ShardedQuadTree;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+
+/**
+ * ShardedQuadTree test cases. 
+ * @author FrancescoA
+ *
+ */
+public class ShardedQuadTreeTest extends AbstractQuadTreeTest {
+
+  @Override
+  protected AbstractQuadTree<Integer> createQuadTree(int x, int y, int width, int height) {
+    return new ShardedQuadTree<Integer>(x, y, width, height, 4, 3);
+  }
+
+  @Test
+  public void parallelIngestionShouldMatchASingleTree() throws InterruptedException {
+    final ForkJoinPool pool = new ForkJoinPool(4);
+    final ShardedQuadTree<Integer> sharded = new ShardedQuadTree<Integer>(new Rectangle(0,0,1000,1000), 5, 5, pool);
+    final PointQuadTree<Integer> single = new PointQuadTree<Integer>(0,0,1000,1000);
+    Thread[] writers = new Thread[4];
+    for (int t = 0; t < writers.length; t++) {
+      final Random random = new Random(t);
+      final int offset = t;
+      writers[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 5000; i++) {
+            // Distinct points for every thread, so the final contents do not depend on timing. 
+            sharded.insert(new PointNode<Integer>(4 * random.nextInt(250) + offset, random.nextInt(1000), i));
+          }
+        }
+      };
+    }
+    for (Thread writer : writers) {
+      writer.start();
+    }
+    for (Thread writer : writers) {
+      writer.join();
+    }
+    for (AbstractNode<Integer> n : sharded.getAllNodes()) {
+      single.insert(new PointNode<Integer>(n.getLocation(), 0));
+    }
+    assertEquals(single.getSize(), sharded.getSize());
+    Random random = new Random(18);
+    for (int i = 0; i < 50; i++) {
+      Rectangle query = new Rectangle(random.nextInt(1000), random.nextInt(1000), random.nextInt(400), random.nextInt(400));
+      List<AbstractNode<Integer>> expected = single.queryRange(query);
+      List<AbstractNode<Integer>> found = sharded.queryRange(query);
+      assertEquals(expected.size(), found.size());
+      assertTrue(found.containsAll(expected));
+    }
+    pool.shutdown();
+  }
+
+  @Test
+  public void loadsShouldShowHotTiles() {
+    ShardedQuadTree<Integer> qt = new ShardedQuadTree<Integer>(0,0,100,100,2,2);
+    for (int i = 0; i < 30; i++) {
+      qt.insert(new PointNode<Integer>(i, i));
+    }
+    qt.insert(new PointNode<Integer>(90, 10));
+    qt.insert(new PointNode<Integer>(90, 10));
+    assertEquals(1, qt.queryRange(new Rectangle(80,0,20,20)).size());
+    assertEquals(31, qt.getSize());
+    List<ShardLoad> loads = qt.getShardLoads();
+    assertEquals(4, loads.size());
+    ShardLoad hot = loads.get(0);
+    assertEquals(0, hot.getColumn());
+    assertEquals(0, hot.getRow());
+    assertEquals(30, hot.getSize());
+    assertEquals(30, hot.getInserts());
+    assertEquals(0, hot.getQueries());
+    ShardLoad right = loads.get(1);
+    assertEquals(1, right.getSize());
+    assertEquals(2, right.getInserts());
+    assertEquals(1, right.getQueries());
+    // The tiles cover the grown bounds without gaps. 
+    int area = 0;
+    for (ShardLoad load : loads) {
+      area += load.getBounds().width * load.getBounds().height;
+    }
+    assertEquals(102 * 102, area);
+    assertEquals("(90, 10)", qt.remove(new Point(90, 10)).toString());
+    assertNull(qt.get(new Point(90, 10)));
+    assertNotNull(qt.get(new Point(5, 5)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectEmptyGrids() {
+    new ShardedQuadTree<Integer>(0,0,100,100,0,2);
+  }
+
+  public static void main(String[] args) {
+    System.out.println("Starting tests");
+    Result result = JUnitCore.runClasses(ShardedQuadTreeTest.class);
+    for (Failure failure : result.getFailures()) {
+      System.out.println(failure.toString());
+    }
+    System.out.println("Tests ended");
+  }
+
+}
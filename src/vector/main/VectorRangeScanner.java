@@ -0,0 +1,74 @@
+package main;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A {@link RangeScanner} that tests as many points per step as the preferred vector shape of
+ * the CPU holds ints: 8 with AVX2, 16 with AVX-512.
+ *
+ * Each step loads the x- and y-coordinates of the next points and compares them with both
+ * corners of the range. The Vector API of JDK 17 has no compress operation, and its C2
+ * compiler neither intrinsifies unsigned compares nor VectorMask.toLong(), which would
+ * allocate on every step; so the indices of the points are blended with -1 where the mask is
+ * unset, stored into hits and moved down over the -1s without branching. Steps with no point
+ * or only points in the range skip that. The points after the last full vector are tested one
+ * at a time.
+ *
+ * Compiled only by the vector profile, and loaded by {@link RangeScanner#vector()}.
+ * @author FrancescoA
+ *
+ */
+final class VectorRangeScanner implements RangeScanner {
+
+  private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+  private static final IntVector IOTA = IntVector.zero(SPECIES).addIndex(1);
+  private static final IntVector MISSES = IntVector.broadcast(SPECIES, -1);
+
+  @Override
+  public int scan(int[] xs, int[] ys, int from, int to, int minX, int minY, int maxX, int maxY, int[] hits) {
+    int count = 0;
+    if (minX > maxX || minY > maxY) {
+      return 0;
+    }
+    int lanes = SPECIES.length();
+    int i = from;
+    for (int end = from + SPECIES.loopBound(to - from); i < end; i += lanes) {
+      IntVector x = IntVector.fromArray(SPECIES, xs, i);
+      IntVector y = IntVector.fromArray(SPECIES, ys, i);
+      VectorMask<Integer> inside = x.compare(VectorOperators.GE, minX)
+          .and(x.compare(VectorOperators.LE, maxX))
+          .and(y.compare(VectorOperators.GE, minY))
+          .and(y.compare(VectorOperators.LE, maxY));
+      int inRange = inside.trueCount();
+      if (inRange == lanes) {
+        IOTA.add(i).intoArray(hits, count);
+        count += lanes;
+      } else if (inRange > 0) {
+        // The lanes go to hits as indices or -1 and are moved down over the -1s; count never
+        // passes the lane being read, and hits has room for the whole vector.
+        int base = count;
+        MISSES.blend(IOTA.add(i), inside).intoArray(hits, base);
+        for (int lane = 0; lane < lanes; lane++) {
+          int hit = hits[base + lane];
+          hits[count] = hit;
+          count += ~hit >>> 31;
+        }
+      }
+    }
+    for (; i < to; i++) {
+      int x = xs[i], y = ys[i];
+      if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+        hits[count++] = i;
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public String toString() {
+    return "vector (" + SPECIES.length() + " lanes)";
+  }
+
+}